@@ -0,0 +1,385 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.archive;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Lists the members of an archive without extracting them.
+ * <p>
+ * For a zip the end of central directory record is found at the end of the file and the central directory
+ * is read onto the heap and parsed, so only the index is read however large the archive is. ZIP64 archives are
+ * supported. For a tar the member headers are read and the content between them is skipped by seeking. A
+ * compressed tar has no index and cannot be seeked, so its content is decompressed and discarded to reach
+ * each header.
+ */
+public class ArchiveIndexReader {
+    /**
+     * Separates the path of an archive from the path of a member within it.
+     */
+    public static final String MEMBER_SEPARATOR = "!";
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int UTF8_FLAG = 0x0800;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int TAR_BLOCK_SIZE = 512;
+    // about a million entries, more than any archive worth listing member by member
+    private static final int MAX_CENTRAL_DIRECTORY_SIZE = 128 * 1024 * 1024;
+    private static final Charset ZIP_DEFAULT_CHARSET = getZipDefaultCharset();
+
+    private ArchiveIndexReader() {
+    }
+
+    /**
+     * @param fileName name of a file
+     * @return whether the file is an archive whose members can be listed
+     */
+    public static boolean isArchive(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        return name.endsWith(".zip") || name.endsWith(".jar") || name.endsWith(".tar") || isCompressedTar(name);
+    }
+
+    /**
+     * List the files in an archive. Directories and links are not listed.
+     *
+     * @param archive the archive
+     * @return the members of the archive
+     * @throws IOException if the archive cannot be read or is not a valid archive
+     */
+    public static List<ArchiveMember> readIndex(File archive) throws IOException {
+        String name = archive.getName().toLowerCase(Locale.ROOT);
+        try {
+            if (name.endsWith(".tar")) {
+                try (InputStream in = new FileInputStream(archive)) {
+                    return readTarHeaders(in);
+                }
+            } else if (isCompressedTar(name)) {
+                try (InputStream in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(archive), 65536), 65536)) {
+                    return readTarHeaders(in);
+                }
+            }
+            try (FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.READ)) {
+                return readCentralDirectory(channel);
+            }
+        } catch (RuntimeException e) {
+            // a header the checks above missed, such as a size that runs past the end of a buffer
+            throw new IOException("invalid archive header: " + e, e);
+        }
+    }
+
+    private static boolean isCompressedTar(String name) {
+        return name.endsWith(".tar.gz") || name.endsWith(".tgz");
+    }
+
+    private static List<ArchiveMember> readCentralDirectory(FileChannel channel) throws IOException {
+        long size = channel.size();
+        // the end of central directory record is followed by a comment of up to 64KB
+        int tailSize = (int) Math.min(size, EOCD_SIZE + 0xFFFF);
+        ByteBuffer tail = readFully(channel, size - tailSize, tailSize);
+        int eocd = -1;
+        for (int position = tailSize - EOCD_SIZE; position >= 0; position--) {
+            if (tail.getInt(position) == EOCD_SIGNATURE && position + EOCD_SIZE + getUnsignedShort(tail, position + 20) == tailSize) {
+                eocd = position;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new IOException("no end of central directory record");
+        }
+        long entryCount = getUnsignedShort(tail, eocd + 10);
+        long directorySize = getUnsignedInt(tail, eocd + 12);
+        long directoryOffset = getUnsignedInt(tail, eocd + 16);
+        if (entryCount == 0xFFFF || directorySize == ZIP64_MAGIC || directoryOffset == ZIP64_MAGIC) {
+            long locator = size - tailSize + eocd - 20;
+            ByteBuffer locatorBuffer = readFully(channel, locator, 20);
+            if (locatorBuffer.getInt(0) != ZIP64_EOCD_LOCATOR_SIGNATURE) {
+                throw new IOException("no ZIP64 end of central directory locator");
+            }
+            ByteBuffer zip64Eocd = readFully(channel, locatorBuffer.getLong(8), 56);
+            if (zip64Eocd.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+                throw new IOException("no ZIP64 end of central directory record");
+            }
+            entryCount = zip64Eocd.getLong(32);
+            directorySize = zip64Eocd.getLong(40);
+            directoryOffset = zip64Eocd.getLong(48);
+        }
+        if (directoryOffset < 0 || directorySize < 0 || directoryOffset + directorySize > size) {
+            throw new IOException("invalid central directory location");
+        }
+        if (directorySize > MAX_CENTRAL_DIRECTORY_SIZE) {
+            throw new IOException("central directory of " + directorySize + " bytes is too large");
+        }
+
+        // read rather than mapped, as a mapped file truncated while it is parsed fails with an InternalError
+        ByteBuffer directory = readFully(channel, directoryOffset, (int) directorySize);
+        List<ArchiveMember> members = new ArrayList<>((int) Math.min(entryCount, 100000));
+        int position = 0;
+        for (long entry = 0; entry < entryCount; entry++) {
+            if (position + CENTRAL_HEADER_SIZE > directorySize || directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("invalid central directory entry " + entry);
+            }
+            int flags = getUnsignedShort(directory, position + 8);
+            int time = getUnsignedShort(directory, position + 12);
+            int date = getUnsignedShort(directory, position + 14);
+            long crc = getUnsignedInt(directory, position + 16);
+            long uncompressedSize = getUnsignedInt(directory, position + 24);
+            int nameLength = getUnsignedShort(directory, position + 28);
+            int extraLength = getUnsignedShort(directory, position + 30);
+            int commentLength = getUnsignedShort(directory, position + 32);
+            int namePosition = position + CENTRAL_HEADER_SIZE;
+            if (namePosition + nameLength + extraLength > directorySize) {
+                throw new IOException("invalid central directory entry " + entry);
+            }
+            byte[] nameBytes = new byte[nameLength];
+            directory.position(namePosition);
+            directory.get(nameBytes);
+            String name = new String(nameBytes, (flags & UTF8_FLAG) != 0 ? StandardCharsets.UTF_8 : ZIP_DEFAULT_CHARSET);
+            if (uncompressedSize == ZIP64_MAGIC) {
+                uncompressedSize = getZip64UncompressedSize(directory, namePosition + nameLength, extraLength, uncompressedSize);
+            }
+            if (!name.endsWith("/")) {
+                members.add(new ArchiveMember(name, uncompressedSize, getDosTime(date, time), crc));
+            }
+            position = namePosition + nameLength + extraLength + commentLength;
+        }
+        return members;
+    }
+
+    private static long getZip64UncompressedSize(ByteBuffer directory, int extraPosition, int extraLength, long uncompressedSize) {
+        int end = extraPosition + extraLength;
+        for (int position = extraPosition; position + 4 <= end; ) {
+            int id = getUnsignedShort(directory, position);
+            int length = getUnsignedShort(directory, position + 2);
+            if (id == ZIP64_EXTRA_ID && length >= 8 && position + 12 <= end) {
+                // the uncompressed size is the first field, as it is the first one that overflowed
+                return directory.getLong(position + 4);
+            }
+            position += 4 + length;
+        }
+        return uncompressedSize;
+    }
+
+    private static List<ArchiveMember> readTarHeaders(InputStream in) throws IOException {
+        List<ArchiveMember> members = new ArrayList<>();
+        byte[] header = new byte[TAR_BLOCK_SIZE];
+        String longName = null;
+        String paxPath = null;
+        long paxSize = -1;
+        while (readBlock(in, header)) {
+            if (isZeroBlock(header)) {
+                // end of archive
+                break;
+            }
+            String name = getTarString(header, 0, 100);
+            long size = getTarNumber(header, 124, 12);
+            long mtime = getTarNumber(header, 136, 12);
+            char type = (char) header[156];
+            String magic = getTarString(header, 257, 6);
+            if (magic.startsWith("ustar")) {
+                String prefix = getTarString(header, 345, 155);
+                if (!prefix.isEmpty()) {
+                    name = prefix + "/" + name;
+                }
+            }
+            long dataSize = size;
+            if (type == 'L') {
+                longName = getTarString(readData(in, size), 0, (int) size);
+                continue;
+            } else if (type == 'x') {
+                byte[] pax = readData(in, size);
+                for (String record : new String(pax, StandardCharsets.UTF_8).split("\n")) {
+                    int equals = record.indexOf('=');
+                    int space = record.indexOf(' ');
+                    if (equals > space && space >= 0) {
+                        String key = record.substring(space + 1, equals);
+                        if ("path".equals(key)) {
+                            paxPath = record.substring(equals + 1);
+                        } else if ("size".equals(key)) {
+                            try {
+                                paxSize = Long.parseLong(record.substring(equals + 1).trim());
+                            } catch (NumberFormatException e) {
+                                throw new IOException("invalid tar extended header size " + record.substring(equals + 1).trim(), e);
+                            }
+                        }
+                    }
+                }
+                continue;
+            } else if (type == 'g') {
+                // global extended headers do not name a member
+                skipFully(in, roundUpToBlock(dataSize));
+                continue;
+            }
+            if (longName != null) {
+                name = longName;
+            }
+            if (paxPath != null) {
+                name = paxPath;
+            }
+            if (paxSize >= 0) {
+                size = paxSize;
+                dataSize = paxSize;
+            }
+            longName = null;
+            paxPath = null;
+            paxSize = -1;
+            if (type == '0' || type == '\0' || type == '7') {
+                members.add(new ArchiveMember(name, size, mtime * 1000, 0));
+            }
+            skipFully(in, roundUpToBlock(dataSize));
+        }
+        return members;
+    }
+
+    private static boolean readBlock(InputStream in, byte[] block) throws IOException {
+        int read = 0;
+        while (read < block.length) {
+            int count = in.read(block, read, block.length - read);
+            if (count < 0) {
+                if (read == 0) {
+                    return false;
+                }
+                throw new EOFException("truncated tar header");
+            }
+            read += count;
+        }
+        return true;
+    }
+
+    private static byte[] readData(InputStream in, long size) throws IOException {
+        if (size < 0 || size > 1024 * 1024) {
+            throw new IOException("invalid tar extended header size " + size);
+        }
+        byte[] data = new byte[(int) roundUpToBlock(size)];
+        if (data.length > 0 && !readBlock(in, data)) {
+            throw new EOFException("truncated tar extended header");
+        }
+        return data;
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                // skip may stop short without being at the end, so read a byte to tell
+                if (in.read() < 0) {
+                    throw new EOFException("truncated tar member");
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    private static long roundUpToBlock(long size) {
+        return (size + TAR_BLOCK_SIZE - 1) / TAR_BLOCK_SIZE * TAR_BLOCK_SIZE;
+    }
+
+    private static boolean isZeroBlock(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String getTarString(byte[] buffer, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && buffer[end] != 0) {
+            end++;
+        }
+        return new String(buffer, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static long getTarNumber(byte[] buffer, int offset, int length) throws IOException {
+        if ((buffer[offset] & 0x80) != 0) {
+            // base-256 for numbers too large for octal
+            long value = buffer[offset] & 0x7F;
+            for (int i = offset + 1; i < offset + length; i++) {
+                value = (value << 8) | (buffer[i] & 0xFF);
+            }
+            return value;
+        }
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = buffer[i];
+            if (b == 0 || b == ' ') {
+                if (value > 0) {
+                    break;
+                }
+                continue;
+            }
+            if (b < '0' || b > '7') {
+                throw new IOException("invalid tar header");
+            }
+            value = (value << 3) + (b - '0');
+        }
+        return value;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("truncated zip");
+            }
+        }
+        return buffer;
+    }
+
+    private static int getUnsignedShort(ByteBuffer buffer, int position) {
+        return buffer.getShort(position) & 0xFFFF;
+    }
+
+    private static long getUnsignedInt(ByteBuffer buffer, int position) {
+        return buffer.getInt(position) & 0xFFFFFFFFL;
+    }
+
+    private static long getDosTime(int date, int time) {
+        try {
+            return LocalDateTime.of(((date >> 9) & 0x7F) + 1980,
+                                    (date >> 5) & 0x0F,
+                                    date & 0x1F,
+                                    (time >> 11) & 0x1F,
+                                    (time >> 5) & 0x3F,
+                                    (time & 0x1F) * 2)
+                                .atZone(ZoneId.systemDefault())
+                                .toInstant()
+                                .toEpochMilli();
+        } catch (DateTimeException e) {
+            return 0;
+        }
+    }
+
+    private static Charset getZipDefaultCharset() {
+        try {
+            return Charset.forName("IBM437");
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.ISO_8859_1;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.archive;
+
+/**
+ * A file stored in an archive.
+ */
+public class ArchiveMember {
+    private final String name;
+    private final long size;
+    private final long lastModified;
+    private final long crc;
+
+    /**
+     * Constructor
+     *
+     * @param name         path of the member within the archive, using / as the separator
+     * @param size         uncompressed size of the member in bytes
+     * @param lastModified last modified time of the member in milliseconds since the epoch
+     * @param crc          CRC-32 of the member's content, or 0 if the archive does not record it
+     */
+    public ArchiveMember(String name, long size, long lastModified, long crc) {
+        this.name = name;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.crc = crc;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public long getCrc() {
+        return crc;
+    }
+}
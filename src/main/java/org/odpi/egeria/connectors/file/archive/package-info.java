@@ -0,0 +1,7 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+
+/**
+ * Lists the members of zip and tar archives from their indexes and headers, without extracting them.
+ */
+package org.odpi.egeria.connectors.file.archive;
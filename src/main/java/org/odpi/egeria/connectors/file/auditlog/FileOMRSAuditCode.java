@@ -88,7 +88,102 @@ public enum FileOMRSAuditCode implements AuditLogMessageSet {
                                                        OMRSAuditLogRecordSeverity.EXCEPTION,
                                                        "Error {0} in Event mapper Polling loop",
                                                        "Connector is unable to be used",
-            "Check the logs for the details of the Exception and debug.")
+            "Check the logs for the details of the Exception and debug."),
+    EVENT_MAPPER_SHUTDOWN_TIMED_OUT("FILE-OMRS-SAMPLE-EVENT-MAPPER-0013",
+                                    OMRSAuditLogRecordSeverity.INFO,
+                                    "The Sample file repository proxy event mapper in-flight work did not complete within {0} milliseconds of disconnect",
+                                    "The Sample file repository proxy event mapper has interrupted its polling thread.",
+                                    "If this happens often, increase the shutdownTimeout configuration property."),
+    EVENT_MAPPER_POLL_CYCLE_SUMMARY("FILE-OMRS-SAMPLE-EVENT-MAPPER-0014",
+                                    OMRSAuditLogRecordSeverity.INFO,
+                                    "The Sample file repository proxy event mapper polling cycle scanned {0} files, of which {1} were new or changed and {2} were deleted, in {3} milliseconds, {5} of them waiting for the event rate limit. {4} files in unchanged folders were not scanned",
+                                    "The Sample file repository proxy event mapper has completed a polling cycle and will wait for the refresh interval.",
+                                    "No action is required.  This is part of the normal operation of the service."),
+    EVENT_MAPPER_AUDIT_MESSAGES_SUPPRESSED("FILE-OMRS-SAMPLE-EVENT-MAPPER-0015",
+                                           OMRSAuditLogRecordSeverity.INFO,
+                                           "The Sample file repository proxy event mapper suppressed {1} repeats of audit message {0} in the last {2} seconds",
+                                           "The Sample file repository proxy event mapper only writes the first occurrence of a repeated message in each suppression interval.",
+                                           "Review the first occurrence of the message. Set the auditLogSuppressionInterval configuration property to change the interval."),
+    EVENT_MAPPER_SHARD_MEMBERSHIP_CHANGED("FILE-OMRS-SAMPLE-EVENT-MAPPER-0016",
+                                          OMRSAuditLogRecordSeverity.INFO,
+                                          "The Sample file repository proxy event mapper is now one of {0} shards: {1}",
+                                          "The Sample file repository proxy event mapper will rebalance the files it owns on its next polling cycle.",
+                                          "No action is required.  This is part of the normal operation of the service."),
+    EVENT_MAPPER_SHARD_HEARTBEAT_FAILED("FILE-OMRS-SAMPLE-EVENT-MAPPER-0018",
+                                        OMRSAuditLogRecordSeverity.EXCEPTION,
+                                        "The Sample file repository proxy event mapper could not update its lease in shard lease folder {0}: {1}",
+                                        "The Sample file repository proxy event mapper will retry on the next heartbeat. If the lease times out the other shards take over its files.",
+                                        "Check that the shard lease folder is available and writable."),
+    EVENT_MAPPER_SHARD_LEASE_EXPIRED("FILE-OMRS-SAMPLE-EVENT-MAPPER-0019",
+                                     OMRSAuditLogRecordSeverity.EXCEPTION,
+                                     "The Sample file repository proxy event mapper has not renewed its shard lease within the lease timeout",
+                                     "The Sample file repository proxy event mapper is skipping polling cycles until it renews its lease.",
+                                     "Check that the shard lease folder is available and writable."),
+    EVENT_MAPPER_BOOTSTRAP_STARTING("FILE-OMRS-SAMPLE-EVENT-MAPPER-0020",
+                                    OMRSAuditLogRecordSeverity.INFO,
+                                    "The Sample file repository proxy event mapper is loading the files listed in manifest {0} with {1} workers",
+                                    "The Sample file repository proxy event mapper saves the listed files before it starts polling the folder.",
+                                    "No action is required.  This is part of the normal operation of the service."),
+    EVENT_MAPPER_BOOTSTRAP_COMPLETE("FILE-OMRS-SAMPLE-EVENT-MAPPER-0021",
+                                    OMRSAuditLogRecordSeverity.INFO,
+                                    "The Sample file repository proxy event mapper loaded {0} files from manifest {1} in {2} milliseconds. {3} entries were outside its folder or shard, {4} could not be parsed and {5} could not be saved",
+                                    "The Sample file repository proxy event mapper starts polling the folder, which saves the files that have changed since the manifest was written and the files that could not be saved.",
+                                    "No action is required.  This is part of the normal operation of the service."),
+    EVENT_MAPPER_BOOTSTRAP_FAILED("FILE-OMRS-SAMPLE-EVENT-MAPPER-0022",
+                                  OMRSAuditLogRecordSeverity.EXCEPTION,
+                                  "The Sample file repository proxy event mapper could not read manifest {0}: {1}",
+                                  "The Sample file repository proxy event mapper starts polling the folder, which saves the files that were not loaded from the manifest.",
+                                  "Check the bootstrapManifest configuration property and that the manifest is readable by the server."),
+    EVENT_MAPPER_EVENT_LATENCY_SUMMARY("FILE-OMRS-SAMPLE-EVENT-MAPPER-0023",
+                                       OMRSAuditLogRecordSeverity.INFO,
+                                       "The Sample file repository proxy event mapper polling cycle sent the events for {0} new or changed files at {4} per second. The time from a file being modified to its event being sent was {1} milliseconds at the 50th percentile, {2} milliseconds at the 99th percentile and at most {3} milliseconds",
+                                       "The Sample file repository proxy event mapper has completed a polling cycle and will wait for the refresh interval.",
+                                       "If the latency is too high, reduce the refresh interval or raise the event rate limits."),
+    EVENT_MAPPER_ARCHIVE_NOT_READABLE("FILE-OMRS-SAMPLE-EVENT-MAPPER-0024",
+                                      OMRSAuditLogRecordSeverity.EXCEPTION,
+                                      "The Sample file repository proxy event mapper could not list the members of archive {0}: {1}",
+                                      "The Sample file repository proxy event mapper catalogues the archive as a single file until it changes.",
+                                      "Check whether the archive is complete and valid."),
+    EVENT_MAPPER_PROFILE_FAILED("FILE-OMRS-SAMPLE-EVENT-MAPPER-0025",
+                                OMRSAuditLogRecordSeverity.EXCEPTION,
+                                "The Sample file repository proxy event mapper could not profile file {0}: {1}",
+                                "The Sample file repository proxy event mapper saves the file without its columns.",
+                                "Check that the file is readable by the server."),
+    EVENT_MAPPER_CONFIGURATION_RELOADED("FILE-OMRS-SAMPLE-EVENT-MAPPER-0026",
+                                        OMRSAuditLogRecordSeverity.INFO,
+                                        "The Sample file repository proxy event mapper is using its changed configuration from polling cycle {0}",
+                                        "The Sample file repository proxy event mapper applies the changed settings from this polling cycle. If the qualified name prefix changed, every file is saved again.",
+                                        "No action is required."),
+    EVENT_MAPPER_CONFIGURATION_NOT_VALID("FILE-OMRS-SAMPLE-EVENT-MAPPER-0027",
+                                         OMRSAuditLogRecordSeverity.EXCEPTION,
+                                         "The Sample file repository proxy event mapper could not use its changed configuration: {0}",
+                                         "The Sample file repository proxy event mapper carries on with its previous configuration.",
+                                         "Correct the configuration properties of the connector or its configuration file."),
+    EVENT_MAPPER_RECONCILIATION_COMPLETE("FILE-OMRS-SAMPLE-EVENT-MAPPER-0028",
+                                         OMRSAuditLogRecordSeverity.INFO,
+                                         "The Sample file repository proxy event mapper compared {0} files with {1} DataFiles in the repository in {2} milliseconds. The files in {3} folders differed, {4} files were saved again and {5} DataFiles were purged",
+                                         "The Sample file repository proxy event mapper has repaired the repository where it differed from the files it has published, and sends the events for the repairs with the polling cycle's other events.",
+                                         "If repairs are frequent, check the audit log for failed saves and purges."),
+    EVENT_MAPPER_JOURNAL_FAILED("FILE-OMRS-SAMPLE-EVENT-MAPPER-0029",
+                                OMRSAuditLogRecordSeverity.EXCEPTION,
+                                "The Sample file repository proxy event mapper could not write to the change journal in folder {0}: {1}",
+                                "The Sample file repository proxy event mapper carries on sending events, but the changes are missing from the journal, so consumers replaying it can miss them.",
+                                "Check that the change journal folder has space and is writable by the server. Consumers that may have missed changes can request a refresh."),
+    EVENT_MAPPER_TRACE_FAILED("FILE-OMRS-SAMPLE-EVENT-MAPPER-0030",
+                              OMRSAuditLogRecordSeverity.EXCEPTION,
+                              "The Sample file repository proxy event mapper could not write the pipeline trace in folder {0}: {1}",
+                              "The Sample file repository proxy event mapper discards the spans and carries on.",
+                              "Check that the trace folder has space and is writable by the server."),
+    EVENT_MAPPER_CHANGES_SPILLED("FILE-OMRS-SAMPLE-EVENT-MAPPER-0031",
+                                 OMRSAuditLogRecordSeverity.INFO,
+                                 "The Sample file repository proxy event mapper spilled {0} changes over its memory budget of {1} megabytes to folder {2}",
+                                 "The Sample file repository proxy event mapper has sent the events for the spilled changes in the order they were found. The assets were not remembered, so a resync in the same cycle sent them again.",
+                                 "If changes are often spilled, raise the memoryBudget configuration property."),
+    EVENT_MAPPER_FOLDER_NOT_READABLE("FILE-OMRS-SAMPLE-EVENT-MAPPER-0032",
+                                     OMRSAuditLogRecordSeverity.EXCEPTION,
+                                     "The Sample file repository proxy event mapper could not list folder {0}: {1}",
+                                     "The Sample file repository proxy event mapper keeps the files it found in the folder before, without treating any of them as deleted, and lists it again on the next scan.",
+                                     "Check that the folder is readable by the server and that its file system is available.")
     ;
 
 
@@ -68,6 +68,38 @@ public enum FileOMRSErrorCode implements ExceptionMessageSet {
             "The event mapper failed to obtain the types, so cannot proceed ",
             "The system will shutdown the server",
             "ensure you are using a repository that supports the required types."),
+    PURGE_FAILED(400, "FILE-OMRS-FILE-EVENT-MAPPER-ERROR-400-016 ",
+            "The event mapper failed to purge the reference copy {0} of type {1} for a deleted file, as it is not a reference copy",
+            "The deleted file remains in the repository",
+            "Check that no other repository connector is using the same folder or qualifiedNamePrefix."),
+    SHARD_LEASE_FOLDER_NOT_USABLE(400, "FILE-OMRS-FILE-EVENT-MAPPER-ERROR-400-017 ",
+            "The event mapper could not create or write its lease in the shard lease folder {0}",
+            "Connector is unable to be used",
+            "Review the shardLeaseFolder configuration property and check the folder is writable by the server."),
+    CONFIGURATION_NOT_VALID(400, "FILE-OMRS-FILE-EVENT-MAPPER-ERROR-400-018 ",
+            "The event mapper configuration properties are not valid: {0}",
+            "The configuration is not used",
+            "Check the types of the configuration properties and the syntax of the immutablePartitionPatterns regular expressions."),
+    STORAGE_LISTER_NOT_USABLE(400, "FILE-OMRS-FILE-EVENT-MAPPER-ERROR-400-019 ",
+            "The event mapper could not create the storage lister {0} for location {1}",
+            "Connector is unable to be used",
+            "Check that the storageLister configuration property names a StorageLister class on the classpath with a public constructor taking the location."),
+    LISTING_FAILED(400, "FILE-OMRS-FILE-EVENT-MAPPER-ERROR-400-020 ",
+            "The event mapper could not list the storage location {0}: {1}",
+            "The scan is abandoned and no files are treated as deleted",
+            "Check that the storage location is reachable and that the server is allowed to list it."),
+    JOURNAL_NOT_USABLE(400, "FILE-OMRS-FILE-EVENT-MAPPER-ERROR-400-021 ",
+            "The event mapper could not open or read the change journal in folder {0}: {1}",
+            "The change journal is not available",
+            "Check the changeJournalFolder configuration property and that the folder is readable and writable by the server."),
+    TRACE_NOT_USABLE(400, "FILE-OMRS-FILE-EVENT-MAPPER-ERROR-400-022 ",
+            "The event mapper could not start a trace file in folder {0}: {1}",
+            "Connector is unable to be used",
+            "Check the traceFolder configuration property and that the folder is writable by the server, or remove the property to turn tracing off."),
+    SPILL_FAILED(400, "FILE-OMRS-FILE-EVENT-MAPPER-ERROR-400-023 ",
+            "The event mapper could not spill the changes over its memory budget to, or read them back from, folder {0}: {1}",
+            "The polling cycle is abandoned. The new and changed files whose events were not sent are saved and sent again by the next scan, but the purge events that were not sent are lost.",
+            "Check the spillFolder configuration property and that the folder has space and is writable by the server, or raise the memoryBudget."),
     ENTITY_NOT_KNOWN(404, "FILE-OMRS-FILE-EVENT-MAPPER-ERROR-404-001 ",
             "On Server {0} for request {1}, the entity identified with guid {0} is not known to the open metadata repository {2}",
             "The system is unable to retrieve the properties for the requested entity because the supplied guid is not recognized.",
@@ -0,0 +1,119 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.eventmapper;
+
+import org.odpi.openmetadata.adapters.repositoryservices.caching.repository.CachedRepositoryAccessor;
+import org.odpi.openmetadata.frameworks.connectors.ffdc.ConnectorCheckedException;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.OMRSMetadataCollection;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.SequencingOrder;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.EntityDetail;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.Relationship;
+import org.odpi.openmetadata.repositoryservices.ffdc.exception.*;
+
+import java.util.List;
+
+/**
+ * Saves the reference copies to the caching repository connector's store, and reads and purges them through
+ * its metadata collection.
+ */
+class CachingReferenceCopyStore implements ReferenceCopyStore {
+    private final String userId;
+    private final String metadataCollectionId;
+    private final OMRSMetadataCollection metadataCollection;
+    private final CachedRepositoryAccessor cachedRepositoryAccessor;
+
+    /**
+     * Constructor
+     *
+     * @param userId               user id the calls are made as
+     * @param serverName           name of the server
+     * @param metadataCollectionId id of the metadata collection the reference copies are homed in
+     * @param metadataCollection   the caching repository connector's metadata collection
+     */
+    CachingReferenceCopyStore(String userId, String serverName, String metadataCollectionId, OMRSMetadataCollection metadataCollection) {
+        this.userId = userId;
+        this.metadataCollectionId = metadataCollectionId;
+        this.metadataCollection = metadataCollection;
+        this.cachedRepositoryAccessor = new CachedRepositoryAccessor(userId, serverName, metadataCollection);
+    }
+
+    @Override
+    public void saveEntityReferenceCopy(EntityDetail entity) throws ConnectorCheckedException {
+        cachedRepositoryAccessor.saveEntityReferenceCopyToStore(entity);
+    }
+
+    @Override
+    public void saveRelationshipReferenceCopy(Relationship relationship) throws ConnectorCheckedException {
+        cachedRepositoryAccessor.saveRelationshipReferenceCopyToStore(relationship);
+    }
+
+    @Override
+    public EntityDetail getEntityDetail(String guid) throws InvalidParameterException,
+                                                            RepositoryErrorException,
+                                                            EntityNotKnownException,
+                                                            EntityProxyOnlyException,
+                                                            UserNotAuthorizedException {
+        return metadataCollection.getEntityDetail(userId, guid);
+    }
+
+    @Override
+    public List<Relationship> getRelationshipsForEntity(String entityGUID, String relationshipTypeGUID) throws InvalidParameterException,
+                                                                                                               TypeErrorException,
+                                                                                                               RepositoryErrorException,
+                                                                                                               EntityNotKnownException,
+                                                                                                               PropertyErrorException,
+                                                                                                               PagingErrorException,
+                                                                                                               FunctionNotSupportedException,
+                                                                                                               UserNotAuthorizedException {
+        return metadataCollection.getRelationshipsForEntity(userId, entityGUID, relationshipTypeGUID, 0, null, null, null, null, 0);
+    }
+
+    @Override
+    public List<EntityDetail> findEntities(String entityTypeGUID, int fromElement, int pageSize) throws InvalidParameterException,
+                                                                                                        TypeErrorException,
+                                                                                                        RepositoryErrorException,
+                                                                                                        PropertyErrorException,
+                                                                                                        PagingErrorException,
+                                                                                                        FunctionNotSupportedException,
+                                                                                                        UserNotAuthorizedException {
+        return metadataCollection.findEntities(userId,
+                                               entityTypeGUID,
+                                               null,
+                                               null,
+                                               fromElement,
+                                               null,
+                                               null,
+                                               null,
+                                               null,
+                                               SequencingOrder.GUID,
+                                               pageSize);
+    }
+
+    @Override
+    public void purgeEntityReferenceCopy(EntityDetail entity) throws InvalidParameterException,
+                                                                     RepositoryErrorException,
+                                                                     EntityNotKnownException,
+                                                                     HomeEntityException,
+                                                                     FunctionNotSupportedException,
+                                                                     UserNotAuthorizedException {
+        metadataCollection.purgeEntityReferenceCopy(userId,
+                                                    entity.getGUID(),
+                                                    entity.getType().getTypeDefGUID(),
+                                                    entity.getType().getTypeDefName(),
+                                                    metadataCollectionId);
+    }
+
+    @Override
+    public void purgeRelationshipReferenceCopy(Relationship relationship) throws InvalidParameterException,
+                                                                                 RepositoryErrorException,
+                                                                                 RelationshipNotKnownException,
+                                                                                 HomeRelationshipException,
+                                                                                 FunctionNotSupportedException,
+                                                                                 UserNotAuthorizedException {
+        metadataCollection.purgeRelationshipReferenceCopy(userId,
+                                                          relationship.getGUID(),
+                                                          relationship.getType().getTypeDefGUID(),
+                                                          relationship.getType().getTypeDefName(),
+                                                          metadataCollectionId);
+    }
+}
@@ -0,0 +1,62 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.eventmapper;
+
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.InstanceGraph;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.repositoryconnector.OMRSRepositoryConnector;
+import org.odpi.openmetadata.repositoryservices.eventmanagement.OMRSRepositoryEventProcessor;
+
+/**
+ * Sends the events to the cohort through the repository event processor, as coming from the repository connector.
+ */
+class CohortEventSender implements InstanceEventSender {
+    private static final String SOURCE_NAME = "FileOMRSRepositoryEventMapper";
+
+    private final OMRSRepositoryConnector repositoryConnector;
+    private final OMRSRepositoryEventProcessor repositoryEventProcessor;
+
+    /**
+     * Constructor
+     *
+     * @param repositoryConnector      repository connector the events come from
+     * @param repositoryEventProcessor event processor that passes the events to the cohort
+     */
+    CohortEventSender(OMRSRepositoryConnector repositoryConnector, OMRSRepositoryEventProcessor repositoryEventProcessor) {
+        this.repositoryConnector = repositoryConnector;
+        this.repositoryEventProcessor = repositoryEventProcessor;
+    }
+
+    @Override
+    public void sendInstanceBatchEvent(InstanceGraph instances) {
+        repositoryEventProcessor.processInstanceBatchEvent(SOURCE_NAME,
+                                                           repositoryConnector.getMetadataCollectionId(),
+                                                           repositoryConnector.getServerName(),
+                                                           repositoryConnector.getServerType(),
+                                                           repositoryConnector.getOrganizationName(),
+                                                           instances);
+    }
+
+    @Override
+    public void sendPurgedEntityEvent(String typeDefGUID, String typeDefName, String guid) {
+        repositoryEventProcessor.processPurgedEntityEvent(SOURCE_NAME,
+                                                          repositoryConnector.getMetadataCollectionId(),
+                                                          repositoryConnector.getServerName(),
+                                                          repositoryConnector.getServerType(),
+                                                          repositoryConnector.getOrganizationName(),
+                                                          typeDefGUID,
+                                                          typeDefName,
+                                                          guid);
+    }
+
+    @Override
+    public void sendPurgedRelationshipEvent(String typeDefGUID, String typeDefName, String guid) {
+        repositoryEventProcessor.processPurgedRelationshipEvent(SOURCE_NAME,
+                                                                repositoryConnector.getMetadataCollectionId(),
+                                                                repositoryConnector.getServerName(),
+                                                                repositoryConnector.getServerType(),
+                                                                repositoryConnector.getOrganizationName(),
+                                                                typeDefGUID,
+                                                                typeDefName,
+                                                                guid);
+    }
+}
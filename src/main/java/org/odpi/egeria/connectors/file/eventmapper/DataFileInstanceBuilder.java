@@ -0,0 +1,404 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.eventmapper;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.odpi.egeria.connectors.file.auditlog.FileOMRSErrorCode;
+import org.odpi.egeria.connectors.file.profile.FileProfile;
+import org.odpi.openmetadata.frameworks.connectors.ffdc.ConnectorCheckedException;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.*;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.typedefs.PrimitiveDefCategory;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.typedefs.TypeDef;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.repositoryconnector.OMRSRepositoryHelper;
+import org.odpi.openmetadata.repositoryservices.ffdc.exception.TypeErrorException;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds the reference copies of the instances that represent a file: the DataFile, its Connection,
+ * ConnectorType and Endpoint entities and the 3 relationships between them.
+ *
+ * Each guid is the Base64 encoding of a canonical name derived from the file's canonical path, so the
+ * same file always gets the same guids and the file a guid was built for can be found from the guid.
+ *
+ * The parts of an instance that only depend on its type are built once per type into a template, and each
+ * instance is a copy of its template with the guid and properties filled in. The templates share their
+ * InstanceType, and the properties are set directly, so building an instance neither walks the type hierarchy
+ * nor copies the properties once for every property added.
+ */
+class DataFileInstanceBuilder {
+    static final String DATA_FILE = "DataFile";
+    static final String CONNECTION = "Connection";
+    static final String CONNECTOR_TYPE = "ConnectorType";
+    static final String ENDPOINT = "Endpoint";
+    static final String CONNECTION_ENDPOINT = "ConnectionEndpoint";
+    static final String CONNECTION_CONNECTOR_TYPE = "ConnectionConnectorType";
+    static final String CONNECTION_TO_ASSET = "ConnectionToAsset";
+
+    private static final String CONNECTION_SUFFIX = "-connection";
+    private static final String CONNECTOR_TYPE_SUFFIX = "-" + CONNECTOR_TYPE;
+    private static final String ENDPOINT_SUFFIX = "-" + ENDPOINT;
+    private static final String RELATIONSHIP_SEPARATOR = "::";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final OMRSRepositoryHelper repositoryHelper;
+    private final String repositoryName;
+    private final String metadataCollectionId;
+    private final String metadataCollectionName;
+    private final String userId;
+    private final String qualifiedNamePrefix;
+    private final long derivedInstanceVersion;
+    // templates by type name, built the first time each type is used as the types may not be known at construction
+    private final Map<String, EntityDetail> entityTemplates = new ConcurrentHashMap<>();
+    private final Map<String, EntityProxy> proxyTemplates = new ConcurrentHashMap<>();
+    private final Map<String, Relationship> relationshipTemplates = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param repositoryHelper       repository helper used to look up the types
+     * @param repositoryName         name of the repository
+     * @param metadataCollectionId   metadata collection id of the instances
+     * @param metadataCollectionName metadata collection name of the instances
+     * @param userId                 user id used to create the relationships
+     * @param qualifiedNamePrefix    prefix added to the qualified names
+     * @param derivedInstanceVersion version of the Connection, ConnectorType and Endpoint entities, incremented
+     *                               each time the qualified name prefix changes
+     */
+    DataFileInstanceBuilder(OMRSRepositoryHelper repositoryHelper,
+                            String repositoryName,
+                            String metadataCollectionId,
+                            String metadataCollectionName,
+                            String userId,
+                            String qualifiedNamePrefix,
+                            long derivedInstanceVersion) {
+        this.repositoryHelper = repositoryHelper;
+        this.repositoryName = repositoryName;
+        this.metadataCollectionId = metadataCollectionId;
+        this.metadataCollectionName = metadataCollectionName;
+        this.userId = userId;
+        this.qualifiedNamePrefix = qualifiedNamePrefix;
+        this.derivedInstanceVersion = derivedInstanceVersion;
+    }
+
+    /**
+     * @return version of the Connection, ConnectorType and Endpoint entities
+     */
+    long getDerivedInstanceVersion() {
+        return derivedInstanceVersion;
+    }
+
+    /**
+     * Build the DataFile entity for a file.
+     *
+     * @param baseName          name of the file
+     * @param baseCanonicalName canonical path of the file
+     * @param version           version of the file, incremented each time the file changes
+     * @return DataFile entity
+     * @throws ConnectorCheckedException if the entity cannot be built
+     */
+    EntityDetail getDataFileEntity(String baseName, String baseCanonicalName, long version) throws ConnectorCheckedException {
+        return getDataFileEntity(baseName, baseCanonicalName, version, null);
+    }
+
+    /**
+     * Build the DataFile entity for a file, with the columns found by profiling it in its additionalProperties.
+     * The column names and types are JSON arrays, so that names containing commas survive.
+     *
+     * @param baseName          name of the file
+     * @param baseCanonicalName canonical path of the file
+     * @param version           version of the file, incremented each time the file changes
+     * @param profile           the columns of the file, or null if it has not been profiled
+     * @return DataFile entity
+     * @throws ConnectorCheckedException if the entity cannot be built
+     */
+    EntityDetail getDataFileEntity(String baseName, String baseCanonicalName, long version, FileProfile profile) throws ConnectorCheckedException {
+        final String methodName = "getDataFileEntity";
+        EntityDetail dataFileEntity = getEntityDetailSkeleton(methodName,
+                                                              DATA_FILE,
+                                                              baseName,
+                                                              baseCanonicalName,
+                                                              getFileType(baseName));
+        dataFileEntity.setVersion(version);
+        if (profile != null) {
+            Map<String, String> additionalProperties = new HashMap<>();
+            additionalProperties.put("format", profile.getFormat());
+            additionalProperties.put("hasHeader", Boolean.toString(profile.hasHeader()));
+            try {
+                additionalProperties.put("columnNames", OBJECT_MAPPER.writeValueAsString(profile.getColumnNames()));
+                additionalProperties.put("columnTypes", OBJECT_MAPPER.writeValueAsString(profile.getColumnTypes()));
+            } catch (JsonProcessingException e) {
+                raiseConnectorCheckedException(FileOMRSErrorCode.TYPE_ERROR_EXCEPTION, methodName, e);
+            }
+            dataFileEntity.setProperties(repositoryHelper.addStringMapPropertyToInstance(repositoryName,
+                                                                                         dataFileEntity.getProperties(),
+                                                                                         "additionalProperties",
+                                                                                         additionalProperties,
+                                                                                         methodName));
+        }
+        return dataFileEntity;
+    }
+
+    /**
+     * Build the Connection, ConnectorType and Endpoint entities and the relationships between them and the DataFile.
+     * The DataFile entity itself is not included.
+     *
+     * @param baseName          name of the file
+     * @param baseCanonicalName canonical path of the file
+     * @param entityList        list the derived entities are added to
+     * @param relationshipList  list the derived relationships are added to
+     * @throws ConnectorCheckedException if the instances cannot be built
+     */
+    void addDerivedInstances(String baseName,
+                             String baseCanonicalName,
+                             List<EntityDetail> entityList,
+                             List<Relationship> relationshipList) throws ConnectorCheckedException {
+        EntityDetail connectionEntity = getConnectionEntity(baseName, baseCanonicalName);
+        EntityDetail connectorTypeEntity = getConnectorTypeEntity(baseName, baseCanonicalName);
+        EntityDetail endpointEntity = getEndpointEntity(baseName, baseCanonicalName);
+        entityList.add(connectionEntity);
+        entityList.add(connectorTypeEntity);
+        entityList.add(endpointEntity);
+
+        // entity guids used to create proxies
+        String connectionGuid = connectionEntity.getGUID();
+        String dataFileGuid = getGUID(baseCanonicalName);
+
+        relationshipList.add(getReferenceRelationship(CONNECTION_TO_ASSET,
+                                                      connectionGuid,
+                                                      CONNECTION,
+                                                      dataFileGuid,
+                                                      DATA_FILE));
+        relationshipList.add(getReferenceRelationship(CONNECTION_CONNECTOR_TYPE,
+                                                      connectionGuid,
+                                                      CONNECTION,
+                                                      connectorTypeEntity.getGUID(),
+                                                      CONNECTOR_TYPE));
+        relationshipList.add(getReferenceRelationship(CONNECTION_ENDPOINT,
+                                                      connectionGuid,
+                                                      CONNECTION,
+                                                      endpointEntity.getGUID(),
+                                                      ENDPOINT));
+    }
+
+    /**
+     * Get the guid for a canonical name.
+     *
+     * @param canonicalName canonical name
+     * @return guid
+     * @throws ConnectorCheckedException if the name cannot be encoded
+     */
+    String getGUID(String canonicalName) throws ConnectorCheckedException {
+        String methodName = "getGUID";
+        String guid = null;
+        try {
+            guid = Base64.getUrlEncoder().encodeToString(canonicalName.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            raiseConnectorCheckedException(FileOMRSErrorCode.ENCODING_EXCEPTION, methodName, e, "canonicalName", canonicalName);
+        }
+        return guid;
+    }
+
+    /**
+     * Get the canonical name a guid was created from.
+     *
+     * @param guid guid
+     * @return canonical name or null if the guid was not created by this builder
+     */
+    String decodeGUID(String guid) {
+        if (guid == null) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(guid), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            // not a Base64 guid, so not one of ours
+            return null;
+        }
+    }
+
+    private EntityDetail getConnectionEntity(String baseName, String baseCanonicalName) throws ConnectorCheckedException {
+        return getEntityDetailSkeleton("getConnectionEntity",
+                                       CONNECTION,
+                                       baseName + CONNECTION_SUFFIX,
+                                       baseCanonicalName + CONNECTION_SUFFIX,
+                                       null);
+    }
+
+    private EntityDetail getConnectorTypeEntity(String baseName, String baseCanonicalName) throws ConnectorCheckedException {
+        return getEntityDetailSkeleton("getConnectorTypeEntity",
+                                       CONNECTOR_TYPE,
+                                       baseName + CONNECTOR_TYPE_SUFFIX,
+                                       baseCanonicalName + CONNECTOR_TYPE_SUFFIX,
+                                       null);
+    }
+
+    private EntityDetail getEndpointEntity(String baseName, String baseCanonicalName) throws ConnectorCheckedException {
+        String methodName = "getEndpointEntity";
+        EntityDetail endpointEntity = getEntityDetailSkeleton(methodName,
+                                                              ENDPOINT,
+                                                              baseName + ENDPOINT_SUFFIX,
+                                                              baseCanonicalName + ENDPOINT_SUFFIX,
+                                                              null);
+        InstanceProperties instanceProperties = endpointEntity.getProperties();
+        instanceProperties.setProperty("protocol", getStringPropertyValue("file"));
+        instanceProperties.setProperty("networkAddress", getStringPropertyValue(baseCanonicalName));
+        endpointEntity.setProperties(instanceProperties);
+        return endpointEntity;
+    }
+
+    /**
+     * Get the file type from the extension of a file name.
+     *
+     * @param name name of the file
+     * @return the file type or null if the name has no extension
+     */
+    private String getFileType(String name) {
+        int lastDotIndex = name.lastIndexOf(".");
+        if (name.length() > 2 && lastDotIndex != -1 && lastDotIndex < name.length() - 1) {
+            return name.substring(lastDotIndex + 1);
+        }
+        return null;
+    }
+
+    private EntityProxy getEntityProxySkeleton(String guid, String typeName) throws ConnectorCheckedException {
+        EntityProxy template = proxyTemplates.get(typeName);
+        if (template == null) {
+            template = new EntityProxy();
+            template.setType(getInstanceType("getEntityProxySkeleton", typeName));
+            template.setMetadataCollectionId(metadataCollectionId);
+            template.setMetadataCollectionName(metadataCollectionName);
+            proxyTemplates.put(typeName, template);
+        }
+        EntityProxy proxy = new EntityProxy(template);
+        proxy.setGUID(guid);
+        return proxy;
+    }
+
+    /**
+     * Build the instance type for a type name. Only used to build the templates.
+     *
+     * @param methodName calling method
+     * @param typeName   name of the type
+     * @return the instance type
+     * @throws ConnectorCheckedException if the type is not known
+     */
+    private InstanceType getInstanceType(String methodName, String typeName) throws ConnectorCheckedException {
+        TypeDef typeDef = repositoryHelper.getTypeDefByName(methodName, typeName);
+        InstanceType instanceType = null;
+        try {
+            if (typeDef == null) {
+                throw new TypeErrorException(FileOMRSErrorCode.TYPEDEF_NAME_NOT_KNOWN.getMessageDefinition(repositoryName, methodName, typeName),
+                                             this.getClass().getName(),
+                                             methodName);
+            }
+            instanceType = repositoryHelper.getNewInstanceType(repositoryName, typeDef);
+        } catch (TypeErrorException e) {
+            raiseConnectorCheckedException(FileOMRSErrorCode.TYPE_ERROR_EXCEPTION, methodName, e);
+        }
+        return instanceType;
+    }
+
+    /**
+     * Build a string property value, as the repository helper would.
+     *
+     * @param value the string
+     * @return the property value
+     */
+    private PrimitivePropertyValue getStringPropertyValue(String value) {
+        PrimitivePropertyValue propertyValue = new PrimitivePropertyValue();
+        propertyValue.setPrimitiveDefCategory(PrimitiveDefCategory.OM_PRIMITIVE_TYPE_STRING);
+        propertyValue.setPrimitiveValue(value);
+        propertyValue.setTypeName(PrimitiveDefCategory.OM_PRIMITIVE_TYPE_STRING.getName());
+        propertyValue.setTypeGUID(PrimitiveDefCategory.OM_PRIMITIVE_TYPE_STRING.getGUID());
+        return propertyValue;
+    }
+
+    private EntityDetail getEntityDetailSkeleton(String originalMethodName,
+                                                 String typeName,
+                                                 String name,
+                                                 String canonicalName,
+                                                 String fileType) throws ConnectorCheckedException {
+        EntityDetail template = entityTemplates.get(typeName);
+        if (template == null) {
+            template = new EntityDetail();
+            // set the provenance as local cohort
+            template.setInstanceProvenanceType(InstanceProvenanceType.LOCAL_COHORT);
+            template.setMetadataCollectionId(metadataCollectionId);
+            template.setType(getInstanceType(originalMethodName, typeName));
+            template.setStatus(InstanceStatus.ACTIVE);
+            // the derived instances only depend on the path and the prefix, so they only have a new version when
+            // the prefix changes; if the name changes then this is an add and a delete
+            template.setVersion(derivedInstanceVersion);
+            entityTemplates.put(typeName, template);
+        }
+
+        EntityDetail entityToAdd = new EntityDetail(template);
+        entityToAdd.setGUID(getGUID(canonicalName));
+        InstanceProperties initialProperties = new InstanceProperties();
+        initialProperties.setProperty("name", getStringPropertyValue(name));
+        initialProperties.setProperty("qualifiedName", getStringPropertyValue(qualifiedNamePrefix + canonicalName));
+        if (fileType != null) {
+            initialProperties.setProperty("fileType", getStringPropertyValue(fileType));
+        }
+        entityToAdd.setProperties(initialProperties);
+        return entityToAdd;
+    }
+
+    private Relationship getReferenceRelationship(String relationshipTypeName, String end1GUID, String end1TypeName, String end2GUID, String end2TypeName) throws ConnectorCheckedException {
+        String methodName = "createRelationship";
+
+        Relationship template = relationshipTemplates.get(relationshipTypeName);
+        if (template == null) {
+            try {
+                // the template's create time is shared by its copies, so a relationship built again for a purge matches the stored one
+                template = repositoryHelper.getSkeletonRelationship(methodName,
+                                                                    metadataCollectionId,
+                                                                    InstanceProvenanceType.LOCAL_COHORT,
+                                                                    userId,
+                                                                    relationshipTypeName);
+            } catch (TypeErrorException e) {
+                raiseConnectorCheckedException(FileOMRSErrorCode.TYPE_ERROR_EXCEPTION, methodName, e);
+            }
+            relationshipTemplates.put(relationshipTypeName, template);
+        }
+
+        Relationship relationship = new Relationship(template);
+        String connectionToAssetCanonicalName = end1GUID + RELATIONSHIP_SEPARATOR + relationshipTypeName + RELATIONSHIP_SEPARATOR + end2GUID;
+        relationship.setGUID(getGUID(connectionToAssetCanonicalName));
+        //end 1
+        EntityProxy entityProxy1 = getEntityProxySkeleton(end1GUID, end1TypeName);
+        relationship.setEntityOneProxy(entityProxy1);
+
+        //end 2
+        EntityProxy entityProxy2 = getEntityProxySkeleton(end2GUID, end2TypeName);
+        relationship.setEntityTwoProxy(entityProxy2);
+        return relationship;
+    }
+
+    /**
+     * Throws a ConnectorCheckedException based on the provided parameters.
+     *
+     * @param errorCode  the error code for the exception
+     * @param methodName the method name throwing the exception
+     * @param cause      the underlying cause of the exception (if any, otherwise null)
+     * @param params     any additional parameters for formatting the error message
+     * @throws ConnectorCheckedException always
+     */
+    private void raiseConnectorCheckedException(FileOMRSErrorCode errorCode, String methodName, Exception cause, String... params) throws ConnectorCheckedException {
+        if (cause == null) {
+            throw new ConnectorCheckedException(errorCode.getMessageDefinition(params),
+                                                this.getClass().getName(),
+                                                methodName);
+        } else {
+            throw new ConnectorCheckedException(errorCode.getMessageDefinition(params),
+                                                this.getClass().getName(),
+                                                methodName,
+                                                cause);
+        }
+    }
+}
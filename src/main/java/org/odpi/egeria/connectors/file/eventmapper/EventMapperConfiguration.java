@@ -0,0 +1,231 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.eventmapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable snapshot of the event mapper settings that can be changed while it is running. The event mapper
+ * publishes the current snapshot through an atomic reference, and the polling thread takes the snapshot once
+ * per cycle, so a cycle always sees one consistent configuration and the scan never takes a lock to read it.
+ * <p>
+ * The settings that only take effect at start, such as sharding, the scan state storage and the bootstrap
+ * manifest, are not part of the snapshot.
+ */
+class EventMapperConfiguration {
+    private final String folderLocation;
+    /**
+     * Default polling refresh interval in milliseconds.
+     */
+    private int refreshInterval = 5000;
+    private String qualifiedNamePrefix = "";
+    /**
+     * Number of polling cycles between full re-broadcasts of all the assets, 0 means changes only.
+     */
+    private int resyncInterval = 0;
+    /**
+     * Number of polling cycles between reconciliations of the repository with the scan state, 0 means never.
+     */
+    private int reconciliationInterval = 0;
+    private boolean scanSubfolders = false;
+    private final List<Pattern> immutablePartitionPatterns;
+    /**
+     * Default age in milliseconds after which a directory matching an immutable partition pattern is no longer scanned.
+     */
+    private long immutablePartitionAge = 86400000L;
+    /**
+     * Default number of polling cycles between verification sweeps that ignore the skipping rules.
+     */
+    private int verificationSweepInterval = 720;
+    private boolean expandArchives = false;
+    private boolean profileFiles = false;
+    private int profileReadLimit = 64 * 1024;
+    private int profilerThreads = 2;
+    private int maxEventsPerSecond = 0;
+    private int maxInstancesPerSecond = 0;
+    private int maxInstancesPerEvent = 0;
+    private long maxEventSize = 0;
+
+    /**
+     * Constructor
+     *
+     * @param folderLocation          location of the folder
+     * @param configurationProperties the connector's configuration properties, or null for the defaults
+     * @throws ClassCastException if a configuration property has the wrong type
+     */
+    EventMapperConfiguration(String folderLocation, Map<String, Object> configurationProperties) {
+        this.folderLocation = folderLocation;
+        List<Pattern> patterns = new ArrayList<>();
+        if (configurationProperties != null) {
+            Integer configuredRefreshInterval = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.REFRESH_TIME_INTERVAL);
+            if (configuredRefreshInterval != null) {
+                refreshInterval = configuredRefreshInterval * 1000;
+            }
+            String configuredQualifiedNamePrefix = (String) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.QUALIFIED_NAME_PREFIX);
+            if (configuredQualifiedNamePrefix != null) {
+                qualifiedNamePrefix = configuredQualifiedNamePrefix;
+            }
+            Integer configuredResyncInterval = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.RESYNC_INTERVAL);
+            if (configuredResyncInterval != null) {
+                resyncInterval = configuredResyncInterval;
+            }
+            Integer configuredReconciliationInterval = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.RECONCILIATION_INTERVAL);
+            if (configuredReconciliationInterval != null) {
+                reconciliationInterval = configuredReconciliationInterval;
+            }
+            Boolean configuredScanSubfolders = (Boolean) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.SCAN_SUBFOLDERS);
+            if (configuredScanSubfolders != null) {
+                scanSubfolders = configuredScanSubfolders;
+            }
+            String configuredImmutablePartitionPatterns = (String) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.IMMUTABLE_PARTITION_PATTERNS);
+            if (configuredImmutablePartitionPatterns != null) {
+                for (String pattern : configuredImmutablePartitionPatterns.split(",")) {
+                    if (!pattern.trim().isEmpty()) {
+                        patterns.add(Pattern.compile(pattern.trim()));
+                    }
+                }
+            }
+            Integer configuredImmutablePartitionAge = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.IMMUTABLE_PARTITION_AGE);
+            if (configuredImmutablePartitionAge != null) {
+                immutablePartitionAge = configuredImmutablePartitionAge * 1000L;
+            }
+            Integer configuredVerificationSweepInterval = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.VERIFICATION_SWEEP_INTERVAL);
+            if (configuredVerificationSweepInterval != null) {
+                verificationSweepInterval = configuredVerificationSweepInterval;
+            }
+            Integer configuredMaxEventsPerSecond = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.MAX_EVENTS_PER_SECOND);
+            if (configuredMaxEventsPerSecond != null) {
+                maxEventsPerSecond = configuredMaxEventsPerSecond;
+            }
+            Integer configuredMaxInstancesPerSecond = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.MAX_INSTANCES_PER_SECOND);
+            if (configuredMaxInstancesPerSecond != null) {
+                maxInstancesPerSecond = configuredMaxInstancesPerSecond;
+            }
+            Integer configuredMaxInstancesPerEvent = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.MAX_INSTANCES_PER_EVENT);
+            if (configuredMaxInstancesPerEvent != null) {
+                maxInstancesPerEvent = configuredMaxInstancesPerEvent;
+            }
+            Integer configuredMaxEventSize = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.MAX_EVENT_SIZE);
+            if (configuredMaxEventSize != null) {
+                maxEventSize = configuredMaxEventSize;
+            }
+            Boolean configuredExpandArchives = (Boolean) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.EXPAND_ARCHIVES);
+            if (configuredExpandArchives != null) {
+                expandArchives = configuredExpandArchives;
+            }
+            Boolean configuredProfileFiles = (Boolean) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.PROFILE_FILES);
+            if (configuredProfileFiles != null) {
+                profileFiles = configuredProfileFiles;
+            }
+            Integer configuredProfileReadLimit = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.PROFILE_READ_LIMIT);
+            if (configuredProfileReadLimit != null && configuredProfileReadLimit > 0) {
+                profileReadLimit = configuredProfileReadLimit * 1024;
+            }
+            Integer configuredProfilerThreads = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.PROFILER_THREADS);
+            if (configuredProfilerThreads != null && configuredProfilerThreads > 0) {
+                profilerThreads = configuredProfilerThreads;
+            }
+        }
+        this.immutablePartitionPatterns = Collections.unmodifiableList(patterns);
+    }
+
+    private EventMapperConfiguration(EventMapperConfiguration configuration, String folderLocation) {
+        this.folderLocation = folderLocation;
+        this.refreshInterval = configuration.refreshInterval;
+        this.qualifiedNamePrefix = configuration.qualifiedNamePrefix;
+        this.resyncInterval = configuration.resyncInterval;
+        this.reconciliationInterval = configuration.reconciliationInterval;
+        this.scanSubfolders = configuration.scanSubfolders;
+        this.immutablePartitionPatterns = configuration.immutablePartitionPatterns;
+        this.immutablePartitionAge = configuration.immutablePartitionAge;
+        this.verificationSweepInterval = configuration.verificationSweepInterval;
+        this.expandArchives = configuration.expandArchives;
+        this.profileFiles = configuration.profileFiles;
+        this.profileReadLimit = configuration.profileReadLimit;
+        this.profilerThreads = configuration.profilerThreads;
+        this.maxEventsPerSecond = configuration.maxEventsPerSecond;
+        this.maxInstancesPerSecond = configuration.maxInstancesPerSecond;
+        this.maxInstancesPerEvent = configuration.maxInstancesPerEvent;
+        this.maxEventSize = configuration.maxEventSize;
+    }
+
+    /**
+     * @param folderLocation location of the folder
+     * @return a copy of this configuration for another folder
+     */
+    EventMapperConfiguration withFolderLocation(String folderLocation) {
+        return new EventMapperConfiguration(this, folderLocation);
+    }
+
+    String getFolderLocation() {
+        return folderLocation;
+    }
+
+    int getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    String getQualifiedNamePrefix() {
+        return qualifiedNamePrefix;
+    }
+
+    int getResyncInterval() {
+        return resyncInterval;
+    }
+
+    int getReconciliationInterval() {
+        return reconciliationInterval;
+    }
+
+    boolean isScanSubfolders() {
+        return scanSubfolders;
+    }
+
+    List<Pattern> getImmutablePartitionPatterns() {
+        return immutablePartitionPatterns;
+    }
+
+    long getImmutablePartitionAge() {
+        return immutablePartitionAge;
+    }
+
+    int getVerificationSweepInterval() {
+        return verificationSweepInterval;
+    }
+
+    boolean isExpandArchives() {
+        return expandArchives;
+    }
+
+    boolean isProfileFiles() {
+        return profileFiles;
+    }
+
+    int getProfileReadLimit() {
+        return profileReadLimit;
+    }
+
+    int getProfilerThreads() {
+        return profilerThreads;
+    }
+
+    int getMaxEventsPerSecond() {
+        return maxEventsPerSecond;
+    }
+
+    int getMaxInstancesPerSecond() {
+        return maxInstancesPerSecond;
+    }
+
+    int getMaxInstancesPerEvent() {
+        return maxInstancesPerEvent;
+    }
+
+    long getMaxEventSize() {
+        return maxEventSize;
+    }
+}
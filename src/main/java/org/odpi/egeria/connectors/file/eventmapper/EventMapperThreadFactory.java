@@ -0,0 +1,36 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.eventmapper;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ThreadFactory for the event mapper's managed executors. Threads are named after the owning
+ * server and purpose, so they can be identified in thread dumps, and are daemon threads so that
+ * they never hold up the JVM shutting down.
+ */
+class EventMapperThreadFactory implements ThreadFactory {
+    private final String namePrefix;
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+    /**
+     * Constructor
+     *
+     * @param serverName name of the server the event mapper is running in
+     * @param purpose    what the threads are used for, e.g. "poller"
+     */
+    EventMapperThreadFactory(String serverName, String purpose) {
+        this.namePrefix = "FileOMRSRepositoryEventMapper-" + serverName + "-" + purpose + "-";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, namePrefix + threadNumber.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
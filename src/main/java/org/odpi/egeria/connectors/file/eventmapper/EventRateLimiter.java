@@ -0,0 +1,116 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.eventmapper;
+
+/**
+ * Token buckets limiting the batch events the event mapper sends to the cohort, by events per second and by
+ * instances per second. Each bucket holds up to one second of tokens, so short bursts are sent straight away
+ * and sustained throughput is held to the configured rates.
+ * <p>
+ * A sender reserves its tokens before sending and is told how long to wait, so that it can wait in a way that
+ * is cut short when the event mapper is stopped. Reservations may take a bucket into debt, which later senders
+ * wait out, so an event larger than the bucket is still sent. The total wait is kept as a metric, and the events
+ * are counted once the sender has waited, so an event abandoned by a stop is not counted.
+ */
+class EventRateLimiter {
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private TokenBucket eventBucket;
+    private TokenBucket instanceBucket;
+    private long eventCount = 0;
+    private long instanceCount = 0;
+    private long waitNanos = 0;
+
+    private static class TokenBucket {
+        private final double ratePerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(int ratePerSecond, long now) {
+            this.ratePerNano = (double) ratePerSecond / NANOS_PER_SECOND;
+            this.capacity = ratePerSecond;
+            this.tokens = capacity;
+            this.lastRefill = now;
+        }
+
+        long reserve(int count, long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * ratePerNano);
+            lastRefill = now;
+            tokens -= count;
+            return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / ratePerNano);
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param eventsPerSecond    maximum events per second, or 0 for no limit
+     * @param instancesPerSecond maximum entities and relationships per second, or 0 for no limit
+     */
+    EventRateLimiter(int eventsPerSecond, int instancesPerSecond) {
+        setRates(eventsPerSecond, instancesPerSecond);
+    }
+
+    /**
+     * Change the rates, keeping the counts and the total wait.
+     *
+     * @param eventsPerSecond    maximum events per second, or 0 for no limit
+     * @param instancesPerSecond maximum entities and relationships per second, or 0 for no limit
+     */
+    synchronized void setRates(int eventsPerSecond, int instancesPerSecond) {
+        long now = System.nanoTime();
+        this.eventBucket = eventsPerSecond > 0 ? new TokenBucket(eventsPerSecond, now) : null;
+        this.instanceBucket = instancesPerSecond > 0 ? new TokenBucket(instancesPerSecond, now) : null;
+    }
+
+    /**
+     * Reserve the tokens to send an event.
+     *
+     * @param instances number of entities and relationships in the event
+     * @return time in milliseconds to wait before sending the event, after which {@link #recordSent(int)} is called
+     */
+    synchronized long reserve(int instances) {
+        long now = System.nanoTime();
+        long nanos = 0;
+        if (eventBucket != null) {
+            nanos = eventBucket.reserve(1, now);
+        }
+        if (instanceBucket != null) {
+            nanos = Math.max(nanos, instanceBucket.reserve(instances, now));
+        }
+        waitNanos += nanos;
+        return (nanos + 999999) / 1000000;
+    }
+
+    /**
+     * Count an event whose sender has waited out its reservation.
+     *
+     * @param instances number of entities and relationships in the event
+     */
+    synchronized void recordSent(int instances) {
+        eventCount++;
+        instanceCount += instances;
+    }
+
+    /**
+     * @return number of events sent through the limiter
+     */
+    synchronized long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * @return number of entities and relationships sent through the limiter
+     */
+    synchronized long getInstanceCount() {
+        return instanceCount;
+    }
+
+    /**
+     * @return total time in milliseconds senders have been told to wait
+     */
+    synchronized long getWaitTime() {
+        return waitNanos / 1000000;
+    }
+}
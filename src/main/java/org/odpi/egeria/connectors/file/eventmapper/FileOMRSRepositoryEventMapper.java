@@ -2,25 +2,69 @@
 /* Copyright Contributors to the ODPi Egeria project. */
 package org.odpi.egeria.connectors.file.eventmapper;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
+import org.odpi.egeria.connectors.file.archive.ArchiveIndexReader;
+import org.odpi.egeria.connectors.file.archive.ArchiveMember;
 import org.odpi.egeria.connectors.file.auditlog.FileOMRSAuditCode;
 import org.odpi.egeria.connectors.file.auditlog.FileOMRSErrorCode;
-import org.odpi.openmetadata.adapters.repositoryservices.caching.repository.CachedRepositoryAccessor;
+import org.odpi.egeria.connectors.file.journal.ChangeJournal;
+import org.odpi.egeria.connectors.file.journal.JournalRecord;
+import org.odpi.egeria.connectors.file.listing.ListingEntry;
+import org.odpi.egeria.connectors.file.listing.ListingWalk;
+import org.odpi.egeria.connectors.file.listing.StorageLister;
+import org.odpi.egeria.connectors.file.manifest.ManifestEntry;
+import org.odpi.egeria.connectors.file.manifest.ManifestReader;
+import org.odpi.egeria.connectors.file.reconcile.DirectoryDigests;
+import org.odpi.egeria.connectors.file.profile.FileProfile;
+import org.odpi.egeria.connectors.file.profile.FileProfiler;
+import org.odpi.egeria.connectors.file.scanstate.ScanStateIndex;
+import org.odpi.egeria.connectors.file.sharding.ShardCoordinator;
+import org.odpi.egeria.connectors.file.spill.MemoryBudget;
+import org.odpi.egeria.connectors.file.spill.PendingChange;
+import org.odpi.egeria.connectors.file.spill.PendingChangeQueue;
+import org.odpi.egeria.connectors.file.trace.PipelineTracer;
 import org.odpi.openmetadata.adapters.repositoryservices.caching.repositoryconnector.CachingOMRSRepositoryProxyConnector;
+import org.odpi.openmetadata.frameworks.auditlog.messagesets.AuditLogMessageDefinition;
 import org.odpi.openmetadata.frameworks.connectors.ffdc.ConnectorCheckedException;
 import org.odpi.openmetadata.frameworks.connectors.properties.EndpointProperties;
 import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.OMRSMetadataCollection;
 import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.*;
 import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.typedefs.TypeDef;
 import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.typedefs.TypeDefSummary;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.repositoryconnector.OMRSRepositoryHelper;
 import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.repositoryeventmapper.OMRSRepositoryEventMapperBase;
 import org.odpi.openmetadata.repositoryservices.ffdc.exception.*;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * FileOMRSRepositoryEventMapper supports the event mapper function for Apache File
@@ -29,33 +73,100 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class FileOMRSRepositoryEventMapper extends OMRSRepositoryEventMapperBase
 //        implements OpenMetadataTopicListener
 {
-    CachedRepositoryAccessor cachedRepositoryAccessor = null;
-    private static final String DATA_FILE = "DataFile";
-    private static final String CONNECTION = "Connection";
-    private static final String CONNECTOR_TYPE = "ConnectorType";
-    private static final String ENDPOINT = "Endpoint";
-    private static final String CONNECTION_ENDPOINT = "ConnectionEndpoint";
-    private static final String CONNECTION_CONNECTOR_TYPE = "ConnectionConnectorType";
-    private static final String CONNECTION_TO_ASSET = "ConnectionToAsset";
+    private ReferenceCopyStore referenceCopyStore = null;
+    private InstanceEventSender eventSender = null;
+    private static final String DATA_FILE = DataFileInstanceBuilder.DATA_FILE;
+    private static final String CONNECTION = DataFileInstanceBuilder.CONNECTION;
+    private static final String CONNECTOR_TYPE = DataFileInstanceBuilder.CONNECTOR_TYPE;
+    private static final String ENDPOINT = DataFileInstanceBuilder.ENDPOINT;
+    private static final String CONNECTION_ENDPOINT = DataFileInstanceBuilder.CONNECTION_ENDPOINT;
+    private static final String CONNECTION_CONNECTOR_TYPE = DataFileInstanceBuilder.CONNECTION_CONNECTOR_TYPE;
+    private static final String CONNECTION_TO_ASSET = DataFileInstanceBuilder.CONNECTION_TO_ASSET;
+    // number of files read from the scan state at a time when the assets are sent again
+    private static final int REFRESH_PAGE_SIZE = 1000;
+    // number of entries asked for in each page when listing through a storage lister
+    private static final int LISTING_PAGE_SIZE = 1000;
+    // number of files waiting for their profiles before the oldest are saved during the scan
+    private static final int PROFILED_SAVES_IN_FLIGHT = 1000;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
     //    private static final Logger log = LoggerFactory.getLogger(FileOMRSRepositoryEventMapper.class);
     private final AtomicBoolean running = new AtomicBoolean(false);
+    // refreshes requested by the cohort, coalesced until the polling thread next sends its events
+    private final AtomicBoolean refreshRequested = new AtomicBoolean(false);
+    private final Set<String> refreshRequestedGUIDs = ConcurrentHashMap.newKeySet();
 
     private Map<String, String> typeNameToGuidMap = null;
 
 
     private String userId = null;
     /**
-     * Default polling refresh interval in milliseconds.
+     * Default time in milliseconds that disconnect waits for in-flight work to drain.
      */
-    private int refreshInterval = 5000;
-    private String qualifiedNamePrefix = "";
+    private int shutdownTimeout = 30000;
+    /**
+     * Default time in milliseconds during which repeats of an audit code are suppressed.
+     */
+    private int auditLogSuppressionInterval = 300000;
+    private boolean debugAuditLogging = false;
+    private RateLimitedAuditLog pollingAuditLog;
+    // replaced when the qualified name prefix is changed
+    private volatile DataFileInstanceBuilder dataFileInstanceBuilder;
+    private boolean scanStateOffHeap = false;
+    private ShardCoordinator shardCoordinator = null;
+    private boolean shardByPath = false;
+    /**
+     * Default interval in milliseconds between shard lease heartbeats.
+     */
+    private int shardHeartbeatInterval = 10000;
+    private ScheduledExecutorService heartbeatExecutor;
+    private volatile ThreadPoolExecutor profilerExecutor;
+    private String bootstrapManifest = null;
+    private int bootstrapThreads = Runtime.getRuntime().availableProcessors();
+    private int bootstrapBatchSize = 1000;
+    // lists the storage location when it is not scanned as a local folder
+    private StorageLister storageLister = null;
+    private int listingThreads = 8;
+    private ExecutorService listingExecutor;
+    // records the changes sent to the cohort, for consumers that fall behind or restart
+    private ChangeJournal changeJournal = null;
+    private String changeJournalFolder = null;
+    /**
+     * Default size in megabytes at which a new change journal segment is started.
+     */
+    private int changeJournalSegmentSize = 64;
+    private int changeJournalSegments = 16;
+    // null unless tracing is configured, so the stages only check for null when it is off
+    private PipelineTracer pipelineTracer = null;
+    private String traceFolder = null;
+    private int traceSampleInterval = 100;
+    /**
+     * Default size in megabytes at which a new trace file is started.
+     */
+    private int traceFileSize = 16;
+    private int traceFiles = 8;
+    /**
+     * Default memory budget in megabytes for the changes waiting for their events, 0 means no limit.
+     */
+    private int memoryBudget = 0;
+    private String spillFolder = System.getProperty("java.io.tmpdir");
+    /**
+     * JSON file whose properties override the connector's configuration properties, watched for changes, or null.
+     */
+    private String configurationFile = null;
+    // last modified time of the configuration file when it was last read, 0 if there was no file
+    private long configurationFileLastModified = 0;
+    private EventRateLimiter eventRateLimiter;
+    // time from a file being modified to its batch event being sent
+    private final LatencyHistogram eventLatency = new LatencyHistogram();
     protected String metadataCollectionId = null;
     protected String metadataCollectionName = null;
     protected OMRSMetadataCollection metadataCollection = null;
 
     private String repositoryName = null;
+    // names the event mapper's threads
+    private String serverName = null;
 
-    private String folderLocation;
+    private final AtomicReference<EventMapperConfiguration> configuration = new AtomicReference<>(new EventMapperConfiguration(null, null));
 
     final List<String> supportedTypeNames = Arrays.asList(new String[]{
             // entity types
@@ -76,6 +187,7 @@ public class FileOMRSRepositoryEventMapper extends OMRSRepositoryEventMapperBase
     });
 
     private PollingThread pollingThread;
+    private ExecutorService pollingExecutor;
 
     /**
      * Default constructor
@@ -86,21 +198,82 @@ public class FileOMRSRepositoryEventMapper extends OMRSRepositoryEventMapperBase
     }
 
     /**
-     * get folder location - synchronised as there is multithreaded access
+     * get folder location - read from the configuration snapshot, so it takes no lock
      *
      * @return folder location as a string
      */
-    synchronized public String getFolderLocation() {
-        return folderLocation;
+    public String getFolderLocation() {
+        return configuration.get().getFolderLocation();
     }
 
     /**
-     * set folder location - synchronised as there is multithreaded access
+     * set folder location - publishes a new configuration snapshot
      *
      * @param folderLocation location of the folder
      */
-    synchronized public void setFolderLocation(String folderLocation) {
-        this.folderLocation = folderLocation;
+    public void setFolderLocation(String folderLocation) {
+        configuration.updateAndGet(current -> current.withFolderLocation(folderLocation));
+    }
+
+    /**
+     * Change the settings that can be changed while the event mapper is running: the refresh interval, the
+     * qualified name prefix, the scanning filters, the archive and profiling options, the profiler threads and
+     * the event rate and packing limits. The other configuration properties are ignored until the next start.
+     * The polling thread picks the new settings up at the start of its next cycle.
+     *
+     * The connector's configuration properties are only read at start. An embedder holding the event mapper can
+     * call this directly; otherwise set the configurationFile property, and the polling thread calls this with the
+     * connector's configuration properties overridden by those in the file whenever the file changes.
+     *
+     * @param configurationProperties the new configuration properties
+     * @throws ConnectorCheckedException if a configuration property is not valid, in which case nothing changes
+     */
+    public void updateConfiguration(Map<String, Object> configurationProperties) throws ConnectorCheckedException {
+        final String methodName = "updateConfiguration";
+        EventMapperConfiguration updated = null;
+        try {
+            updated = new EventMapperConfiguration(null, configurationProperties);
+        } catch (ClassCastException | PatternSyntaxException e) {
+            raiseConnectorCheckedException(FileOMRSErrorCode.CONFIGURATION_NOT_VALID, methodName, e, e.getMessage());
+        }
+        EventMapperConfiguration newConfiguration = updated;
+        configuration.updateAndGet(current -> newConfiguration.withFolderLocation(current.getFolderLocation()));
+    }
+
+    /**
+     * @return whether the configuration file has been created, changed or removed since it was last read
+     */
+    private boolean isConfigurationFileChanged() {
+        return configurationFile != null && new File(configurationFile).lastModified() != configurationFileLastModified;
+    }
+
+    /**
+     * Read the configuration file, if there is one, remembering when it was last modified so that it is only
+     * read again once it changes. A missing file overrides nothing.
+     *
+     * @return the connector's configuration properties, overridden by those in the configuration file
+     * @throws IOException if the file cannot be read or does not hold a JSON object
+     */
+    private Map<String, Object> readConfigurationFile() throws IOException {
+        Map<String, Object> configurationProperties = connectionProperties.getConfigurationProperties();
+        if (configurationFile == null) {
+            return configurationProperties;
+        }
+        File file = new File(configurationFile);
+        // taken first, so a change made while the file is read is picked up next time
+        configurationFileLastModified = file.lastModified();
+        if (configurationFileLastModified == 0) {
+            return configurationProperties;
+        }
+        Map<String, Object> overridden = new HashMap<>();
+        if (configurationProperties != null) {
+            overridden.putAll(configurationProperties);
+        }
+        Map<String, Object> fileProperties = OBJECT_MAPPER.readValue(file, new TypeReference<Map<String, Object>>() {});
+        if (fileProperties != null) {
+            overridden.putAll(fileProperties);
+        }
+        return overridden;
     }
 
     /**
@@ -135,6 +308,7 @@ public class FileOMRSRepositoryEventMapper extends OMRSRepositoryEventMapperBase
 
         final String methodName = "start";
         repositoryName = this.repositoryConnector.getRepositoryName();
+        serverName = this.repositoryConnector.getServerName();
         auditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_STARTING.getMessageDefinition());
 
         if (!(repositoryConnector instanceof CachingOMRSRepositoryProxyConnector)) {
@@ -156,22 +330,249 @@ public class FileOMRSRepositoryEventMapper extends OMRSRepositoryEventMapperBase
              this.userId = "OMAGServer";
          }
         if (configurationProperties != null) {
-            Integer configuredRefreshInterval = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.REFRESH_TIME_INTERVAL);
-            if (configuredRefreshInterval != null) {
-                refreshInterval = configuredRefreshInterval * 1000;
+            Integer configuredShutdownTimeout = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.SHUTDOWN_TIMEOUT);
+            if (configuredShutdownTimeout != null) {
+                shutdownTimeout = configuredShutdownTimeout * 1000;
+            }
+            Boolean configuredDebugAuditLogging = (Boolean) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.DEBUG_AUDIT_LOGGING);
+            if (configuredDebugAuditLogging != null) {
+                debugAuditLogging = configuredDebugAuditLogging;
+            }
+            Integer configuredSuppressionInterval = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.AUDIT_LOG_SUPPRESSION_INTERVAL);
+            if (configuredSuppressionInterval != null) {
+                auditLogSuppressionInterval = configuredSuppressionInterval * 1000;
+            }
+            Boolean configuredScanStateOffHeap = (Boolean) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.SCAN_STATE_OFF_HEAP);
+            if (configuredScanStateOffHeap != null) {
+                scanStateOffHeap = configuredScanStateOffHeap;
+            }
+            bootstrapManifest = (String) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.BOOTSTRAP_MANIFEST);
+            Integer configuredBootstrapThreads = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.BOOTSTRAP_THREADS);
+            if (configuredBootstrapThreads != null && configuredBootstrapThreads > 0) {
+                bootstrapThreads = configuredBootstrapThreads;
+            }
+            Integer configuredBootstrapBatchSize = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.BOOTSTRAP_BATCH_SIZE);
+            if (configuredBootstrapBatchSize != null && configuredBootstrapBatchSize > 0) {
+                bootstrapBatchSize = configuredBootstrapBatchSize;
+            }
+            Integer configuredListingThreads = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.LISTING_THREADS);
+            if (configuredListingThreads != null && configuredListingThreads > 0) {
+                listingThreads = configuredListingThreads;
+            }
+            String configuredStorageLister = (String) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.STORAGE_LISTER);
+            if (configuredStorageLister != null) {
+                storageLister = newStorageLister(methodName, configuredStorageLister);
+            }
+            changeJournalFolder = (String) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.CHANGE_JOURNAL_FOLDER);
+            Integer configuredChangeJournalSegmentSize = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.CHANGE_JOURNAL_SEGMENT_SIZE);
+            if (configuredChangeJournalSegmentSize != null && configuredChangeJournalSegmentSize > 0) {
+                changeJournalSegmentSize = configuredChangeJournalSegmentSize;
+            }
+            Integer configuredChangeJournalSegments = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.CHANGE_JOURNAL_SEGMENTS);
+            if (configuredChangeJournalSegments != null && configuredChangeJournalSegments > 0) {
+                changeJournalSegments = configuredChangeJournalSegments;
+            }
+            traceFolder = (String) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.TRACE_FOLDER);
+            Integer configuredTraceSampleInterval = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.TRACE_SAMPLE_INTERVAL);
+            if (configuredTraceSampleInterval != null) {
+                traceSampleInterval = configuredTraceSampleInterval;
+            }
+            Integer configuredTraceFileSize = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.TRACE_FILE_SIZE);
+            if (configuredTraceFileSize != null && configuredTraceFileSize > 0) {
+                traceFileSize = configuredTraceFileSize;
+            }
+            Integer configuredTraceFiles = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.TRACE_FILES);
+            if (configuredTraceFiles != null && configuredTraceFiles > 0) {
+                traceFiles = configuredTraceFiles;
+            }
+            Integer configuredMemoryBudget = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.MEMORY_BUDGET);
+            if (configuredMemoryBudget != null && configuredMemoryBudget >= 0) {
+                memoryBudget = configuredMemoryBudget;
+            }
+            String configuredSpillFolder = (String) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.SPILL_FOLDER);
+            if (configuredSpillFolder != null) {
+                spillFolder = configuredSpillFolder;
             }
-            String configuredQualifiedNamePrefix = (String) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.QUALIFIED_NAME_PREFIX);
-            if (configuredQualifiedNamePrefix != null) {
-                qualifiedNamePrefix = configuredQualifiedNamePrefix;
+            configurationFile = (String) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.CONFIGURATION_FILE);
+        }
+        EventMapperConfiguration startConfiguration = null;
+        try {
+            startConfiguration = new EventMapperConfiguration(getFolderLocation(), readConfigurationFile());
+        } catch (IOException | ClassCastException | PatternSyntaxException e) {
+            raiseConnectorCheckedException(FileOMRSErrorCode.CONFIGURATION_NOT_VALID, methodName, e, e.getMessage());
+        }
+        configuration.set(startConfiguration);
+        this.pollingAuditLog = new RateLimitedAuditLog(auditLog, debugAuditLogging, auditLogSuppressionInterval);
+        if (configurationProperties != null && configurationProperties.get(FileOMRSRepositoryEventMapperProvider.SHARD_LEASE_FOLDER) != null) {
+            startSharding(methodName, configurationProperties, (String) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.SHARD_LEASE_FOLDER));
+        }
+        if (changeJournalFolder != null) {
+            try {
+                this.changeJournal = new ChangeJournal(changeJournalFolder, changeJournalSegmentSize * 1024L * 1024L, changeJournalSegments);
+            } catch (IOException e) {
+                raiseConnectorCheckedException(FileOMRSErrorCode.JOURNAL_NOT_USABLE, methodName, e, changeJournalFolder, e.getMessage());
             }
         }
+        if (traceFolder != null && traceSampleInterval > 0) {
+            try {
+                this.pipelineTracer = new PipelineTracer(traceFolder, traceSampleInterval, traceFileSize * 1024L * 1024L, traceFiles);
+            } catch (IOException e) {
+                raiseConnectorCheckedException(FileOMRSErrorCode.TRACE_NOT_USABLE, methodName, e, traceFolder, e.getMessage());
+            }
+        }
+        if (storageLister != null) {
+            this.listingExecutor = Executors.newFixedThreadPool(listingThreads, new EventMapperThreadFactory(serverName, "lister"));
+        }
+        this.referenceCopyStore = new CachingReferenceCopyStore(userId, serverName, metadataCollectionId, metadataCollection);
+        this.eventSender = new CohortEventSender(repositoryConnector, repositoryEventProcessor);
+        startPollingThread(startConfiguration);
+    }
+
+    /**
+     * Start polling the folder, saving to the reference copy store given and sending the events to the sender given
+     * rather than to the repository connector's, so that the polling thread can be run without a server. This is
+     * what the tests use in place of {@link #start()}; only the configuration properties that can be changed while
+     * running are read, and the other settings keep their defaults. {@link #stopPolling(String)} stops it.
+     *
+     * @param folderLocation          location of the folder
+     * @param configurationProperties the configuration properties
+     * @param repositoryHelper        repository helper the instances are built with
+     * @param serverName              name of the server, which names the threads
+     * @param metadataCollectionId    id of the metadata collection the reference copies are homed in
+     * @param referenceCopyStore      store the reference copies are saved to
+     * @param eventSender             sender of the events
+     * @param auditLogWriter          writes the polling thread's audit messages
+     * @throws ConnectorCheckedException if a configuration property is not valid
+     */
+    synchronized void startPolling(String folderLocation,
+                                   Map<String, Object> configurationProperties,
+                                   OMRSRepositoryHelper repositoryHelper,
+                                   String serverName,
+                                   String metadataCollectionId,
+                                   ReferenceCopyStore referenceCopyStore,
+                                   InstanceEventSender eventSender,
+                                   BiConsumer<String, AuditLogMessageDefinition> auditLogWriter) throws ConnectorCheckedException {
+        final String methodName = "startPolling";
+        EventMapperConfiguration startConfiguration = null;
+        try {
+            startConfiguration = new EventMapperConfiguration(folderLocation, configurationProperties);
+        } catch (ClassCastException | PatternSyntaxException e) {
+            raiseConnectorCheckedException(FileOMRSErrorCode.CONFIGURATION_NOT_VALID, methodName, e, e.getMessage());
+        }
+        configuration.set(startConfiguration);
+        this.repositoryHelper = repositoryHelper;
+        this.serverName = serverName;
+        this.metadataCollectionId = metadataCollectionId;
+        this.referenceCopyStore = referenceCopyStore;
+        this.eventSender = eventSender;
+        this.pollingAuditLog = new RateLimitedAuditLog(auditLogWriter, debugAuditLogging, auditLogSuppressionInterval);
+        startPollingThread(startConfiguration);
+    }
 
+    /**
+     * Create what the polling thread uses from the start configuration, and start it.
+     *
+     * @param startConfiguration the configuration at start
+     */
+    private void startPollingThread(EventMapperConfiguration startConfiguration) {
+        this.eventRateLimiter = new EventRateLimiter(startConfiguration.getMaxEventsPerSecond(), startConfiguration.getMaxInstancesPerSecond());
+        this.dataFileInstanceBuilder = new DataFileInstanceBuilder(repositoryHelper,
+                                                                   repositoryName,
+                                                                   metadataCollectionId,
+                                                                   metadataCollectionName,
+                                                                   userId,
+                                                                   startConfiguration.getQualifiedNamePrefix(),
+                                                                   1);
+
+        if (startConfiguration.isProfileFiles()) {
+            this.profilerExecutor = newProfilerExecutor(startConfiguration.getProfilerThreads());
+        }
+        this.pollingExecutor = Executors.newSingleThreadExecutor(new EventMapperThreadFactory(serverName, "poller"));
         this.pollingThread = new PollingThread();
         pollingThread.start();
     }
 
 
 
+    /**
+     * Create the storage lister named in the configuration, for the folder location.
+     *
+     * @param methodName calling method
+     * @param className  class name of a {@link StorageLister} with a public constructor taking the location
+     * @return the storage lister
+     * @throws ConnectorCheckedException if the storage lister cannot be created
+     */
+    private StorageLister newStorageLister(String methodName, String className) throws ConnectorCheckedException {
+        try {
+            return Class.forName(className).asSubclass(StorageLister.class).getConstructor(String.class).newInstance(getFolderLocation());
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            raiseConnectorCheckedException(FileOMRSErrorCode.STORAGE_LISTER_NOT_USABLE, methodName, e, className, getFolderLocation());
+        }
+        return null;
+    }
+
+    /**
+     * Create the pool that profiles the data files while the polling thread carries on scanning.
+     *
+     * @param threads number of profiler threads
+     * @return the profiler pool
+     */
+    private ThreadPoolExecutor newProfilerExecutor(int threads) {
+        // when the queue is full the polling thread profiles the file itself, which slows the scan to the profilers' pace
+        return new ThreadPoolExecutor(threads,
+                                      threads,
+                                      0,
+                                      TimeUnit.MILLISECONDS,
+                                      new ArrayBlockingQueue<>(threads * 64),
+                                      new EventMapperThreadFactory(serverName, "profiler"),
+                                      new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Join the shards sharing the folder tree through the lease folder, and keep the lease up to date on the heartbeat executor.
+     *
+     * @param methodName              calling method
+     * @param configurationProperties the connector's configuration properties
+     * @param shardLeaseFolder        folder shared by all the shards
+     * @throws ConnectorCheckedException if the lease folder cannot be used
+     */
+    private void startSharding(String methodName, Map<String, Object> configurationProperties, String shardLeaseFolder) throws ConnectorCheckedException {
+        String instanceId = (String) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.SHARD_INSTANCE_ID);
+        if (instanceId == null) {
+            instanceId = repositoryConnector.getServerName();
+        }
+        shardByPath = "path".equals(configurationProperties.get(FileOMRSRepositoryEventMapperProvider.SHARD_KEY));
+        Integer configuredHeartbeatInterval = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.SHARD_HEARTBEAT_INTERVAL);
+        if (configuredHeartbeatInterval != null) {
+            shardHeartbeatInterval = configuredHeartbeatInterval * 1000;
+        }
+        // by default a shard is dropped after missing 3 heartbeats
+        long leaseTimeout = shardHeartbeatInterval * 3L;
+        Integer configuredLeaseTimeout = (Integer) configurationProperties.get(FileOMRSRepositoryEventMapperProvider.SHARD_LEASE_TIMEOUT);
+        if (configuredLeaseTimeout != null) {
+            leaseTimeout = configuredLeaseTimeout * 1000L;
+        }
+        try {
+            shardCoordinator = new ShardCoordinator(shardLeaseFolder, instanceId, leaseTimeout);
+            shardCoordinator.heartbeat();
+        } catch (IOException e) {
+            raiseConnectorCheckedException(FileOMRSErrorCode.SHARD_LEASE_FOLDER_NOT_USABLE, methodName, e, shardLeaseFolder);
+        }
+        auditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_SHARD_MEMBERSHIP_CHANGED.getMessageDefinition(shardCoordinator.getMembers().size() + "",
+                                                                                                                    shardCoordinator.getMembers().toString()));
+        heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(new EventMapperThreadFactory(serverName, "shard-heartbeat"));
+        heartbeatExecutor.scheduleAtFixedRate(() -> {
+            try {
+                if (shardCoordinator.heartbeat()) {
+                    auditLog.logMessage("heartbeat", FileOMRSAuditCode.EVENT_MAPPER_SHARD_MEMBERSHIP_CHANGED.getMessageDefinition(shardCoordinator.getMembers().size() + "",
+                                                                                                                                shardCoordinator.getMembers().toString()));
+                }
+            } catch (IOException e) {
+                pollingAuditLog.logRateLimitedMessage("heartbeat", FileOMRSAuditCode.EVENT_MAPPER_SHARD_HEARTBEAT_FAILED, shardLeaseFolder, e.getMessage());
+            }
+        }, shardHeartbeatInterval, shardHeartbeatInterval, TimeUnit.MILLISECONDS);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -179,10 +580,151 @@ public class FileOMRSRepositoryEventMapper extends OMRSRepositoryEventMapperBase
     synchronized public void disconnect() throws ConnectorCheckedException {
         super.disconnect();
         final String methodName = "disconnect";
-        pollingThread.stop();
+        stopPolling(methodName);
         auditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_SHUTDOWN.getMessageDefinition(repositoryConnector.getServerName()));
     }
 
+    /**
+     * Stop the polling thread, waiting up to the shutdown timeout for it to finish, and close what it was using.
+     *
+     * @param methodName calling method
+     */
+    synchronized void stopPolling(String methodName) {
+        if (pollingThread != null) {
+            pollingThread.stop();
+        }
+        if (pollingExecutor != null) {
+            // let the in-flight saves and events drain, the polling thread checks for the stop between files
+            pollingExecutor.shutdown();
+            try {
+                if (!pollingExecutor.awaitTermination(shutdownTimeout, TimeUnit.MILLISECONDS)) {
+                    pollingAuditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_SHUTDOWN_TIMED_OUT, shutdownTimeout + "");
+                    pollingExecutor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                pollingExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (heartbeatExecutor != null) {
+            heartbeatExecutor.shutdownNow();
+        }
+        if (profilerExecutor != null) {
+            profilerExecutor.shutdownNow();
+        }
+        if (listingExecutor != null) {
+            listingExecutor.shutdownNow();
+        }
+        if (changeJournal != null) {
+            try {
+                changeJournal.close();
+            } catch (IOException e) {
+                // the journal drops the torn record when it is next opened
+            }
+        }
+        if (pipelineTracer != null) {
+            try {
+                pipelineTracer.close();
+            } catch (IOException e) {
+                // the spans of the last cycle are lost
+            }
+        }
+        if (shardCoordinator != null) {
+            try {
+                // let the other shards take over straight away
+                shardCoordinator.release();
+            } catch (IOException e) {
+                // the lease will time out instead
+            }
+        }
+        if (pollingAuditLog != null) {
+            pollingAuditLog.flush(methodName);
+        }
+    }
+
+    /**
+     * @return number of events sent to the cohort since the event mapper started
+     */
+    public long getEventsSent() {
+        return eventRateLimiter == null ? 0 : eventRateLimiter.getEventCount();
+    }
+
+    /**
+     * @return number of entities and relationships sent to the cohort since the event mapper started
+     */
+    public long getInstancesSent() {
+        return eventRateLimiter == null ? 0 : eventRateLimiter.getInstanceCount();
+    }
+
+    /**
+     * The latency is measured from a new or changed file's last modified time to the sending of the batch event
+     * holding its DataFile, so it covers the polling interval, the scan, the saves and any rate limiting.
+     *
+     * @param percentile percentile between 0 and 100
+     * @return the latency at the percentile in milliseconds, since the event mapper started
+     */
+    public long getEventLatencyPercentile(double percentile) {
+        return eventLatency.getPercentile(percentile);
+    }
+
+    /**
+     * Ask for all of this event mapper's assets to be sent to the cohort again, for example after a cohort member
+     * restarts. The assets are sent from the scan state at the end of the next polling cycle, through the event
+     * rate limit, so any number of requests made during a cycle cost one refresh.
+     */
+    public void requestRefresh() {
+        refreshRequested.set(true);
+    }
+
+    /**
+     * Ask for one asset to be sent to the cohort again at the end of the next polling cycle.
+     *
+     * @param dataFileGUID guid of the asset's DataFile; guids that are not for one of this event mapper's files are ignored
+     */
+    public void requestRefresh(String dataFileGUID) {
+        if (dataFileGUID != null) {
+            refreshRequestedGUIDs.add(dataFileGUID);
+        }
+    }
+
+    /**
+     * @return sequence number of the last change recorded in the change journal, or 0 if there is no journal or it is empty
+     */
+    public long getLastJournalSequence() {
+        return changeJournal == null ? 0 : changeJournal.getLastSequence();
+    }
+
+    /**
+     * Replay the new, changed and deleted DataFiles recorded in the change journal, so that a consumer that fell
+     * behind or restarted can catch up without a full refresh. Each polling cycle's changes are recorded once
+     * its events are sent. If the journal no longer holds the sequence number, the first record passed has a
+     * later sequence number, and the consumer should call {@link #requestRefresh()} instead.
+     *
+     * @param fromSequence sequence number of the first change wanted
+     * @param consumer     receives the changes in sequence order
+     * @return the sequence number to replay from next time
+     * @throws ConnectorCheckedException if there is no change journal or it cannot be read
+     */
+    public long replayChanges(long fromSequence, Consumer<JournalRecord> consumer) throws ConnectorCheckedException {
+        final String methodName = "replayChanges";
+        if (changeJournal == null) {
+            raiseConnectorCheckedException(FileOMRSErrorCode.JOURNAL_NOT_USABLE, methodName, null, changeJournalFolder, "no change journal is configured");
+        }
+        try {
+            return changeJournal.replay(fromSequence, consumer);
+        } catch (IOException e) {
+            raiseConnectorCheckedException(FileOMRSErrorCode.JOURNAL_NOT_USABLE, methodName, e, changeJournalFolder, e.getMessage());
+        }
+        return fromSequence;
+    }
+
+    /**
+     * @return total time in milliseconds spent waiting for the event rate limit since the event mapper started
+     */
+    public long getEventRateLimitWaitTime() {
+        return eventRateLimiter == null ? 0 : eventRateLimiter.getWaitTime();
+    }
+
     /**
      * Throws a ConnectorCheckedException based on the provided parameters.
      *
@@ -231,42 +773,78 @@ public class FileOMRSRepositoryEventMapper extends OMRSRepositoryEventMapperBase
 
 
     /**
-     * Class to poll for file content
+     * Class to poll for file content. It runs on the mapper's polling executor and checks for a stop
+     * between files and while waiting, so it can be stopped within milliseconds.
      */
     private class PollingThread implements Runnable {
-        Thread worker = null;
+        private final CountDownLatch stopped = new CountDownLatch(1);
+        private long shardMembershipVersion = -1;
+        // whether the membership has changed since what other shards own was last handed over to them
+        private boolean handoverPending = false;
+        // whether the next scan must ignore the skipping rules, until one has completed
+        private boolean verificationSweepRequested = false;
+        // whether the derived instances of changed files are saved again, as the prefix in their qualified names
+        // has changed, until a scan has completed
+        private boolean derivedInstancesChanged = false;
+        // whether the shards may not yet agree on who owns what, so what other shards own is kept as it was
+        private boolean membershipSettling = false;
+        // canonical paths of the files and folders found this scan that another shard owns, whose reference copies
+        // are purged at the end of the scan without sending events
+        private final Set<String> handedOver = new HashSet<>();
+
+        // the files seen by the previous scan, used to find the changes
+        private final ScanStateIndex scanState = new ScanStateIndex(scanStateOffHeap);
+        // the changes found by the last refresh until their events are sent, the purges in one queue and the new and
+        // changed files in the other, each in the order they were found, sharing one memory budget
+        private final MemoryBudget pendingChangeBudget = new MemoryBudget(memoryBudget * 1024L * 1024L);
+        private final PendingChangeQueue pendingPurges = new PendingChangeQueue(spillFolder, pendingChangeBudget);
+        private final PendingChangeQueue pendingChanges = new PendingChangeQueue(spillFolder, pendingChangeBudget);
+        // last modified times of the new and changed files by DataFile guid, from when they leave the pending
+        // changes until their events are sent
+        private final Map<String, Long> modifiedTimes = new ConcurrentHashMap<>();
+        // how the new and changed files are journalled by DataFile guid, once their events have been sent
+        private final Map<String, JournalRecord.ChangeType> journalChangeTypes = new ConcurrentHashMap<>();
+        private final LatencyHistogram cycleEventLatency = new LatencyHistogram();
+        private long cycleCount = 0;
+        private int filesScanned = 0;
+        private int filesSkipped = 0;
+        private int filesChanged = 0;
+        private int filesDeleted = 0;
+        private boolean bootstrapped = false;
+        // whether the last refresh scanned the whole folder, so that the scan state can be compared with the repository
+        private boolean scanComplete = false;
+        // the settings used for the whole of the current polling cycle
+        private EventMapperConfiguration cycleConfiguration;
+        // new and changed files that are saved once they have been profiled
+        private final Deque<ProfiledSave> profiledSaves = new ArrayDeque<>();
+
         void start() {
-            Thread worker = new Thread(this);
-            worker.start();
+            running.set(true);
+            pollingExecutor.submit(this);
         }
 
         void stop() {
             if (!running.compareAndSet(true, false)) {
                 auditLog.logMessage("stop", FileOMRSAuditCode.POLLING_THREAD_INFO_ALREADY_STOPPED.getMessageDefinition());
             }
+            // wake the polling thread if it is waiting
+            stopped.countDown();
         }
 
-        private List<EntityDetail> getEntitiesByType(String typeName) throws ConnectorCheckedException {
-            String methodName = "getEntitiesByType(String typeName)";
-            List<EntityDetail> entityDetails = null;
+        /**
+         * Wait for the supplied time, returning early if the polling thread is stopped.
+         *
+         * @param millis time to wait in milliseconds
+         * @return true if the polling thread is still running after the wait
+         */
+        private boolean waitWhileRunning(long millis) {
             try {
-                entityDetails = getEntitiesByTypeGuid(typeName);
-            } catch (InvalidParameterException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.INVALID_PARAMETER_EXCEPTION, methodName, e, repositoryConnector.getServerName());
-            } catch (RepositoryErrorException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.REPOSITORY_ERROR_EXCEPTION, methodName, e, repositoryConnector.getServerName());
-            } catch (TypeErrorException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.TYPE_ERROR_EXCEPTION, methodName, e, repositoryConnector.getServerName());
-            } catch (PropertyErrorException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.PROPERTY_ERROR_EXCEPTION, methodName, e, repositoryConnector.getServerName());
-            } catch (PagingErrorException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.PAGING_ERROR_EXCEPTION, methodName, e, repositoryConnector.getServerName());
-            } catch (FunctionNotSupportedException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.FUNCTION_NOT_SUPPORTED_ERROR_EXCEPTION, methodName, e, repositoryConnector.getServerName());
-            } catch (UserNotAuthorizedException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.USER_NOT_AUTHORIZED_EXCEPTION, methodName, e, repositoryConnector.getServerName());
+                stopped.await(millis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running.set(false);
             }
-            return entityDetails;
+            return running.get();
         }
 
         private List<Relationship> getRelationshipsForEntityHelper(
@@ -275,23 +853,23 @@ public class FileOMRSRepositoryEventMapper extends OMRSRepositoryEventMapperBase
             String methodName = "getRelationshipsForEntityHelper";
             List<Relationship> relationships = null;
             try {
-                relationships = metadataCollection.getRelationshipsForEntity(userId, entityGUID, relationshipTypeGUID, 0, null, null, null, null, 0);
+                relationships = referenceCopyStore.getRelationshipsForEntity(entityGUID, relationshipTypeGUID);
             } catch (InvalidParameterException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.INVALID_PARAMETER_EXCEPTION, methodName, e, repositoryConnector.getServerName(), methodName);
+                raiseConnectorCheckedException(FileOMRSErrorCode.INVALID_PARAMETER_EXCEPTION, methodName, e, serverName, methodName);
             } catch (RepositoryErrorException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.REPOSITORY_ERROR_EXCEPTION, methodName, e, repositoryConnector.getServerName(), methodName);
+                raiseConnectorCheckedException(FileOMRSErrorCode.REPOSITORY_ERROR_EXCEPTION, methodName, e, serverName, methodName);
             } catch (TypeErrorException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.TYPE_ERROR_EXCEPTION, methodName, e, repositoryConnector.getServerName(), methodName);
+                raiseConnectorCheckedException(FileOMRSErrorCode.TYPE_ERROR_EXCEPTION, methodName, e, serverName, methodName);
             } catch (PropertyErrorException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.PROPERTY_ERROR_EXCEPTION, methodName, e, repositoryConnector.getServerName(), methodName);
+                raiseConnectorCheckedException(FileOMRSErrorCode.PROPERTY_ERROR_EXCEPTION, methodName, e, serverName, methodName);
             } catch (PagingErrorException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.PAGING_ERROR_EXCEPTION, methodName, e, repositoryConnector.getServerName(), methodName);
+                raiseConnectorCheckedException(FileOMRSErrorCode.PAGING_ERROR_EXCEPTION, methodName, e, serverName, methodName);
             } catch (FunctionNotSupportedException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.FUNCTION_NOT_SUPPORTED_ERROR_EXCEPTION, methodName, e, repositoryConnector.getServerName(), methodName);
+                raiseConnectorCheckedException(FileOMRSErrorCode.FUNCTION_NOT_SUPPORTED_ERROR_EXCEPTION, methodName, e, serverName, methodName);
             } catch (UserNotAuthorizedException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.USER_NOT_AUTHORIZED_EXCEPTION, methodName, e, repositoryConnector.getServerName(), methodName);
+                raiseConnectorCheckedException(FileOMRSErrorCode.USER_NOT_AUTHORIZED_EXCEPTION, methodName, e, serverName, methodName);
             } catch (EntityNotKnownException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.ENTITY_NOT_KNOWN, methodName, e, repositoryConnector.getServerName(), methodName, entityGUID);
+                raiseConnectorCheckedException(FileOMRSErrorCode.ENTITY_NOT_KNOWN, methodName, e, serverName, methodName, entityGUID);
             }
             return relationships;
         }
@@ -300,161 +878,598 @@ public class FileOMRSRepositoryEventMapper extends OMRSRepositoryEventMapperBase
             String methodName = "getEntityDetail";
             EntityDetail entityDetail = null;
             try {
-                entityDetail = metadataCollection.getEntityDetail(userId, guid);
+                entityDetail = referenceCopyStore.getEntityDetail(guid);
             } catch (InvalidParameterException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.INVALID_PARAMETER_EXCEPTION, methodName, e, repositoryConnector.getServerName(), methodName);
+                raiseConnectorCheckedException(FileOMRSErrorCode.INVALID_PARAMETER_EXCEPTION, methodName, e, serverName, methodName);
             } catch (RepositoryErrorException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.REPOSITORY_ERROR_EXCEPTION, methodName, e, repositoryConnector.getServerName(), methodName);
+                raiseConnectorCheckedException(FileOMRSErrorCode.REPOSITORY_ERROR_EXCEPTION, methodName, e, serverName, methodName);
             } catch (UserNotAuthorizedException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.USER_NOT_AUTHORIZED_EXCEPTION, methodName, e, repositoryConnector.getServerName(), methodName);
+                raiseConnectorCheckedException(FileOMRSErrorCode.USER_NOT_AUTHORIZED_EXCEPTION, methodName, e, serverName, methodName);
             } catch (EntityNotKnownException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.ENTITY_NOT_KNOWN, methodName, e, repositoryConnector.getServerName(), methodName, guid);
+                raiseConnectorCheckedException(FileOMRSErrorCode.ENTITY_NOT_KNOWN, methodName, e, serverName, methodName, guid);
             } catch (EntityProxyOnlyException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.ENTITY_PROXY_ONLY, methodName, e, repositoryConnector.getServerName(), methodName, guid);
+                raiseConnectorCheckedException(FileOMRSErrorCode.ENTITY_PROXY_ONLY, methodName, e, serverName, methodName, guid);
             }
             return entityDetail;
 
 
         }
 
+        /**
+         * Send the events for the changes found by the last refresh: a purge event for each purged instance, then a
+         * batch event per new or changed asset, each in the order they were found. Every resyncInterval cycles, or
+         * when a refresh has been requested, the other assets are sent after these, so a resync does not hold up
+         * the changes when the events are rate limited.
+         *
+         * @throws ConnectorCheckedException if the instances cannot be retrieved
+         */
         void sendBatchEvent() throws ConnectorCheckedException {
-            List<EntityDetail> dataFiles = getEntitiesByType(DATA_FILE);
-
-            for (EntityDetail dataFile : dataFiles) {
-
-                List<Relationship> relationshipList = new ArrayList<>();
-                List<EntityDetail> entityList = new ArrayList<>();
-                entityList.add(dataFile);
-                String assetGUID = dataFile.getGUID();
-                List<String> connectionGuids = populateEvent(CONNECTION_TO_ASSET, assetGUID, entityList, relationshipList);
-                if (connectionGuids != null && connectionGuids.size() > 0) {
-                    for (String connectionGUID : connectionGuids) {
-                        populateEvent(CONNECTION_CONNECTOR_TYPE, connectionGUID, entityList, relationshipList);
-                        populateEvent(CONNECTION_ENDPOINT, connectionGUID, entityList, relationshipList);
+            final String methodName = "sendBatchEvent";
+            InstanceGraphPacker packer = newInstanceGraphPacker();
+            // the assets sent are remembered so a resync does not send them again, unless there were too many to hold
+            long spilledCount = pendingPurges.getSpilledCount() + pendingChanges.getSpilledCount();
+            Set<String> sentDataFileGUIDs = spilledCount == 0 ? new HashSet<>() : null;
+            while (running.get()) {
+                PendingChange change = pollPendingChange(methodName);
+                if (change == null) {
+                    break;
+                }
+                String guid = change.getGUID();
+                switch (change.getChangeType()) {
+                    case PURGED_RELATIONSHIP:
+                        if (!waitForEventRateLimit(1)) {
+                            return;
+                        }
+                        eventSender.sendPurgedRelationshipEvent(change.getTypeDefGUID(), change.getTypeDefName(), guid);
+                        break;
+                    case PURGED_ENTITY:
+                        if (!waitForEventRateLimit(1)) {
+                            return;
+                        }
+                        eventSender.sendPurgedEntityEvent(change.getTypeDefGUID(), change.getTypeDefName(), guid);
+                        if (DATA_FILE.equals(change.getTypeDefName())) {
+                            journalChange(JournalRecord.ChangeType.DELETED, guid, change.getValue());
+                        }
+                        break;
+                    default:
+                        if (change.getValue() > 0) {
+                            modifiedTimes.put(guid, change.getValue());
+                        }
+                        if (changeJournal != null) {
+                            journalChangeTypes.put(guid, change.getChangeType() == PendingChange.ChangeType.NEW ? JournalRecord.ChangeType.CREATED : JournalRecord.ChangeType.UPDATED);
+                        }
+                        long readStart = pipelineTracer == null ? 0 : System.nanoTime();
+                        try {
+                            sendAssetEvent(getEntityDetail(guid), packer, readStart);
+                        } catch (ConnectorCheckedException e) {
+                            // so that the next scan saves it again, once the assets already read have been sent
+                            forgetPendingChange(change);
+                            if (packer != null) {
+                                packer.flush();
+                            }
+                            throw e;
+                        }
+                        if (sentDataFileGUIDs != null) {
+                            sentDataFileGUIDs.add(guid);
+                        }
+                }
+            }
+            if (!running.get()) {
+                return;
+            }
+            if (spilledCount > 0) {
+                pollingAuditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_CHANGES_SPILLED, spilledCount + "", memoryBudget + "", pendingChanges.getSpillFolder());
+            }
+            boolean resync = cycleConfiguration.getResyncInterval() > 0 && cycleCount % cycleConfiguration.getResyncInterval() == 0;
+            if (refreshRequested.getAndSet(false) || resync) {
+                refreshRequestedGUIDs.clear();
+                if (!sendScanStateAssets(packer, sentDataFileGUIDs)) {
+                    return;
+                }
+            } else if (!refreshRequestedGUIDs.isEmpty()) {
+                for (Iterator<String> guids = refreshRequestedGUIDs.iterator(); guids.hasNext(); ) {
+                    String dataFileGUID = guids.next();
+                    guids.remove();
+                    String path = dataFileInstanceBuilder.decodeGUID(dataFileGUID);
+                    if (!running.get()) {
+                        return;
+                    }
+                    if (path != null && (sentDataFileGUIDs == null || !sentDataFileGUIDs.contains(dataFileGUID)) && scanState.getVersion(path) > 0) {
+                        sendScanStateAsset(path, packer);
                     }
                 }
-
-                InstanceGraph instances = new InstanceGraph(entityList, relationshipList);
-
-                // send the event
-                repositoryEventProcessor.processInstanceBatchEvent("FileOMRSRepositoryEventMapper",
-                                                                   repositoryConnector.getMetadataCollectionId(),
-                                                                   repositoryConnector.getServerName(),
-                                                                   repositoryConnector.getServerType(),
-                                                                   repositoryConnector.getOrganizationName(),
-                                                                   instances);
             }
-
+            if (packer != null) {
+                packer.flush();
+            }
+            // once every change journalled has been sent
+            flushJournal();
+            flushTrace();
         }
 
-        private List<String> populateEvent(String relationshipTypeName, String startEntityGUID, List<EntityDetail> entityList, List<Relationship> relationshipList) throws ConnectorCheckedException {
-            String methodName = "populateEvent";
-
-            List<String> otherEndGuids = new ArrayList<>();
-            TypeDefSummary typeDefSummary = repositoryHelper.getTypeDefByName(methodName, relationshipTypeName);
-            String relationshipTypeGUID = typeDefSummary.getGUID();
-            List<Relationship> connectorConnectorTypeRelationships = getRelationshipsForEntityHelper(startEntityGUID, relationshipTypeGUID);
-            for (Relationship relationship : connectorConnectorTypeRelationships) {
-                EntityProxy proxy = repositoryHelper.getOtherEnd(methodName,
-                                                                 startEntityGUID,
-                                                                 relationship);
-                String guid = proxy.getGUID();
-                EntityDetail otherEndEntity = getEntityDetail(guid);
-                entityList.add(otherEndEntity);
-                relationshipList.add(relationship);
-                otherEndGuids.add(otherEndEntity.getGUID());
+        /**
+         * Add a change to the pending changes, spilling it to disk if they are over the memory budget.
+         *
+         * @param change the change
+         * @throws ConnectorCheckedException if the change cannot be spilled
+         */
+        private void addPendingChange(PendingChange change) throws ConnectorCheckedException {
+            final String methodName = "addPendingChange";
+            try {
+                if (change.getChangeType() == PendingChange.ChangeType.NEW || change.getChangeType() == PendingChange.ChangeType.CHANGED) {
+                    pendingChanges.add(change);
+                } else {
+                    pendingPurges.add(change);
+                }
+            } catch (IOException e) {
+                raiseConnectorCheckedException(FileOMRSErrorCode.SPILL_FAILED, methodName, e, pendingChanges.getSpillFolder(), e.getMessage());
             }
-            return otherEndGuids;
+        }
 
+        /**
+         * @param methodName calling method
+         * @return the next pending purge, or the next new or changed file once the purges have been sent, or null if there are none
+         * @throws ConnectorCheckedException if a spilled change cannot be read
+         */
+        private PendingChange pollPendingChange(String methodName) throws ConnectorCheckedException {
+            try {
+                PendingChange change = pendingPurges.poll();
+                return change == null ? pendingChanges.poll() : change;
+            } catch (IOException e) {
+                discardPendingChanges();
+                raiseConnectorCheckedException(FileOMRSErrorCode.SPILL_FAILED, methodName, e, pendingChanges.getSpillFolder(), e.getMessage());
+            }
+            return null;
         }
 
         /**
-         * Read File.
+         * Hand the new and changed files whose events the last cycle did not send, because it was stopped or
+         * failed, back to the scan. They are already in the scan state, so they are removed from it for this scan
+         * to find them again. The purges are kept and sent with this cycle's.
+         *
+         * @throws ConnectorCheckedException if a spilled change cannot be read
          */
-        @Override
-        public void run() {
+        private void requeuePendingChanges() throws ConnectorCheckedException {
+            final String methodName = "requeuePendingChanges";
+            try {
+                PendingChange change;
+                while ((change = pendingChanges.poll()) != null) {
+                    forgetPendingChange(change);
+                }
+            } catch (IOException e) {
+                discardPendingChanges();
+                raiseConnectorCheckedException(FileOMRSErrorCode.SPILL_FAILED, methodName, e, pendingChanges.getSpillFolder(), e.getMessage());
+            }
+            // resets the spilled count
+            pendingChanges.clear();
+            if (pendingPurges.isEmpty()) {
+                pendingPurges.clear();
+            }
+        }
 
-            final String methodName = "run";
-            if (running.compareAndSet(false, true)) {
+        /**
+         * Forget a new or changed file whose event will not be sent, so the next scan saves it again.
+         *
+         * @param change the change
+         */
+        private void forgetPendingChange(PendingChange change) {
+            String path = dataFileInstanceBuilder.decodeGUID(change.getGUID());
+            if (path != null) {
+                forgetSave(path, change.getChangeType() == PendingChange.ChangeType.NEW);
+            }
+        }
 
-                while (running.get()) {
-                    try {
-                        getRequiredTypes();
-                        cachedRepositoryAccessor = new CachedRepositoryAccessor(userId, repositoryConnector.getServerName(), metadataCollection);
-                        // call the repository connector to refresh its contents.
-                        refreshRepository();
-                        // send the batch event per asset
-                        sendBatchEvent();
-                        //  wait the polling interval.
-                        auditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_POLL_LOOP_PRE_WAIT.getMessageDefinition());
-                        try {
-                            Thread.sleep(refreshInterval);
-                            auditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_POLL_LOOP_POST_WAIT.getMessageDefinition());
-                        } catch (InterruptedException e) {
-                            // should not happen as there is only one thread
-                            // if it happens then continue in the while
-                            auditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_POLL_LOOP_INTERRUPTED_EXCEPTION.getMessageDefinition());
-                        }
+        /**
+         * Forget what the scan state recorded about a file that could not be saved or sent, so that the next scan
+         * saves it again. A new file is removed so that its derived instances are saved with it, while a changed
+         * file keeps its version so that the next save is newer than the reference copies already in the cohort.
+         *
+         * @param path  canonical path of the file
+         * @param isNew whether the file was new
+         */
+        private void forgetSave(String path, boolean isNew) {
+            if (isNew) {
+                scanState.remove(path);
+            } else {
+                scanState.invalidate(path);
+            }
+        }
 
+        /**
+         * Drop the pending changes when the spilled ones cannot be read back. Which files they were is not known,
+         * so every file is saved again by the next scan, which ignores the skipping rules; the purge events are lost.
+         */
+        private void discardPendingChanges() {
+            pendingPurges.clear();
+            pendingChanges.clear();
+            scanState.invalidate();
+            verificationSweepRequested = true;
+        }
 
-                    } catch (ConnectorCheckedException e) {
-                        if (e.getCause() == null) {
-                            auditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_POLL_LOOP_GOT_AN_EXCEPTION.getMessageDefinition(e.getMessage()));
-                        } else {
-                            auditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_POLL_LOOP_GOT_AN_EXCEPTION_WITH_CAUSE.getMessageDefinition(e.getMessage(), e.getCause().getMessage()));
-                        }
-                    } catch (Exception e) {
-                        // catch everything else
-                        auditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_POLL_LOOP_GOT_AN_EXCEPTION_WITH_CAUSE.getMessageDefinition(e.getMessage(), e.getCause().getMessage()));
-                    } finally {
-                        // stop the thread if we came out of the loop.
-                        this.stop();
+        /**
+         * Send the assets that were not new or changed in this cycle, a page at a time from the scan state, rather
+         * than querying the repository for every DataFile and walking its relationships.
+         *
+         * @param packer            the packer, or null to send a batch event per asset
+         * @param sentDataFileGUIDs guids of the DataFiles already sent this cycle, or null if they were not kept
+         * @return false if the polling thread was stopped
+         * @throws ConnectorCheckedException if the instances cannot be built
+         */
+        private boolean sendScanStateAssets(InstanceGraphPacker packer, Set<String> sentDataFileGUIDs) throws ConnectorCheckedException {
+            List<String> page = new ArrayList<>(REFRESH_PAGE_SIZE);
+            int cursor = 0;
+            while (cursor != -1) {
+                page.clear();
+                cursor = scanState.getFiles(cursor, REFRESH_PAGE_SIZE, page);
+                for (String path : page) {
+                    if (!running.get()) {
+                        return false;
+                    }
+                    if (sentDataFileGUIDs == null || !sentDataFileGUIDs.contains(dataFileInstanceBuilder.getGUID(path))) {
+                        sendScanStateAsset(path, packer);
                     }
                 }
             }
+            return true;
         }
 
-        private void getRequiredTypes() throws ConnectorCheckedException {
-            String methodName = "getRequiredTypes";
-            final int supportedCount = supportedTypeNames.size();
-
-            int typesAvailableCount = 0;
-            int retryCount = 0;
-            while ((typesAvailableCount != supportedCount)) {
-                auditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_ACQUIRING_TYPES_LOOP.getMessageDefinition(typesAvailableCount + "", supportedCount + "", retryCount + ""));
-                // only come out the while loop when we can get all of the supported types in one iteration.
-                typesAvailableCount = 0;
-                if (typeNameToGuidMap == null) {
-                    typeNameToGuidMap = new HashMap<>();
+        /**
+         * Send an asset built from the scan state. The DataFile of a profiled file is read from the repository by
+         * its guid, as its columns are not in the scan state.
+         *
+         * @param path   canonical path of the file
+         * @param packer the packer, or null to send a batch event per asset
+         * @throws ConnectorCheckedException if the instances cannot be built
+         */
+        private void sendScanStateAsset(String path, InstanceGraphPacker packer) throws ConnectorCheckedException {
+            String baseName = new File(path).getName();
+            EntityDetail dataFile = null;
+            if (cycleConfiguration.isProfileFiles() && FileProfiler.isProfiled(baseName)) {
+                try {
+                    dataFile = getEntityDetail(dataFileInstanceBuilder.getGUID(path));
+                } catch (ConnectorCheckedException e) {
+                    // send it without its columns
                 }
-                // populate the type name to guid map
-                for (String typeName : supportedTypeNames) {
+            }
+            if (dataFile == null) {
+                dataFile = dataFileInstanceBuilder.getDataFileEntity(baseName, path, scanState.getVersion(path));
+            }
+            List<EntityDetail> entityList = new ArrayList<>();
+            List<Relationship> relationshipList = new ArrayList<>();
+            entityList.add(dataFile);
+            // the stored derived instances were built the same way, so there is no need to read them back
+            dataFileInstanceBuilder.addDerivedInstances(baseName, path, entityList, relationshipList);
+            sendAssetInstances(entityList, relationshipList, packer);
+        }
+
+        /**
+         * @return a packer combining assets into size-capped batch events, or null to send a batch event per asset
+         */
+        private InstanceGraphPacker newInstanceGraphPacker() {
+            if (cycleConfiguration.getMaxInstancesPerEvent() <= 0 && cycleConfiguration.getMaxEventSize() <= 0) {
+                return null;
+            }
+            return new InstanceGraphPacker(cycleConfiguration.getMaxInstancesPerEvent(), cycleConfiguration.getMaxEventSize(), this::sendInstanceBatchEvent);
+        }
+
+        /**
+         * Send an asset's instances, either in a batch event of its own or through the packer.
+         *
+         * @param dataFile  the asset's DataFile
+         * @param packer    the packer, or null to send a batch event per asset
+         * @param readStart when the DataFile started to be read back, for tracing
+         * @throws ConnectorCheckedException if the instances cannot be retrieved
+         */
+        private void sendAssetEvent(EntityDetail dataFile, InstanceGraphPacker packer, long readStart) throws ConnectorCheckedException {
+            List<Relationship> relationshipList = new ArrayList<>();
+            List<EntityDetail> entityList = new ArrayList<>();
+            entityList.add(dataFile);
+            String assetGUID = dataFile.getGUID();
+            List<String> connectionGuids = populateEvent(CONNECTION_TO_ASSET, assetGUID, entityList, relationshipList);
+            if (connectionGuids != null && connectionGuids.size() > 0) {
+                for (String connectionGUID : connectionGuids) {
+                    populateEvent(CONNECTION_CONNECTOR_TYPE, connectionGUID, entityList, relationshipList);
+                    populateEvent(CONNECTION_ENDPOINT, connectionGUID, entityList, relationshipList);
+                }
+            }
+            if (pipelineTracer != null && pipelineTracer.isSampled(assetGUID)) {
+                pipelineTracer.record("readBack", readStart, assetGUID, null);
+            }
+
+            sendAssetInstances(entityList, relationshipList, packer);
+        }
+
+        private void sendAssetInstances(List<EntityDetail> entityList, List<Relationship> relationshipList, InstanceGraphPacker packer) {
+            if (packer == null) {
+                sendInstanceBatchEvent(entityList, relationshipList);
+            } else {
+                packer.add(entityList, relationshipList);
+            }
+        }
+
+        private void sendInstanceBatchEvent(List<EntityDetail> entityList, List<Relationship> relationshipList) {
+            long waitStart = pipelineTracer == null ? 0 : System.nanoTime();
+            if (!waitForEventRateLimit(entityList.size() + relationshipList.size())) {
+                return;
+            }
+            long emitStart = pipelineTracer == null ? 0 : System.nanoTime();
+            InstanceGraph instances = new InstanceGraph(entityList, relationshipList);
+
+            // send the event
+            eventSender.sendInstanceBatchEvent(instances);
+            long sent = System.currentTimeMillis();
+            for (EntityDetail entity : entityList) {
+                Long modified = modifiedTimes.remove(entity.getGUID());
+                if (modified != null) {
+                    eventLatency.record(sent - modified);
+                    cycleEventLatency.record(sent - modified);
+                }
+                JournalRecord.ChangeType journalChangeType = journalChangeTypes.remove(entity.getGUID());
+                if (journalChangeType != null) {
+                    journalChange(journalChangeType, entity.getGUID(), entity.getVersion());
+                }
+            }
+            if (pipelineTracer != null) {
+                // the whole event is traced for each sampled DataFile in it
+                for (EntityDetail entity : entityList) {
+                    if (DATA_FILE.equals(entity.getType().getTypeDefName()) && pipelineTracer.isSampled(entity.getGUID())) {
+                        pipelineTracer.record("rateLimitWait", waitStart, entity.getGUID(), null);
+                        pipelineTracer.record("emit", emitStart, entity.getGUID(), null);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Wait until the event rate limit allows an event to be sent.
+         *
+         * @param instances number of entities and relationships in the event
+         * @return false if the polling thread was stopped while waiting
+         */
+        private boolean waitForEventRateLimit(int instances) {
+            long wait = eventRateLimiter.reserve(instances);
+            if (wait == 0 ? !running.get() : !waitWhileRunning(wait)) {
+                return false;
+            }
+            eventRateLimiter.recordSent(instances);
+            return true;
+        }
+
+        /**
+         * Record a change to a DataFile in the change journal, if there is one. Failures are logged and the events
+         * carry on, as the journal only helps consumers catch up.
+         *
+         * @param changeType   kind of change
+         * @param dataFileGUID guid of the DataFile
+         * @param version      version of the DataFile
+         */
+        private void journalChange(JournalRecord.ChangeType changeType, String dataFileGUID, long version) {
+            final String methodName = "journalChange";
+            if (changeJournal == null) {
+                return;
+            }
+            String path = dataFileInstanceBuilder.decodeGUID(dataFileGUID);
+            if (path == null) {
+                return;
+            }
+            try {
+                changeJournal.append(changeType, path, version);
+            } catch (IOException e) {
+                pollingAuditLog.logRateLimitedMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_JOURNAL_FAILED, changeJournalFolder, e.getMessage());
+            }
+        }
+
+        /**
+         * Write the spans traced so far in this cycle.
+         */
+        private void flushTrace() {
+            final String methodName = "flushTrace";
+            if (pipelineTracer == null) {
+                return;
+            }
+            try {
+                pipelineTracer.flush();
+            } catch (IOException e) {
+                pollingAuditLog.logRateLimitedMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_TRACE_FAILED, traceFolder, e.getMessage());
+            }
+        }
+
+        /**
+         * Make the changes recorded in this cycle visible to replays.
+         */
+        private void flushJournal() {
+            final String methodName = "flushJournal";
+            if (changeJournal == null) {
+                return;
+            }
+            try {
+                changeJournal.flush();
+            } catch (IOException e) {
+                pollingAuditLog.logRateLimitedMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_JOURNAL_FAILED, changeJournalFolder, e.getMessage());
+            }
+        }
+
+        private List<String> populateEvent(String relationshipTypeName, String startEntityGUID, List<EntityDetail> entityList, List<Relationship> relationshipList) throws ConnectorCheckedException {
+            String methodName = "populateEvent";
+
+            List<String> otherEndGuids = new ArrayList<>();
+            TypeDefSummary typeDefSummary = repositoryHelper.getTypeDefByName(methodName, relationshipTypeName);
+            String relationshipTypeGUID = typeDefSummary.getGUID();
+            List<Relationship> connectorConnectorTypeRelationships = getRelationshipsForEntityHelper(startEntityGUID, relationshipTypeGUID);
+            for (Relationship relationship : connectorConnectorTypeRelationships) {
+                EntityProxy proxy = repositoryHelper.getOtherEnd(methodName,
+                                                                 startEntityGUID,
+                                                                 relationship);
+                String guid = proxy.getGUID();
+                EntityDetail otherEndEntity = getEntityDetail(guid);
+                entityList.add(otherEndEntity);
+                relationshipList.add(relationship);
+                otherEndGuids.add(otherEndEntity.getGUID());
+            }
+            return otherEndGuids;
+
+        }
+
+        /**
+         * Read File.
+         */
+        @Override
+        public void run() {
+
+            final String methodName = "run";
+            while (running.get()) {
+                try {
+                    refreshConfiguration();
+                    getRequiredTypes();
+                    if (!running.get()) {
+                        break;
+                    }
+                    if (bootstrapManifest != null && !bootstrapped) {
+                        // only attempted once, the scans pick up whatever the bootstrap did not load
+                        bootstrapped = true;
+                        bootstrapFromManifest();
+                    }
+                    long cycleStart = System.currentTimeMillis();
+                    long rateLimitWaitStart = eventRateLimiter.getWaitTime();
+                    // call the repository connector to refresh its contents.
+                    refreshRepository();
+                    flushTrace();
+                    int reconciliationInterval = cycleConfiguration.getReconciliationInterval();
+                    if (scanComplete && reconciliationInterval > 0 && cycleCount % reconciliationInterval == 0) {
+                        reconcileRepository();
+                    }
+                    // send the batch event per asset
+                    sendBatchEvent();
+                    logCycleSummary(methodName, System.currentTimeMillis() - cycleStart, eventRateLimiter.getWaitTime() - rateLimitWaitStart);
+                    //  wait the polling interval.
+                    pollingAuditLog.logDebugMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_POLL_LOOP_PRE_WAIT);
+                    if (waitWhileRunning(cycleConfiguration.getRefreshInterval())) {
+                        pollingAuditLog.logDebugMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_POLL_LOOP_POST_WAIT);
+                    }
+                } catch (Exception e) {
+                    // errors are likely to repeat every poll, so rate limit them and retry after the polling interval
+                    if (e.getCause() == null) {
+                        pollingAuditLog.logRateLimitedMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_POLL_LOOP_GOT_AN_EXCEPTION, e.getMessage());
+                    } else {
+                        pollingAuditLog.logRateLimitedMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_POLL_LOOP_GOT_AN_EXCEPTION_WITH_CAUSE, e.getMessage(), e.getCause().getMessage());
+                    }
+                    waitWhileRunning(cycleConfiguration.getRefreshInterval());
+                }
+            }
+            // deletes any spill files
+            pendingPurges.close();
+            pendingChanges.close();
+        }
+
+        /**
+         * Take the configuration snapshot for this polling cycle, applying whatever has changed since the previous cycle.
+         * A change to the configuration file is published first.
+         */
+        private void refreshConfiguration() {
+            final String methodName = "refreshConfiguration";
+            if (isConfigurationFileChanged()) {
+                try {
+                    updateConfiguration(readConfigurationFile());
+                } catch (IOException | ConnectorCheckedException e) {
+                    pollingAuditLog.logRateLimitedMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_CONFIGURATION_NOT_VALID, e.getMessage());
+                }
+            }
+
+            EventMapperConfiguration previousConfiguration = cycleConfiguration;
+            cycleConfiguration = configuration.get();
+            if (previousConfiguration == null || previousConfiguration == cycleConfiguration) {
+                return;
+            }
+            if (!previousConfiguration.getQualifiedNamePrefix().equals(cycleConfiguration.getQualifiedNamePrefix())) {
+                dataFileInstanceBuilder = new DataFileInstanceBuilder(repositoryHelper,
+                                                                      repositoryName,
+                                                                      metadataCollectionId,
+                                                                      metadataCollectionName,
+                                                                      userId,
+                                                                      cycleConfiguration.getQualifiedNamePrefix(),
+                                                                      dataFileInstanceBuilder.getDerivedInstanceVersion() + 1);
+                // the guids do not depend on the prefix, so saving every file again updates the qualified names in place;
+                // the skipping rules would still retain immutable partitions as they were, so they are ignored until then
+                scanState.invalidate();
+                verificationSweepRequested = true;
+                derivedInstancesChanged = true;
+            }
+            if (previousConfiguration.getMaxEventsPerSecond() != cycleConfiguration.getMaxEventsPerSecond() ||
+                    previousConfiguration.getMaxInstancesPerSecond() != cycleConfiguration.getMaxInstancesPerSecond()) {
+                // new buckets start full, so they are only replaced when the rates change
+                eventRateLimiter.setRates(cycleConfiguration.getMaxEventsPerSecond(), cycleConfiguration.getMaxInstancesPerSecond());
+            }
+            int threads = cycleConfiguration.getProfilerThreads();
+            if (cycleConfiguration.isProfileFiles() && profilerExecutor == null) {
+                profilerExecutor = newProfilerExecutor(threads);
+            } else if (profilerExecutor != null && threads > profilerExecutor.getMaximumPoolSize()) {
+                profilerExecutor.setMaximumPoolSize(threads);
+                profilerExecutor.setCorePoolSize(threads);
+            } else if (profilerExecutor != null && threads < profilerExecutor.getMaximumPoolSize()) {
+                profilerExecutor.setCorePoolSize(threads);
+                profilerExecutor.setMaximumPoolSize(threads);
+            }
+            pollingAuditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_CONFIGURATION_RELOADED, (cycleCount + 1) + "");
+        }
+
+        /**
+         * Write the summary of a polling cycle. Cycles where nothing changed are only logged with debug audit logging.
+         *
+         * @param methodName calling method
+         * @param duration   duration of the cycle in milliseconds
+         * @param waitTime   time in milliseconds the cycle waited for the event rate limit
+         */
+        private void logCycleSummary(String methodName, long duration, long waitTime) {
+            String[] params = new String[]{filesScanned + "", filesChanged + "", filesDeleted + "", duration + "", filesSkipped + "", waitTime + ""};
+            if (filesChanged > 0 || filesDeleted > 0) {
+                pollingAuditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_POLL_CYCLE_SUMMARY, params);
+                long eventCount = cycleEventLatency.getCount();
+                if (eventCount > 0) {
+                    pollingAuditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_EVENT_LATENCY_SUMMARY,
+                                               eventCount + "",
+                                               cycleEventLatency.getPercentile(50) + "",
+                                               cycleEventLatency.getPercentile(99) + "",
+                                               cycleEventLatency.getMax() + "",
+                                               (eventCount * 1000 / Math.max(1, duration)) + "");
+                }
+            } else {
+                pollingAuditLog.logDebugMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_POLL_CYCLE_SUMMARY, params);
+            }
+        }
+
+        private void getRequiredTypes() throws ConnectorCheckedException {
+            String methodName = "getRequiredTypes";
+            final int supportedCount = supportedTypeNames.size();
+
+            int typesAvailableCount = 0;
+            int retryCount = 0;
+            while ((typesAvailableCount != supportedCount) && running.get()) {
+                pollingAuditLog.logDebugMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_ACQUIRING_TYPES_LOOP, typesAvailableCount + "", supportedCount + "", retryCount + "");
+                // only come out the while loop when we can get all of the supported types in one iteration.
+                typesAvailableCount = 0;
+                if (typeNameToGuidMap == null) {
+                    typeNameToGuidMap = new HashMap<>();
+                }
+                // populate the type name to guid map
+                for (String typeName : supportedTypeNames) {
 
                     TypeDef typeDef = repositoryHelper.getTypeDefByName("FileOMRSRepositoryEventMapper",
                                                                         typeName);
                     if (typeDef != null) {
-                        auditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_ACQUIRING_TYPES_LOOP_FOUND_TYPE.getMessageDefinition(typeName));
+                        pollingAuditLog.logDebugMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_ACQUIRING_TYPES_LOOP_FOUND_TYPE, typeName);
                         typeNameToGuidMap.put(typeName, typeDef.getGUID());
                         typesAvailableCount++;
                     }
                 }
                 if (typesAvailableCount < supportedCount) {
-                    //delay for 1 second and then retry
-
-                    try {
-                        Thread.sleep(1000);  // TODO Should this be in configuration?
-                        retryCount++;
-                    } catch (InterruptedException e) {
-                        // should not happen as there is only one thread
-                        // if it does happen it would result in a lower duration for the sleep
-                        //
-                        // Increment the retry count, in case this happens everytime
-                        retryCount++;
-                        auditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_ACQUIRING_TYPES_LOOP_INTERRUPTED_EXCEPTION.getMessageDefinition());
+                    //delay for 1 second and then retry, returning early if we have been stopped
+                    retryCount++;
+                    if (!waitWhileRunning(1000)) {  // TODO Should this be in configuration?
+                        return;
                     }
                 } else if (typesAvailableCount == supportedCount) {
                     // log to say we have all the types we need
-                    auditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_ACQUIRED_ALL_TYPES.getMessageDefinition());
+                    pollingAuditLog.logDebugMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_ACQUIRED_ALL_TYPES);
 
                 }
 
@@ -466,300 +1481,974 @@ public class FileOMRSRepositoryEventMapper extends OMRSRepositoryEventMapperBase
 
         public void refreshRepository() throws ConnectorCheckedException {
             String methodName = "refreshRepository";
-            File folder = new File(getFolderLocation());
+            // a storage lister reports a missing location as empty
+            File folder = storageLister == null ? new File(getFolderLocation()) : null;
 
-            if (!folder.exists()) {
+            if (folder != null && !folder.exists()) {
                 raiseConnectorCheckedException(FileOMRSErrorCode.FOLDER_DOES_NOT_EXIST, methodName, null, folder.getName());
-            } else if (!folder.isDirectory()) {
+            } else if (folder != null && !folder.isDirectory()) {
                 raiseConnectorCheckedException(FileOMRSErrorCode.NOT_A_FOLDER, methodName, null, folder.getName());
             } else {
-                File[] dataFiles = folder.listFiles();
-
+                cycleCount++;
+                scanComplete = false;
+                filesScanned = 0;
+                filesSkipped = 0;
+                filesChanged = 0;
+                filesDeleted = 0;
+                requeuePendingChanges();
+                modifiedTimes.clear();
+                journalChangeTypes.clear();
+                handedOver.clear();
+                cycleEventLatency.reset();
+
+                // every so often ignore the skipping rules, to pick up changes they cannot see
+                boolean verificationSweep = verificationSweepRequested ||
+                        (cycleConfiguration.getVerificationSweepInterval() > 0 && cycleCount % cycleConfiguration.getVerificationSweepInterval() == 0);
+                long currentShardMembershipVersion = -1;
+                if (shardCoordinator != null) {
+                    if (!shardCoordinator.isLeaseCurrent()) {
+                        // the other shards will have taken over, so do not publish anything until the lease is renewed
+                        pollingAuditLog.logRateLimitedMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_SHARD_LEASE_EXPIRED);
+                        return;
+                    }
+                    // after a rebalance, what was skipped before may no longer be ours and vice versa
+                    currentShardMembershipVersion = shardCoordinator.getMembershipVersion();
+                    if (currentShardMembershipVersion != shardMembershipVersion) {
+                        verificationSweep = true;
+                        handoverPending = true;
+                    }
+                    membershipSettling = !shardCoordinator.isMembershipStable();
+                    // once settled, sweep again to find everything that has moved to other shards
+                    verificationSweep = verificationSweep || (handoverPending && !membershipSettling);
+                }
+                scanState.beginScan();
 
-                for (File dataFile : dataFiles) {
-                    // add data file entity
-                    String baseCanonicalName = null;
-                    String baseName = null;
+                try {
+                    boolean scanned = false;
                     try {
-                        baseCanonicalName = dataFile.getCanonicalPath();
-                        baseName = dataFile.getName();
+                        scanned = (folder == null) ? scanListing() : scanFolder(folder, "", verificationSweep);
                     } catch (IOException e) {
+                        // abandon the scan, as every file would otherwise be taken as deleted
                         raiseConnectorCheckedException(FileOMRSErrorCode.IOEXCEPTION_ACCESSING_FILE, methodName, e);
                     }
-                    // ignore hidden files
-                    if (!baseName.startsWith(".")) {
-                        Map<String, String> attributeMap = getDataFileProperties(baseName);
-
-                        EntityDetail dataFileEntity = getEntityDetailSkeleton(methodName,
-                                DATA_FILE,
-                                baseName,
-                                baseCanonicalName,
-                                attributeMap);
-                        cachedRepositoryAccessor.saveEntityReferenceCopyToStore(dataFileEntity);
-
-                        String name = baseName + "-connection";
-                        String canonicalName = baseCanonicalName + "-connection";
-
-                        EntityDetail connectionEntity = getEntityDetailSkeleton(methodName,
-                                CONNECTION,
-                                name,
-                                canonicalName);
+                    if (!scanned || !saveProfiledFiles(0)) {
+                        // stopping - the saves for the previous file have completed
+                        return;
+                    }
+                } finally {
+                    // so that the files not saved are saved by the next scan
+                    for (ProfiledSave profiledSave : profiledSaves) {
+                        forgetSave(profiledSave.canonicalName, profiledSave.isNew);
+                    }
+                    profiledSaves.clear();
+                }
+                shardMembershipVersion = currentShardMembershipVersion;
+                handoverPending = handoverPending && membershipSettling;
+                for (String deletedPath : scanState.endScan()) {
+                    if (isHandedOver(deletedPath)) {
+                        // the new owner publishes it, so a purge event could undo its events in the cohort
+                        purgeDataFile(deletedPath, false);
+                    } else {
+                        filesDeleted++;
+                        purgeDataFile(deletedPath, true);
+                    }
+                }
+                scanComplete = true;
+                verificationSweepRequested = false;
+                derivedInstancesChanged = false;
+            }
+        }
 
-                        cachedRepositoryAccessor.saveEntityReferenceCopyToStore(connectionEntity);
+        /**
+         * Compare the DataFiles in the repository with the files in the scan state and repair the differences, so
+         * that saves and purges that were lost do not leave the repository out of step with the folder. Merkle
+         * digests of both are built per folder and compared from the top down, only descending into the folders
+         * whose digests differ, and only the files in the folders whose own files differ are compared one by one.
+         * The repository is read a page at a time, and read a second time only if it differs, to collect the
+         * versions of the DataFiles in those folders. Only the files found to differ are saved again or purged,
+         * and their events are sent with the rest of this cycle's events.
+         *
+         * @throws ConnectorCheckedException if the repository cannot be read or a repair fails
+         */
+        private void reconcileRepository() throws ConnectorCheckedException {
+            final String methodName = "reconcileRepository";
+            long start = System.currentTimeMillis();
+            DirectoryDigests published = new DirectoryDigests(File.separatorChar);
+            int publishedCount = 0;
+            List<String> page = new ArrayList<>(REFRESH_PAGE_SIZE);
+            int cursor = 0;
+            while (cursor != -1) {
+                page.clear();
+                cursor = scanState.getFiles(cursor, REFRESH_PAGE_SIZE, page);
+                for (String path : page) {
+                    published.add(path, scanState.getVersion(path));
+                    publishedCount++;
+                }
+            }
+            DirectoryDigests stored = new DirectoryDigests(File.separatorChar);
+            int storedCount = forEachStoredDataFile(stored::add);
+            if (!running.get()) {
+                return;
+            }
+            Set<String> differingFolders = published.getDifferingDirectories(stored);
+            int saved = 0;
+            int purged = 0;
+            if (!differingFolders.isEmpty()) {
+                Map<String, Long> storedVersions = new HashMap<>();
+                forEachStoredDataFile((path, version) -> {
+                    if (differingFolders.contains(published.getDirectory(path))) {
+                        storedVersions.put(path, version);
+                    }
+                });
+                cursor = 0;
+                while (cursor != -1 && running.get()) {
+                    page.clear();
+                    cursor = scanState.getFiles(cursor, REFRESH_PAGE_SIZE, page);
+                    for (String path : page) {
+                        if (!differingFolders.contains(published.getDirectory(path))) {
+                            continue;
+                        }
+                        Long storedVersion = storedVersions.remove(path);
+                        if (storedVersion == null || storedVersion != scanState.getVersion(path)) {
+                            // archive members and files in other stores are not profiled
+                            FileProfile profile = new File(path).isFile() ? getBootstrapProfile(path) : null;
+                            saveDataFile(new File(path).getName(), path, 0, storedVersion == null, profile);
+                            saved++;
+                        }
+                    }
+                }
+                // what is left was not published, or was deleted without the DataFile being purged
+                for (String path : storedVersions.keySet()) {
+                    purgeDataFile(path, true);
+                    purged++;
+                }
+            }
+            String[] params = new String[]{publishedCount + "", storedCount + "", (System.currentTimeMillis() - start) + "",
+                    differingFolders.size() + "", saved + "", purged + ""};
+            if (saved > 0 || purged > 0) {
+                pollingAuditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_RECONCILIATION_COMPLETE, params);
+            } else {
+                pollingAuditLog.logDebugMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_RECONCILIATION_COMPLETE, params);
+            }
+        }
 
-                        name = baseName + "-" + CONNECTOR_TYPE;
-                        canonicalName = baseCanonicalName + "-" + CONNECTOR_TYPE;
-                        EntityDetail connectionTypeEntity = getEntityDetailSkeleton(methodName,
-                                CONNECTOR_TYPE,
-                                name,
-                                canonicalName);
-                        cachedRepositoryAccessor.saveEntityReferenceCopyToStore(connectionTypeEntity);
+        /**
+         * Read the DataFiles this event mapper has saved in the repository, a page at a time.
+         *
+         * @param action called with the canonical path and version of each DataFile
+         * @return the number of DataFiles read
+         * @throws ConnectorCheckedException if the repository cannot be read
+         */
+        private int forEachStoredDataFile(ObjLongConsumer<String> action) throws ConnectorCheckedException {
+            String methodName = "forEachStoredDataFile";
+            String typeGUID = typeNameToGuidMap.get(DATA_FILE);
+            int count = 0;
+            int fromElement = 0;
+            List<EntityDetail> dataFiles;
+            do {
+                dataFiles = null;
+                try {
+                    dataFiles = referenceCopyStore.findEntities(typeGUID, fromElement, REFRESH_PAGE_SIZE);
+                } catch (InvalidParameterException e) {
+                    raiseConnectorCheckedException(FileOMRSErrorCode.INVALID_PARAMETER_EXCEPTION, methodName, e, serverName);
+                } catch (RepositoryErrorException e) {
+                    raiseConnectorCheckedException(FileOMRSErrorCode.REPOSITORY_ERROR_EXCEPTION, methodName, e, serverName);
+                } catch (TypeErrorException e) {
+                    raiseConnectorCheckedException(FileOMRSErrorCode.TYPE_ERROR_EXCEPTION, methodName, e, serverName);
+                } catch (PropertyErrorException e) {
+                    raiseConnectorCheckedException(FileOMRSErrorCode.PROPERTY_ERROR_EXCEPTION, methodName, e, serverName);
+                } catch (PagingErrorException e) {
+                    raiseConnectorCheckedException(FileOMRSErrorCode.PAGING_ERROR_EXCEPTION, methodName, e, serverName);
+                } catch (FunctionNotSupportedException e) {
+                    raiseConnectorCheckedException(FileOMRSErrorCode.FUNCTION_NOT_SUPPORTED_ERROR_EXCEPTION, methodName, e, serverName);
+                } catch (UserNotAuthorizedException e) {
+                    raiseConnectorCheckedException(FileOMRSErrorCode.USER_NOT_AUTHORIZED_EXCEPTION, methodName, e, serverName);
+                }
+                if (dataFiles == null) {
+                    break;
+                }
+                for (EntityDetail dataFile : dataFiles) {
+                    String path = dataFileInstanceBuilder.decodeGUID(dataFile.getGUID());
+                    if (path != null && metadataCollectionId.equals(dataFile.getMetadataCollectionId())) {
+                        action.accept(path, dataFile.getVersion());
+                        count++;
+                    }
+                }
+                fromElement += dataFiles.size();
+            } while (dataFiles.size() == REFRESH_PAGE_SIZE && running.get());
+            return count;
+        }
 
+        /**
+         * Load the files listed in the bootstrap manifest instead of finding them with a scan. The manifest is
+         * streamed into the scan state, and the new files are saved and sent in batches by parallel workers. The
+         * folders that have not changed since the manifest was written are recorded as listed, so the next scan
+         * only lists the folders that have changed since, and only saves the files whose size or last modified
+         * time differ from the manifest. The paths in the manifest must be canonical.
+         */
+        private void bootstrapFromManifest() {
+            String methodName = "bootstrapFromManifest";
+            long start = System.currentTimeMillis();
+            auditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_BOOTSTRAP_STARTING.getMessageDefinition(bootstrapManifest, bootstrapThreads + ""));
+            ExecutorService workers = Executors.newFixedThreadPool(bootstrapThreads, new EventMapperThreadFactory(serverName, "bootstrap"));
+            CompletionService<List<String>> completionService = new ExecutorCompletionService<>(workers);
+            Set<String> folders = new HashSet<>();
+            int pendingBatches = 0;
+            int filesLoaded = 0;
+            int filesIgnored = 0;
+            int filesFailed = 0;
+            int invalidEntries = 0;
+            long manifestTimestamp = 0;
+            boolean complete = false;
+            try {
+                try (ManifestReader manifestReader = new ManifestReader(bootstrapManifest)) {
+                    String folderPath = new File(getFolderLocation()).getCanonicalPath();
+                    List<String> batch = new ArrayList<>(bootstrapBatchSize);
+                    ManifestEntry entry;
+                    while (running.get() && (entry = manifestReader.next()) != null) {
+                        String path = Paths.get(folderPath).resolve(entry.getPath()).normalize().toString();
+                        String relativePath = getRelativePath(folderPath, path);
+                        if (relativePath == null || !isScannedByThisShard(relativePath)) {
+                            filesIgnored++;
+                            continue;
+                        }
+                        // a path listed twice is only saved once
+                        if (scanState.record(path, entry.getSize(), entry.getLastModified(), 0) == ScanStateIndex.Change.NEW) {
+                            filesLoaded++;
+                            batch.add(path);
+                        }
+                        for (int separator = relativePath.lastIndexOf('/'); separator > 0; separator = relativePath.lastIndexOf('/', separator - 1)) {
+                            if (!folders.add(folderPath + File.separator + relativePath.substring(0, separator).replace('/', File.separatorChar))) {
+                                break;
+                            }
+                        }
+                        if (batch.size() == bootstrapBatchSize) {
+                            submitBootstrapBatch(completionService, batch);
+                            batch = new ArrayList<>(bootstrapBatchSize);
+                            pendingBatches++;
+                            // limit the batches waiting for a worker, so the manifest is read no faster than it is saved
+                            if (pendingBatches > bootstrapThreads * 2) {
+                                filesFailed += removeFailedBootstrapFiles(completionService.take());
+                                pendingBatches--;
+                            }
+                        }
+                    }
+                    if (!batch.isEmpty()) {
+                        submitBootstrapBatch(completionService, batch);
+                        pendingBatches++;
+                    }
+                    invalidEntries = manifestReader.getInvalidEntryCount();
+                    manifestTimestamp = manifestReader.getTimestamp();
+                    complete = running.get();
+                } catch (IOException e) {
+                    auditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_BOOTSTRAP_FAILED.getMessageDefinition(bootstrapManifest, e.getMessage()));
+                }
+                for (; pendingBatches > 0; pendingBatches--) {
+                    filesFailed += removeFailedBootstrapFiles(completionService.take());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running.set(false);
+                return;
+            } finally {
+                workers.shutdownNow();
+                flushJournal();
+            }
+            if (complete) {
+                for (String folderName : folders) {
+                    File folder = new File(folderName);
+                    long lastModified = folder.lastModified();
+                    // a folder changed since the manifest was written may have files the manifest does not list
+                    if (lastModified <= manifestTimestamp && folder.isDirectory()) {
+                        scanState.recordDirectory(folderName, lastModified);
+                    }
+                }
+                auditLog.logMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_BOOTSTRAP_COMPLETE.getMessageDefinition((filesLoaded - filesFailed) + "",
+                                                                                                                      bootstrapManifest,
+                                                                                                                      (System.currentTimeMillis() - start) + "",
+                                                                                                                      filesIgnored + "",
+                                                                                                                      invalidEntries + "",
+                                                                                                                      filesFailed + ""));
+            }
+        }
 
-                        name = baseName + "-" + ENDPOINT;
-                        canonicalName = baseCanonicalName + "-" + ENDPOINT;
+        private void submitBootstrapBatch(CompletionService<List<String>> completionService, List<String> batch) {
+            completionService.submit(() -> saveBootstrapBatch(batch));
+        }
 
-                        EntityDetail endpointEntity = getEntityDetailSkeleton(methodName,
-                                ENDPOINT,
-                                name,
-                                canonicalName);
-                        InstanceProperties instanceProperties = endpointEntity.getProperties();
-                        repositoryHelper.addStringPropertyToInstance(methodName,
-                                null,
-                                "protocol",
-                                "file",
-                                methodName);
-                        repositoryHelper.addStringPropertyToInstance(methodName,
-                                null,
-                                "networkAddress",
-                                baseCanonicalName,
-                                methodName);
-                        endpointEntity.setProperties(instanceProperties);
+        /**
+         * Forget the files a bootstrap worker could not save, so that the next scan saves them.
+         *
+         * @param completedBatch the completed batch
+         * @return number of files that could not be saved
+         * @throws InterruptedException if interrupted while waiting for the batch
+         */
+        private int removeFailedBootstrapFiles(Future<List<String>> completedBatch) throws InterruptedException {
+            List<String> failedPaths;
+            try {
+                failedPaths = completedBatch.get();
+            } catch (ExecutionException e) {
+                // saveBootstrapBatch catches its own failures
+                return 0;
+            }
+            for (String failedPath : failedPaths) {
+                // bootstrap files are all new
+                forgetSave(failedPath, true);
+            }
+            return failedPaths.size();
+        }
 
-                        cachedRepositoryAccessor.saveEntityReferenceCopyToStore(endpointEntity);
+        /**
+         * Save the reference copies for a batch of new files, send their batch events and journal them. This runs
+         * on the bootstrap workers, so it only uses what is safe to share between threads.
+         *
+         * @param paths canonical paths of the new files
+         * @return paths of the files that could not be saved
+         */
+        private List<String> saveBootstrapBatch(List<String> paths) {
+            String methodName = "saveBootstrapBatch";
+            List<String> failedPaths = new ArrayList<>();
+            InstanceGraphPacker packer = newInstanceGraphPacker();
+            for (String path : paths) {
+                if (!running.get()) {
+                    failedPaths.add(path);
+                    continue;
+                }
+                try {
+                    String baseName = new File(path).getName();
+                    List<EntityDetail> entities = new ArrayList<>();
+                    List<Relationship> relationships = new ArrayList<>();
+                    entities.add(dataFileInstanceBuilder.getDataFileEntity(baseName, path, 1, getBootstrapProfile(path)));
+                    dataFileInstanceBuilder.addDerivedInstances(baseName, path, entities, relationships);
+                    for (EntityDetail entity : entities) {
+                        referenceCopyStore.saveEntityReferenceCopy(entity);
+                    }
+                    for (Relationship relationship : relationships) {
+                        referenceCopyStore.saveRelationshipReferenceCopy(relationship);
+                    }
+                    // journalled once the event carrying it has been sent, as for the files found by a scan
+                    journalChangeTypes.put(entities.get(0).getGUID(), JournalRecord.ChangeType.CREATED);
+                    sendAssetInstances(entities, relationships, packer);
+                } catch (ConnectorCheckedException | RuntimeException e) {
+                    failedPaths.add(path);
+                    pollingAuditLog.logRateLimitedMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_POLL_LOOP_GOT_AN_EXCEPTION, e.getMessage());
+                }
+            }
+            if (packer != null && running.get()) {
+                packer.flush();
+            }
+            return failedPaths;
+        }
 
-                        // create relationships
+        /**
+         * The bootstrap workers are already parallel, so they profile the files they save themselves.
+         *
+         * @param path canonical path of a file
+         * @return the columns of the file, or null if it is not profiled
+         */
+        private FileProfile getBootstrapProfile(String path) {
+            String methodName = "getBootstrapProfile";
+            if (!cycleConfiguration.isProfileFiles() || !FileProfiler.isProfiled(path)) {
+                return null;
+            }
+            try {
+                return FileProfiler.profile(new File(path), cycleConfiguration.getProfileReadLimit());
+            } catch (IOException e) {
+                pollingAuditLog.logRateLimitedMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_PROFILE_FAILED, path, e.getMessage());
+                return null;
+            }
+        }
 
-                        // entity guids used to create proxies
-                        String connectionGuid = connectionEntity.getGUID();
-                        String dataFileGuid = dataFileEntity.getGUID();
-                        String connectionTypeGuid = connectionTypeEntity.getGUID();
-                        String endPointGuid = endpointEntity.getGUID();
+        /**
+         * @param folderPath canonical path of the folder location
+         * @param path       path of a file
+         * @return the path relative to the folder location using / as the separator, or null if it is not under it
+         */
+        private String getRelativePath(String folderPath, String path) {
+            if (!path.startsWith(folderPath + File.separator)) {
+                return null;
+            }
+            return path.substring(folderPath.length() + 1).replace(File.separatorChar, '/');
+        }
 
-                        // create the 3 relationships
-                        createReferenceRelationship(CONNECTION_TO_ASSET,
-                                connectionGuid,
-                                CONNECTION,
-                                dataFileGuid,
-                                DATA_FILE);
+        /**
+         * Apply the rules a scan uses to choose the files it records to a file listed in a manifest.
+         *
+         * @param relativePath path of the file relative to the folder location
+         * @return whether a scan by this shard would record the file
+         */
+        private boolean isScannedByThisShard(String relativePath) {
+            String[] segments = relativePath.split("/");
+            if (segments.length > 1 && !cycleConfiguration.isScanSubfolders()) {
+                return false;
+            }
+            for (String segment : segments) {
+                if (segment.startsWith(".")) {
+                    return false;
+                }
+            }
+            return isOwnedByThisShard(shardByPath ? relativePath : segments[0], true, false);
+        }
 
-                        createReferenceRelationship(CONNECTION_CONNECTOR_TYPE,
-                                connectionGuid,
-                                CONNECTION,
-                                connectionTypeGuid,
-                                CONNECTOR_TYPE);
+        /**
+         * List a folder, saving the new and changed files in it and scanning its subfolders if configured.
+         *
+         * @param folder            the folder
+         * @param relativePath      path of the folder relative to the folder location, using / as the separator
+         * @param verificationSweep whether to ignore the skipping rules
+         * @return false if the polling thread was stopped during the scan
+         * @throws ConnectorCheckedException if a file cannot be accessed or saved
+         * @throws IOException if the folder cannot be listed, other than a subfolder having been removed
+         */
+        private boolean scanFolder(File folder, String relativePath, boolean verificationSweep) throws ConnectorCheckedException, IOException {
+            String methodName = "scanFolder";
+            long openStart = pipelineTracer == null ? 0 : System.nanoTime();
+            // streamed rather than listed into an array, so a folder of any size is scanned in bounded memory
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder.toPath())) {
+                if (pipelineTracer != null && pipelineTracer.isSampled(folder.getPath())) {
+                    // folders are sampled by their path, as they have no DataFile; the span only covers opening the
+                    // folder, as its entries are read as they are scanned, between the spans of its files
+                    pipelineTracer.record("openFolder", openStart, null, folder.getPath());
+                }
+                for (Path entry : entries) {
+                    File dataFile = entry.toFile();
+                    if (!running.get()) {
+                        return false;
+                    }
+                    String baseName = dataFile.getName();
+                    // ignore hidden files
+                    if (baseName.startsWith(".")) {
+                        continue;
+                    }
+                    boolean isFolder = cycleConfiguration.isScanSubfolders() && dataFile.isDirectory();
+                    String entryRelativePath = relativePath.isEmpty() ? baseName : relativePath + "/" + baseName;
+                    if (!isOwnedByThisShard(entryRelativePath, relativePath.isEmpty(), isFolder)) {
+                        try {
+                            skipOtherShardsEntry(dataFile.getCanonicalPath(), isFolder);
+                        } catch (IOException e) {
+                            raiseConnectorCheckedException(FileOMRSErrorCode.IOEXCEPTION_ACCESSING_FILE, methodName, e);
+                        }
+                        continue;
+                    }
+                    // add data file entity
+                    String baseCanonicalName = null;
+                    long canonicaliseStart = pipelineTracer == null ? 0 : System.nanoTime();
+                    try {
+                        baseCanonicalName = dataFile.getCanonicalPath();
+                    } catch (IOException e) {
+                        raiseConnectorCheckedException(FileOMRSErrorCode.IOEXCEPTION_ACCESSING_FILE, methodName, e);
+                    }
+                    if (pipelineTracer != null && !isFolder) {
+                        traceStage("canonicalise", canonicaliseStart, baseCanonicalName);
+                    }
+                    if (isFolder) {
+                        // symbolic links are not followed, so that the scan cannot loop
+                        if (!Files.isSymbolicLink(dataFile.toPath()) &&
+                                !scanSubfolder(dataFile, baseCanonicalName, entryRelativePath, verificationSweep)) {
+                            return false;
+                        }
+                    } else {
+                        filesScanned++;
+                        long lastModified = dataFile.lastModified();
+                        ScanStateIndex.Change change = scanState.record(baseCanonicalName, dataFile.length(), lastModified, 0);
+                        if (change != ScanStateIndex.Change.UNCHANGED && cycleConfiguration.isProfileFiles() && profilerExecutor != null && FileProfiler.isProfiled(baseName)) {
+                            filesChanged++;
+                            int profileReadLimit = cycleConfiguration.getProfileReadLimit();
+                            String profiledCanonicalName = baseCanonicalName;
+                            profiledSaves.add(new ProfiledSave(baseName, baseCanonicalName, lastModified, change == ScanStateIndex.Change.NEW,
+                                                               profilerExecutor.submit(() -> {
+                                                                   long profileStart = pipelineTracer == null ? 0 : System.nanoTime();
+                                                                   FileProfile profile = FileProfiler.profile(dataFile, profileReadLimit);
+                                                                   if (pipelineTracer != null) {
+                                                                       traceStage("profile", profileStart, profiledCanonicalName);
+                                                                   }
+                                                                   return profile;
+                                                               })));
+                            // so the profiles of a burst of changes are not all held at once
+                            if (profiledSaves.size() > PROFILED_SAVES_IN_FLIGHT && !saveProfiledFiles(PROFILED_SAVES_IN_FLIGHT / 2)) {
+                                return false;
+                            }
+                        } else if (change != ScanStateIndex.Change.UNCHANGED) {
+                            filesChanged++;
+                            try {
+                                saveDataFile(baseName, baseCanonicalName, lastModified, change == ScanStateIndex.Change.NEW, null);
+                            } catch (ConnectorCheckedException e) {
+                                // so that it is retried on the next scan
+                                forgetSave(baseCanonicalName, change == ScanStateIndex.Change.NEW);
+                                throw e;
+                            }
+                        }
+                        if (cycleConfiguration.isExpandArchives() && ArchiveIndexReader.isArchive(baseName) &&
+                                !scanArchive(dataFile, baseCanonicalName, lastModified, change != ScanStateIndex.Change.UNCHANGED)) {
+                            return false;
+                        }
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                if (relativePath.isEmpty()) {
+                    throw e;
+                }
+                // the subfolder has been removed since it was found, so the files under it are deleted
+                return true;
+            } catch (DirectoryIteratorException e) {
+                throw e.getCause();
+            }
+            return true;
+        }
 
-                        createReferenceRelationship(CONNECTION_ENDPOINT,
-                                connectionGuid,
-                                CONNECTION,
-                                endPointGuid,
-                                ENDPOINT
-                        );
+        /**
+         * Scan the storage location through the storage lister. The directories are listed in parallel on the
+         * listing threads while the polling thread records and saves the files as they arrive. A store need not
+         * record when its directories change, so every directory is listed each scan. The files are not local,
+         * so archives are not expanded and files are not profiled.
+         *
+         * @return false if the polling thread was stopped during the scan
+         * @throws ConnectorCheckedException if the location cannot be listed or a file cannot be saved
+         */
+        private boolean scanListing() throws ConnectorCheckedException {
+            String methodName = "scanListing";
+            try (ListingWalk walk = new ListingWalk(storageLister, listingExecutor, LISTING_PAGE_SIZE, this::isListedDirectory, running::get)) {
+                ListingEntry entry;
+                while ((entry = walk.next()) != null) {
+                    String key = entry.getKey();
+                    String baseName = entry.getName();
+                    // ignore hidden files
+                    if (baseName.isEmpty() || baseName.startsWith(".")) {
+                        continue;
+                    }
+                    if (entry.isDirectory()) {
+                        String directoryKey = key.endsWith("/") ? key.substring(0, key.length() - 1) : key;
+                        if (cycleConfiguration.isScanSubfolders() && !isOwnedByThisShard(directoryKey, directoryKey.indexOf('/') == -1, true)) {
+                            skipOtherShardsEntry(storageLister.getCanonicalName(directoryKey), true);
+                        }
+                        continue;
+                    }
+                    if (!isOwnedByThisShard(key, key.indexOf('/') == -1, false)) {
+                        skipOtherShardsEntry(storageLister.getCanonicalName(key), false);
+                        continue;
+                    }
+                    long canonicaliseStart = pipelineTracer == null ? 0 : System.nanoTime();
+                    String baseCanonicalName = storageLister.getCanonicalName(key);
+                    if (pipelineTracer != null) {
+                        traceStage("canonicalise", canonicaliseStart, baseCanonicalName);
+                    }
+                    filesScanned++;
+                    ScanStateIndex.Change change = scanState.record(baseCanonicalName, entry.getSize(), entry.getLastModified(), 0);
+                    if (change != ScanStateIndex.Change.UNCHANGED) {
+                        filesChanged++;
+                        try {
+                            saveDataFile(baseName, baseCanonicalName, entry.getLastModified(), change == ScanStateIndex.Change.NEW, null);
+                        } catch (ConnectorCheckedException e) {
+                            // so that it is retried on the next scan
+                            forgetSave(baseCanonicalName, change == ScanStateIndex.Change.NEW);
+                            throw e;
+                        }
                     }
                 }
+            } catch (IOException e) {
+                raiseConnectorCheckedException(FileOMRSErrorCode.LISTING_FAILED, methodName, e, storageLister.getLocation(), e.getMessage());
             }
+            return running.get();
         }
 
-        private Map<String, String> getDataFileProperties(String name) {
-            String methodName = "getDataFileProperties";
+        /**
+         * Called on the listing threads for each directory found by a storage lister.
+         *
+         * @param directory the directory
+         * @return whether to list the directory
+         */
+        private boolean isListedDirectory(ListingEntry directory) {
+            String key = directory.getKey();
+            return cycleConfiguration.isScanSubfolders() &&
+                    !directory.getName().startsWith(".") &&
+                    isOwnedByThisShard(key, key.indexOf('/') == -1, true);
+        }
 
-            Map<String, String> attributeMap = new HashMap<>();
-            String fileType = null;
-            int lastDotIndex = name.lastIndexOf(".");
-            if (name.length() > 2 && lastDotIndex != -1 && lastDotIndex < name.length() - 1) {
-                // if we can see a file type then add as an attribute
-                fileType = name.substring(lastDotIndex + 1);
+        /**
+         * Save a DataFile for each member of an archive, as well as the one for the archive itself. The members
+         * are listed from the archive's index without extracting them. The index is only read again when the
+         * archive's size or last modified time changes, and then only the members whose size, last modified time
+         * or CRC have changed are saved. The members are recorded under the archive's path followed by
+         * {@link ArchiveIndexReader#MEMBER_SEPARATOR}, which is recorded as a directory with the archive's last
+         * modified time once all the members have been recorded.
+         *
+         * @param archive        the archive
+         * @param canonicalName  canonical path of the archive
+         * @param lastModified   last modified time of the archive
+         * @param archiveChanged whether the archive is new or changed since the previous scan
+         * @return false if the polling thread was stopped during the scan
+         * @throws ConnectorCheckedException if a member cannot be saved
+         */
+        private boolean scanArchive(File archive, String canonicalName, long lastModified, boolean archiveChanged) throws ConnectorCheckedException {
+            String methodName = "scanArchive";
+            String membersPath = canonicalName + ArchiveIndexReader.MEMBER_SEPARATOR;
+            if (!archiveChanged && scanState.isDirectoryUnchanged(membersPath, lastModified)) {
+                filesSkipped += scanState.retainSubtree(membersPath);
+                return true;
             }
-
-            if (fileType != null) {
-                attributeMap.put("fileType", fileType);
+            List<ArchiveMember> members;
+            try {
+                members = ArchiveIndexReader.readIndex(archive);
+            } catch (IOException e) {
+                // catalogued as a single file until it changes
+                pollingAuditLog.logRateLimitedMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_ARCHIVE_NOT_READABLE, canonicalName, e.getMessage());
+                members = Collections.emptyList();
             }
+            for (ArchiveMember member : members) {
+                if (!running.get()) {
+                    return false;
+                }
+                String memberName = getArchiveMemberName(member.getName());
+                if (memberName.isEmpty()) {
+                    continue;
+                }
+                String memberPath = membersPath + File.separator + memberName;
+                filesScanned++;
+                ScanStateIndex.Change change = scanState.record(memberPath, member.getSize(), member.getLastModified(), member.getCrc());
+                if (change != ScanStateIndex.Change.UNCHANGED) {
+                    filesChanged++;
+                    try {
+                        saveDataFile(new File(memberPath).getName(), memberPath, lastModified, change == ScanStateIndex.Change.NEW, null);
+                    } catch (ConnectorCheckedException e) {
+                        forgetSave(memberPath, change == ScanStateIndex.Change.NEW);
+                        throw e;
+                    }
+                }
+            }
+            scanState.recordDirectory(membersPath, lastModified);
+            return true;
+        }
 
-
-            return attributeMap;
+        /**
+         * @param name path of a member within an archive, using / as the separator
+         * @return the path with empty and . segments removed and using the local separator
+         */
+        private String getArchiveMemberName(String name) {
+            StringBuilder memberName = new StringBuilder();
+            for (String segment : name.split("/")) {
+                if (!segment.isEmpty() && !segment.equals(".")) {
+                    if (memberName.length() > 0) {
+                        memberName.append(File.separatorChar);
+                    }
+                    memberName.append(segment);
+                }
+            }
+            return memberName.toString();
         }
 
-        private EntityProxy getEntityProxySkeleton(String guid, String typeName) throws ConnectorCheckedException {
-            String methodName = "getEntityProxySkeleton";
-            EntityProxy proxy = new EntityProxy();
-            TypeDefSummary typeDefSummary = repositoryHelper.getTypeDefByName("getEntityProxySkeleton", typeName);
-            InstanceType type = null;
+        /**
+         * Scan a subfolder, skipping it if the skipping rules allow. A subfolder matching an immutable partition
+         * pattern that is older than the immutable partition age is skipped with everything under it. Otherwise a
+         * subfolder whose last modified time is unchanged is not listed, as no files have been added to or removed
+         * from it, but its known subfolders are still scanned.
+         *
+         * @param folder            the subfolder
+         * @param canonicalName     canonical path of the subfolder
+         * @param relativePath      path of the subfolder relative to the folder location, using / as the separator
+         * @param verificationSweep whether to ignore the skipping rules
+         * @return false if the polling thread was stopped during the scan
+         * @throws ConnectorCheckedException if a file cannot be accessed or saved
+         */
+        private boolean scanSubfolder(File folder, String canonicalName, String relativePath, boolean verificationSweep) throws ConnectorCheckedException {
+            String methodName = "scanSubfolder";
+            long lastModified = folder.lastModified();
+            if (!verificationSweep && scanState.isDirectoryKnown(canonicalName)) {
+                if (isImmutablePartition(relativePath, lastModified)) {
+                    filesSkipped += scanState.retainSubtree(canonicalName);
+                    return true;
+                }
+                if (scanState.isDirectoryUnchanged(canonicalName, lastModified)) {
+                    filesSkipped += scanState.retainChildren(canonicalName);
+                    for (String childCanonicalName : scanState.getChildDirectories(canonicalName)) {
+                        if (childCanonicalName.endsWith(ArchiveIndexReader.MEMBER_SEPARATOR)) {
+                            // the members of an archive, which is unchanged as its folder is
+                            filesSkipped += scanState.retainSubtree(childCanonicalName);
+                            continue;
+                        }
+                        File child = new File(childCanonicalName);
+                        // removed subfolders are dropped from the scan state at the end of the scan
+                        if (child.isDirectory() &&
+                                !scanSubfolder(child, childCanonicalName, relativePath + "/" + child.getName(), verificationSweep)) {
+                            return false;
+                        }
+                    }
+                    scanState.recordDirectory(canonicalName, lastModified);
+                    return true;
+                }
+            }
             try {
-                if (typeDefSummary == null) {
-                    throw new TypeErrorException(FileOMRSErrorCode.TYPEDEF_NAME_NOT_KNOWN.getMessageDefinition(repositoryName, methodName, typeName),
-                                                 this.getClass().getName(),
-                                                 methodName);
+                if (!scanFolder(folder, relativePath, verificationSweep)) {
+                    return false;
                 }
-                type = repositoryHelper.getNewInstanceType(methodName, typeDefSummary);
-            } catch (TypeErrorException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.TYPE_ERROR_EXCEPTION, methodName, e);
-            }
-            proxy.setType(type);
-            proxy.setGUID(guid);
-            proxy.setMetadataCollectionId(metadataCollectionId);
-            proxy.setMetadataCollectionName(metadataCollectionName);
-            return proxy;
-        }
-
-        private EntityDetail getEntityDetailSkeleton(String originalMethodName,
-                                                     String typeName,
-                                                     String name,
-                                                     String canonicalName
-                                                    ) throws ConnectorCheckedException {
-            return getEntityDetailSkeleton(originalMethodName,
-                                           typeName,
-                                           name,
-                                           canonicalName,
-                                           null);
-
-        }
-
-        private EntityDetail getEntityDetailSkeleton(String originalMethodName,
-                                                     String typeName,
-                                                     String name,
-                                                     String canonicalName,
-                                                     Map<String, String> attributeMap
-                                                    ) throws ConnectorCheckedException {
-            String methodName = "getEntityDetail";
+            } catch (IOException e) {
+                // keep everything under it as it was, rather than taking it as deleted, until it can be listed
+                filesSkipped += scanState.retainSubtree(canonicalName);
+                pollingAuditLog.logRateLimitedMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_FOLDER_NOT_READABLE, canonicalName, e.getMessage());
+                return true;
+            }
+            // only recorded once listed, so a scan that is stopped part way lists it again next time
+            scanState.recordDirectory(canonicalName, lastModified);
+            return true;
+        }
 
-            String guid = null;
-            try {
-                guid = Base64.getUrlEncoder().encodeToString(canonicalName.getBytes("UTF-8"));
-            } catch (UnsupportedEncodingException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.ENCODING_EXCEPTION, methodName, e, "canonicalName",canonicalName );
+        /**
+         * When sharding by path each file is owned by one shard and every shard walks all the folders. Otherwise
+         * each top level file and folder, with everything under it, is owned by one shard.
+         *
+         * @param relativePath path of the file or folder relative to the folder location
+         * @param isTopLevel   whether the file or folder is directly in the folder location
+         * @param isFolder     whether it is a folder that is scanned
+         * @return whether this shard should scan it
+         */
+        private boolean isOwnedByThisShard(String relativePath, boolean isTopLevel, boolean isFolder) {
+            if (shardCoordinator == null) {
+                return true;
+            } else if (shardByPath) {
+                return isFolder || shardCoordinator.owns(relativePath);
             }
+            return !isTopLevel || shardCoordinator.owns(relativePath);
+        }
 
+        /**
+         * Called for a file or folder that another shard owns. While the membership is settling the shards may
+         * not agree on its owner, so what this shard recorded for it is kept as it was. Once it has settled, what
+         * this shard recorded for it is handed over to the new owner at the end of the scan.
+         *
+         * @param canonicalName canonical path of the file or folder
+         * @param isFolder      whether it is a folder that is scanned
+         */
+        private void skipOtherShardsEntry(String canonicalName, boolean isFolder) {
+            String membersPath = canonicalName + ArchiveIndexReader.MEMBER_SEPARATOR;
+            if (membershipSettling) {
+                filesSkipped += scanState.retainSubtree(canonicalName) + (isFolder ? 0 : scanState.retainSubtree(membersPath));
+            } else if (isFolder || scanState.getVersion(canonicalName) != 0) {
+                handedOver.add(canonicalName);
+                if (!isFolder) {
+                    handedOver.add(membersPath);
+                }
+            }
+        }
 
-            InstanceProperties initialProperties = repositoryHelper.addStringPropertyToInstance(methodName,
-                                                                                                null,
-                                                                                                "name",
-                                                                                                name,
-                                                                                                methodName);
-            initialProperties = repositoryHelper.addStringPropertyToInstance(methodName,
-                                                                             initialProperties,
-                                                                             "qualifiedName",
-                                                                             qualifiedNamePrefix + canonicalName,
-                                                                             methodName);
-            if (attributeMap != null && !attributeMap.keySet().isEmpty()) {
-                addTypeSpecificProperties(initialProperties, attributeMap);
+        /**
+         * @param path canonical path of a file that was not seen by this scan
+         * @return whether it is, or is under, a file or folder that has been handed over to another shard
+         */
+        private boolean isHandedOver(String path) {
+            for (String parent = path; !handedOver.isEmpty() && parent != null; ) {
+                if (handedOver.contains(parent)) {
+                    return true;
+                }
+                int separator = Math.max(parent.lastIndexOf(File.separatorChar), parent.lastIndexOf('/'));
+                parent = separator > 0 ? parent.substring(0, separator) : null;
             }
+            return false;
+        }
 
-            EntityDetail entityToAdd = new EntityDetail();
-            entityToAdd.setProperties(initialProperties);
+        private boolean isImmutablePartition(String relativePath, long lastModified) {
+            if (System.currentTimeMillis() - lastModified < cycleConfiguration.getImmutablePartitionAge()) {
+                return false;
+            }
+            for (Pattern pattern : cycleConfiguration.getImmutablePartitionPatterns()) {
+                if (pattern.matcher(relativePath).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
 
-            // set the provenance as local cohort
-            entityToAdd.setInstanceProvenanceType(InstanceProvenanceType.LOCAL_COHORT);
-            entityToAdd.setMetadataCollectionId(metadataCollectionId);
-//            entityToAdd.setMetadataCollectionName(metadataCollectionName);
+        /**
+         * Save the files whose profiles were started during the scan, oldest first, waiting for each profile in
+         * turn. A file that cannot be profiled is saved without its columns.
+         *
+         * @param inFlight number of files left waiting for their profiles
+         * @return false if the polling thread was stopped
+         * @throws ConnectorCheckedException if the reference copies cannot be saved
+         */
+        private boolean saveProfiledFiles(int inFlight) throws ConnectorCheckedException {
+            String methodName = "saveProfiledFiles";
+            while (profiledSaves.size() > inFlight) {
+                if (!running.get()) {
+                    return false;
+                }
+                ProfiledSave profiledSave = profiledSaves.peek();
+                FileProfile profile = null;
+                try {
+                    profile = profiledSave.profile.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running.set(false);
+                    return false;
+                } catch (ExecutionException e) {
+                    pollingAuditLog.logRateLimitedMessage(methodName, FileOMRSAuditCode.EVENT_MAPPER_PROFILE_FAILED, profiledSave.canonicalName, e.getCause().getMessage());
+                }
+                saveDataFile(profiledSave.baseName, profiledSave.canonicalName, profiledSave.lastModified, profiledSave.isNew, profile);
+                profiledSaves.poll();
+            }
+            return true;
+        }
 
-            TypeDef typeDef = repositoryHelper.getTypeDefByName(methodName, typeName);
+        /**
+         * Save the reference copies for a new or changed file. The derived instances only depend on the
+         * file's path and the qualified name prefix, so they are only saved when the file is new or the
+         * prefix has changed.
+         *
+         * @param baseName          name of the file
+         * @param baseCanonicalName canonical path of the file
+         * @param lastModified      last modified time of the file
+         * @param isNew             whether the file is new
+         * @param profile           the columns of the file, or null if it has not been profiled
+         * @throws ConnectorCheckedException if the reference copies cannot be saved
+         */
+        private void saveDataFile(String baseName, String baseCanonicalName, long lastModified, boolean isNew, FileProfile profile) throws ConnectorCheckedException {
+            long buildStart = pipelineTracer == null ? 0 : System.nanoTime();
+            EntityDetail dataFileEntity = dataFileInstanceBuilder.getDataFileEntity(baseName,
+                                                                                    baseCanonicalName,
+                                                                                    scanState.getVersion(baseCanonicalName),
+                                                                                    profile);
+            boolean traced = pipelineTracer != null && pipelineTracer.isSampled(dataFileEntity.getGUID());
+            if (traced) {
+                pipelineTracer.record("build", buildStart, dataFileEntity.getGUID(), baseCanonicalName);
+            }
+            long saveStart = traced ? System.nanoTime() : 0;
+            referenceCopyStore.saveEntityReferenceCopy(dataFileEntity);
+            if (traced) {
+                pipelineTracer.record("save", saveStart, dataFileEntity.getGUID(), baseCanonicalName);
+            }
+            addPendingChange(new PendingChange(isNew ? PendingChange.ChangeType.NEW : PendingChange.ChangeType.CHANGED,
+                                               dataFileEntity.getGUID(),
+                                               null,
+                                               null,
+                                               Math.max(0, lastModified)));
+
+            if (isNew || derivedInstancesChanged) {
+                long derivedStart = traced ? System.nanoTime() : 0;
+                List<EntityDetail> derivedEntities = new ArrayList<>();
+                List<Relationship> derivedRelationships = new ArrayList<>();
+                dataFileInstanceBuilder.addDerivedInstances(baseName, baseCanonicalName, derivedEntities, derivedRelationships);
+                for (EntityDetail derivedEntity : derivedEntities) {
+                    referenceCopyStore.saveEntityReferenceCopy(derivedEntity);
+                }
+                for (Relationship derivedRelationship : derivedRelationships) {
+                    referenceCopyStore.saveRelationshipReferenceCopy(derivedRelationship);
+                }
+                if (traced) {
+                    pipelineTracer.record("saveDerived", derivedStart, dataFileEntity.getGUID(), baseCanonicalName);
+                }
+            }
+        }
 
+        /**
+         * Record a span for a stage that only has the file's canonical name, if the file is sampled.
+         *
+         * @param stage         name of the stage
+         * @param startNanos    start of the stage from {@link System#nanoTime()}
+         * @param canonicalName canonical name of the file
+         */
+        private void traceStage(String stage, long startNanos, String canonicalName) {
             try {
-                if (typeDef == null) {
-                    throw new TypeErrorException(FileOMRSErrorCode.TYPEDEF_NAME_NOT_KNOWN.getMessageDefinition(metadataCollectionName, methodName, typeName),
-                                                 this.getClass().getName(),
-                                                 originalMethodName);
+                String guid = dataFileInstanceBuilder.getGUID(canonicalName);
+                if (pipelineTracer.isSampled(guid)) {
+                    pipelineTracer.record(stage, startNanos, guid, canonicalName);
                 }
-                InstanceType instanceType = repositoryHelper.getNewInstanceType(repositoryName, typeDef);
-                entityToAdd.setType(instanceType);
-            } catch (TypeErrorException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.TYPE_ERROR_EXCEPTION, methodName, e);
+            } catch (ConnectorCheckedException e) {
+                // the file cannot be saved either, which is reported when it is
             }
-
-            entityToAdd.setGUID(guid);
-            entityToAdd.setStatus(InstanceStatus.ACTIVE);
-            // for this sample we only support add and delete so there is only one version
-            // if the name changes then this is an add and a delete
-            entityToAdd.setVersion(1);
-
-            return entityToAdd;
-
         }
 
-        void addTypeSpecificProperties(InstanceProperties initialProperties, Map<String, String> attributeMap) {
-            String methodName = "addTypeSpecificProperties";
-            for (String attributeName : attributeMap.keySet()) {
-                repositoryHelper.addStringPropertyToInstance(methodName,
-                                                             initialProperties,
-                                                             attributeName,
-                                                             attributeMap.get(attributeName),
-                                                             methodName);
+        /**
+         * Purge the reference copies for a deleted file, remembering them so the purge events can be sent.
+         *
+         * @param baseCanonicalName canonical path of the deleted file
+         * @param sendEvents        whether to send purge events, false for a file handed over to another shard
+         * @throws ConnectorCheckedException if the reference copies cannot be purged
+         */
+        private void purgeDataFile(String baseCanonicalName, boolean sendEvents) throws ConnectorCheckedException {
+            String baseName = new File(baseCanonicalName).getName();
+            List<EntityDetail> entities = new ArrayList<>();
+            List<Relationship> relationships = new ArrayList<>();
+            entities.add(dataFileInstanceBuilder.getDataFileEntity(baseName, baseCanonicalName, 1));
+            dataFileInstanceBuilder.addDerivedInstances(baseName, baseCanonicalName, entities, relationships);
+
+            for (Relationship relationship : relationships) {
+                purgeRelationshipReferenceCopy(relationship);
+            }
+            for (EntityDetail entity : entities) {
+                purgeEntityReferenceCopy(entity);
+            }
+            if (!sendEvents) {
+                return;
+            }
+            // the relationships are purged before the entities at their ends
+            for (Relationship relationship : relationships) {
+                addPendingChange(new PendingChange(PendingChange.ChangeType.PURGED_RELATIONSHIP,
+                                                   relationship.getGUID(),
+                                                   relationship.getType().getTypeDefGUID(),
+                                                   relationship.getType().getTypeDefName(),
+                                                   relationship.getVersion()));
+            }
+            for (EntityDetail entity : entities) {
+                addPendingChange(new PendingChange(PendingChange.ChangeType.PURGED_ENTITY,
+                                                   entity.getGUID(),
+                                                   entity.getType().getTypeDefGUID(),
+                                                   entity.getType().getTypeDefName(),
+                                                   entity.getVersion()));
             }
         }
 
-        private void createReferenceRelationship(String relationshipTypeName, String end1GUID, String end1TypeName, String end2GUID, String end2TypeName) throws ConnectorCheckedException {
-            String methodName = "createRelationship";
-
-
-            Relationship relationship = null;
+        private void purgeEntityReferenceCopy(EntityDetail entity) throws ConnectorCheckedException {
+            String methodName = "purgeEntityReferenceCopy";
             try {
-                relationship = repositoryHelper.getSkeletonRelationship(methodName,
-                        metadataCollectionId,
-                        InstanceProvenanceType.LOCAL_COHORT,
-                        userId,
-                        relationshipTypeName);
-            } catch (TypeErrorException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.TYPE_ERROR_EXCEPTION, methodName, e);
+                referenceCopyStore.purgeEntityReferenceCopy(entity);
+            } catch (EntityNotKnownException e) {
+                // already gone
+            } catch (InvalidParameterException e) {
+                raiseConnectorCheckedException(FileOMRSErrorCode.INVALID_PARAMETER_EXCEPTION, methodName, e, serverName, methodName);
+            } catch (RepositoryErrorException e) {
+                raiseConnectorCheckedException(FileOMRSErrorCode.REPOSITORY_ERROR_EXCEPTION, methodName, e, serverName, methodName);
+            } catch (HomeEntityException e) {
+                raiseConnectorCheckedException(FileOMRSErrorCode.PURGE_FAILED, methodName, e, entity.getGUID(), entity.getType().getTypeDefName());
+            } catch (FunctionNotSupportedException e) {
+                raiseConnectorCheckedException(FileOMRSErrorCode.FUNCTION_NOT_SUPPORTED_ERROR_EXCEPTION, methodName, e, serverName, methodName);
+            } catch (UserNotAuthorizedException e) {
+                raiseConnectorCheckedException(FileOMRSErrorCode.USER_NOT_AUTHORIZED_EXCEPTION, methodName, e, serverName, methodName);
             }
+        }
 
-            String connectionToAssetCanonicalName = end1GUID + "::" + relationshipTypeName + "::" + end2GUID;
-            String relationshipGUID = null;
+        private void purgeRelationshipReferenceCopy(Relationship relationship) throws ConnectorCheckedException {
+            String methodName = "purgeRelationshipReferenceCopy";
             try {
-                relationshipGUID = Base64.getUrlEncoder().encodeToString(connectionToAssetCanonicalName.getBytes("UTF-8"));
-            } catch (UnsupportedEncodingException e) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.ENCODING_EXCEPTION, methodName, e, "connectionToAssetCanonicalName", connectionToAssetCanonicalName );
+                referenceCopyStore.purgeRelationshipReferenceCopy(relationship);
+            } catch (RelationshipNotKnownException e) {
+                // already gone
+            } catch (InvalidParameterException e) {
+                raiseConnectorCheckedException(FileOMRSErrorCode.INVALID_PARAMETER_EXCEPTION, methodName, e, serverName, methodName);
+            } catch (RepositoryErrorException e) {
+                raiseConnectorCheckedException(FileOMRSErrorCode.REPOSITORY_ERROR_EXCEPTION, methodName, e, serverName, methodName);
+            } catch (HomeRelationshipException e) {
+                raiseConnectorCheckedException(FileOMRSErrorCode.PURGE_FAILED, methodName, e, relationship.getGUID(), relationship.getType().getTypeDefName());
+            } catch (FunctionNotSupportedException e) {
+                raiseConnectorCheckedException(FileOMRSErrorCode.FUNCTION_NOT_SUPPORTED_ERROR_EXCEPTION, methodName, e, serverName, methodName);
+            } catch (UserNotAuthorizedException e) {
+                raiseConnectorCheckedException(FileOMRSErrorCode.USER_NOT_AUTHORIZED_EXCEPTION, methodName, e, serverName, methodName);
             }
-
-            relationship.setGUID(relationshipGUID);
-            //end 1
-            EntityProxy entityProxy1 = getEntityProxySkeleton(end1GUID, end1TypeName);
-            relationship.setEntityOneProxy(entityProxy1);
-
-            //end 2
-            EntityProxy entityProxy2 = getEntityProxySkeleton(end2GUID, end2TypeName);
-            relationship.setEntityTwoProxy(entityProxy2);
-            cachedRepositoryAccessor.saveRelationshipReferenceCopyToStore(relationship);
-
         }
 
-
-        private List<EntityDetail> getEntitiesByTypeGuid(String typeName) throws
-                                                                          InvalidParameterException,
-                                                                          RepositoryErrorException,
-                                                                          TypeErrorException,
-                                                                          PropertyErrorException,
-                                                                          PagingErrorException,
-                                                                          FunctionNotSupportedException,
-                                                                          UserNotAuthorizedException,
-                                                                          ConnectorCheckedException {
-            String methodName = "getEntitiesByTypeGuid";
-            String typeGUID = typeNameToGuidMap.get(typeName);
-            if (typeGUID == null) {
-                raiseConnectorCheckedException(FileOMRSErrorCode.TYPE_ERROR_EXCEPTION, methodName, null, repositoryConnector.getServerName());
-                return null;
-            } else {
-                return metadataCollection.findEntities(
-                        userId,
-                        typeGUID,
-                        null,
-                        null,
-                        0,
-                        null,
-                        null,
-                        null,
-                        null,
-                        null,
-                        0);
+        /**
+         * A new or changed file waiting for its profile before it is saved.
+         */
+        private class ProfiledSave {
+            final String baseName;
+            final String canonicalName;
+            final long lastModified;
+            final boolean isNew;
+            final Future<FileProfile> profile;
+
+            ProfiledSave(String baseName, String canonicalName, long lastModified, boolean isNew, Future<FileProfile> profile) {
+                this.baseName = baseName;
+                this.canonicalName = canonicalName;
+                this.lastModified = lastModified;
+                this.isNew = isNew;
+                this.profile = profile;
             }
         }
     }
@@ -26,6 +26,44 @@ public class FileOMRSRepositoryEventMapperProvider extends OMRSRepositoryConnect
     static final String QUALIFIED_NAME_PREFIX = "qualifiedNamePrefix";
 
     static final String REFRESH_TIME_INTERVAL = "refreshTimeInterval";
+    static final String SHUTDOWN_TIMEOUT = "shutdownTimeout";
+    static final String DEBUG_AUDIT_LOGGING = "debugAuditLogging";
+    static final String AUDIT_LOG_SUPPRESSION_INTERVAL = "auditLogSuppressionInterval";
+    static final String SCAN_STATE_OFF_HEAP = "scanStateOffHeap";
+    static final String RESYNC_INTERVAL = "resyncInterval";
+    static final String SCAN_SUBFOLDERS = "scanSubfolders";
+    static final String IMMUTABLE_PARTITION_PATTERNS = "immutablePartitionPatterns";
+    static final String IMMUTABLE_PARTITION_AGE = "immutablePartitionAge";
+    static final String VERIFICATION_SWEEP_INTERVAL = "verificationSweepInterval";
+    static final String SHARD_LEASE_FOLDER = "shardLeaseFolder";
+    static final String SHARD_INSTANCE_ID = "shardInstanceId";
+    static final String SHARD_KEY = "shardKey";
+    static final String SHARD_HEARTBEAT_INTERVAL = "shardHeartbeatInterval";
+    static final String SHARD_LEASE_TIMEOUT = "shardLeaseTimeout";
+    static final String BOOTSTRAP_MANIFEST = "bootstrapManifest";
+    static final String BOOTSTRAP_THREADS = "bootstrapThreads";
+    static final String BOOTSTRAP_BATCH_SIZE = "bootstrapBatchSize";
+    static final String MAX_EVENTS_PER_SECOND = "maxEventsPerSecond";
+    static final String MAX_INSTANCES_PER_SECOND = "maxInstancesPerSecond";
+    static final String MAX_INSTANCES_PER_EVENT = "maxInstancesPerEvent";
+    static final String MAX_EVENT_SIZE = "maxEventSize";
+    static final String EXPAND_ARCHIVES = "expandArchives";
+    static final String PROFILE_FILES = "profileFiles";
+    static final String PROFILE_READ_LIMIT = "profileReadLimit";
+    static final String PROFILER_THREADS = "profilerThreads";
+    static final String STORAGE_LISTER = "storageLister";
+    static final String LISTING_THREADS = "listingThreads";
+    static final String RECONCILIATION_INTERVAL = "reconciliationInterval";
+    static final String CHANGE_JOURNAL_FOLDER = "changeJournalFolder";
+    static final String CHANGE_JOURNAL_SEGMENT_SIZE = "changeJournalSegmentSize";
+    static final String CHANGE_JOURNAL_SEGMENTS = "changeJournalSegments";
+    static final String TRACE_FOLDER = "traceFolder";
+    static final String TRACE_SAMPLE_INTERVAL = "traceSampleInterval";
+    static final String TRACE_FILE_SIZE = "traceFileSize";
+    static final String TRACE_FILES = "traceFiles";
+    static final String MEMORY_BUDGET = "memoryBudget";
+    static final String SPILL_FOLDER = "spillFolder";
+    static final String CONFIGURATION_FILE = "configurationFile";
 
 
     /**
@@ -46,6 +84,44 @@ public class FileOMRSRepositoryEventMapperProvider extends OMRSRepositoryConnect
         List<String> knownConfigProperties = new ArrayList<>();
         knownConfigProperties.add(QUALIFIED_NAME_PREFIX);
         knownConfigProperties.add(REFRESH_TIME_INTERVAL);
+        knownConfigProperties.add(SHUTDOWN_TIMEOUT);
+        knownConfigProperties.add(DEBUG_AUDIT_LOGGING);
+        knownConfigProperties.add(AUDIT_LOG_SUPPRESSION_INTERVAL);
+        knownConfigProperties.add(SCAN_STATE_OFF_HEAP);
+        knownConfigProperties.add(RESYNC_INTERVAL);
+        knownConfigProperties.add(SCAN_SUBFOLDERS);
+        knownConfigProperties.add(IMMUTABLE_PARTITION_PATTERNS);
+        knownConfigProperties.add(IMMUTABLE_PARTITION_AGE);
+        knownConfigProperties.add(VERIFICATION_SWEEP_INTERVAL);
+        knownConfigProperties.add(SHARD_LEASE_FOLDER);
+        knownConfigProperties.add(SHARD_INSTANCE_ID);
+        knownConfigProperties.add(SHARD_KEY);
+        knownConfigProperties.add(SHARD_HEARTBEAT_INTERVAL);
+        knownConfigProperties.add(SHARD_LEASE_TIMEOUT);
+        knownConfigProperties.add(BOOTSTRAP_MANIFEST);
+        knownConfigProperties.add(BOOTSTRAP_THREADS);
+        knownConfigProperties.add(BOOTSTRAP_BATCH_SIZE);
+        knownConfigProperties.add(MAX_EVENTS_PER_SECOND);
+        knownConfigProperties.add(MAX_INSTANCES_PER_SECOND);
+        knownConfigProperties.add(MAX_INSTANCES_PER_EVENT);
+        knownConfigProperties.add(MAX_EVENT_SIZE);
+        knownConfigProperties.add(EXPAND_ARCHIVES);
+        knownConfigProperties.add(PROFILE_FILES);
+        knownConfigProperties.add(PROFILE_READ_LIMIT);
+        knownConfigProperties.add(PROFILER_THREADS);
+        knownConfigProperties.add(STORAGE_LISTER);
+        knownConfigProperties.add(LISTING_THREADS);
+        knownConfigProperties.add(RECONCILIATION_INTERVAL);
+        knownConfigProperties.add(CHANGE_JOURNAL_FOLDER);
+        knownConfigProperties.add(CHANGE_JOURNAL_SEGMENT_SIZE);
+        knownConfigProperties.add(CHANGE_JOURNAL_SEGMENTS);
+        knownConfigProperties.add(TRACE_FOLDER);
+        knownConfigProperties.add(TRACE_SAMPLE_INTERVAL);
+        knownConfigProperties.add(TRACE_FILE_SIZE);
+        knownConfigProperties.add(TRACE_FILES);
+        knownConfigProperties.add(MEMORY_BUDGET);
+        knownConfigProperties.add(SPILL_FOLDER);
+        knownConfigProperties.add(CONFIGURATION_FILE);
         connectorType.setRecognizedConfigurationProperties(knownConfigProperties);
 
         super.setConnectorTypeProperties(connectorType);
@@ -0,0 +1,31 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.eventmapper;
+
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.InstanceGraph;
+
+/**
+ * Sends the events the polling thread raises to the cohort. The event mapper uses {@link CohortEventSender};
+ * the tests record the events instead, so that the polling thread can be run without a server.
+ */
+interface InstanceEventSender {
+
+    /**
+     * @param instances entities and relationships of the assets in the event
+     */
+    void sendInstanceBatchEvent(InstanceGraph instances);
+
+    /**
+     * @param typeDefGUID guid of the entity's type
+     * @param typeDefName name of the entity's type
+     * @param guid        guid of the purged entity
+     */
+    void sendPurgedEntityEvent(String typeDefGUID, String typeDefName, String guid);
+
+    /**
+     * @param typeDefGUID guid of the relationship's type
+     * @param typeDefName name of the relationship's type
+     * @param guid        guid of the purged relationship
+     */
+    void sendPurgedRelationshipEvent(String typeDefGUID, String typeDefName, String guid);
+}
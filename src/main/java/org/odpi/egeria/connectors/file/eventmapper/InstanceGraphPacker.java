@@ -0,0 +1,95 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.eventmapper;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.EntityDetail;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.Relationship;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Packs the instances of several assets into one InstanceGraph, so that the per-event overhead is paid once
+ * per graph rather than once per asset. A graph is closed when adding the next asset would take it over the
+ * maximum number of instances or the maximum size. The size is that of the instances serialized as JSON, not
+ * counting the event envelope. An asset is never split between graphs, so an asset that is over the limits
+ * on its own is sent in a graph of its own.
+ * <p>
+ * A packer is not thread safe, so each thread sending events uses its own.
+ */
+class InstanceGraphPacker {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final int maxInstances;
+    private final long maxBytes;
+    private final BiConsumer<List<EntityDetail>, List<Relationship>> sender;
+    private List<EntityDetail> entities = new ArrayList<>();
+    private List<Relationship> relationships = new ArrayList<>();
+    private long bytes = 0;
+
+    /**
+     * Constructor
+     *
+     * @param maxInstances maximum entities and relationships in a graph, or 0 for no limit
+     * @param maxBytes     maximum serialized size of a graph in bytes, or 0 for no limit
+     * @param sender       sends the entities and relationships of a graph as a batch event
+     */
+    InstanceGraphPacker(int maxInstances, long maxBytes, BiConsumer<List<EntityDetail>, List<Relationship>> sender) {
+        this.maxInstances = maxInstances;
+        this.maxBytes = maxBytes;
+        this.sender = sender;
+    }
+
+    /**
+     * Add an asset's instances to the graph being packed, first sending the graph if the asset does not fit.
+     *
+     * @param assetEntities      the asset's entities
+     * @param assetRelationships the asset's relationships
+     */
+    void add(List<EntityDetail> assetEntities, List<Relationship> assetRelationships) {
+        int assetInstances = assetEntities.size() + assetRelationships.size();
+        long assetBytes = maxBytes > 0 ? getSerializedSize(assetEntities, assetRelationships) : 0;
+        if (!isEmpty() && ((maxInstances > 0 && entities.size() + relationships.size() + assetInstances > maxInstances) ||
+                (maxBytes > 0 && bytes + assetBytes > maxBytes))) {
+            flush();
+        }
+        entities.addAll(assetEntities);
+        relationships.addAll(assetRelationships);
+        bytes += assetBytes;
+    }
+
+    /**
+     * Send the graph being packed, if it has anything in it.
+     */
+    void flush() {
+        if (isEmpty()) {
+            return;
+        }
+        sender.accept(entities, relationships);
+        entities = new ArrayList<>();
+        relationships = new ArrayList<>();
+        bytes = 0;
+    }
+
+    private boolean isEmpty() {
+        return entities.isEmpty() && relationships.isEmpty();
+    }
+
+    private static long getSerializedSize(List<EntityDetail> assetEntities, List<Relationship> assetRelationships) {
+        long size = 0;
+        try {
+            for (EntityDetail entity : assetEntities) {
+                size += OBJECT_MAPPER.writeValueAsBytes(entity).length;
+            }
+            for (Relationship relationship : assetRelationships) {
+                size += OBJECT_MAPPER.writeValueAsBytes(relationship).length;
+            }
+        } catch (JsonProcessingException e) {
+            // the event bus would fail to send it too, so let the instance count decide
+        }
+        return size;
+    }
+}
@@ -0,0 +1,88 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.eventmapper;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size histogram of latencies in milliseconds, for reporting percentiles without keeping every
+ * sample. Latencies are counted in buckets that are exact up to 16 milliseconds and then split each power of
+ * two into 16, so a reported percentile is within about 6% of the true value.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BUCKET_BITS) * SUB_BUCKETS];
+    private long count = 0;
+    private long max = 0;
+
+    /**
+     * @param latency latency in milliseconds, negative latencies are counted as 0
+     */
+    synchronized void record(long latency) {
+        latency = Math.max(0, latency);
+        counts[getBucket(latency)]++;
+        count++;
+        max = Math.max(max, latency);
+    }
+
+    /**
+     * @return number of latencies recorded
+     */
+    synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @return largest latency recorded in milliseconds
+     */
+    synchronized long getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100
+     * @return the highest latency in the bucket holding the percentile, in milliseconds, or 0 if nothing is recorded
+     */
+    synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(max, getBucketUpperBound(bucket));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Forget the latencies recorded so far.
+     */
+    synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        max = 0;
+    }
+
+    private static int getBucket(long latency) {
+        if (latency < SUB_BUCKETS) {
+            return (int) latency;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(latency) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) (latency >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long getBucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,135 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.eventmapper;
+
+import org.odpi.egeria.connectors.file.auditlog.FileOMRSAuditCode;
+import org.odpi.openmetadata.frameworks.auditlog.AuditLog;
+import org.odpi.openmetadata.frameworks.auditlog.messagesets.AuditLogMessageDefinition;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Wraps the connector's audit log so the polling loop does not flood the audit destination.
+ * Per-step messages are only written when debug audit logging is configured, and repeats of the
+ * same audit code within the suppression interval are counted rather than written. The count is
+ * written as a single suppression message when the interval expires or the log is flushed.
+ */
+class RateLimitedAuditLog {
+    private final BiConsumer<String, AuditLogMessageDefinition> auditLog;
+    private final boolean debug;
+    private final long suppressionInterval;
+    private final Map<FileOMRSAuditCode, Suppression> suppressions = new ConcurrentHashMap<>();
+
+    /**
+     * Tracks the current suppression window for an audit code.
+     */
+    private static class Suppression {
+        long windowStart;
+        int suppressedCount = 0;
+
+        Suppression(long windowStart) {
+            this.windowStart = windowStart;
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param auditLog            audit log to write to
+     * @param debug               whether per-step debug messages should be written
+     * @param suppressionInterval time in milliseconds during which repeats of an audit code are suppressed
+     */
+    RateLimitedAuditLog(AuditLog auditLog, boolean debug, long suppressionInterval) {
+        this(auditLog::logMessage, debug, suppressionInterval);
+    }
+
+    /**
+     * Constructor for writing to somewhere other than an audit log, such as a test's record of the messages.
+     *
+     * @param auditLog            writes a message, given the calling method and the message
+     * @param debug               whether per-step debug messages should be written
+     * @param suppressionInterval time in milliseconds during which repeats of an audit code are suppressed
+     */
+    RateLimitedAuditLog(BiConsumer<String, AuditLogMessageDefinition> auditLog, boolean debug, long suppressionInterval) {
+        this.auditLog = auditLog;
+        this.debug = debug;
+        this.suppressionInterval = suppressionInterval;
+    }
+
+    /**
+     * Write a message unconditionally.
+     *
+     * @param actionDescription calling method
+     * @param auditCode         audit code to log
+     * @param params            parameters for the message
+     */
+    void logMessage(String actionDescription, FileOMRSAuditCode auditCode, String... params) {
+        auditLog.accept(actionDescription, auditCode.getMessageDefinition(params));
+    }
+
+    /**
+     * Write a per-step message, only if debug audit logging is configured.
+     *
+     * @param actionDescription calling method
+     * @param auditCode         audit code to log
+     * @param params            parameters for the message
+     */
+    void logDebugMessage(String actionDescription, FileOMRSAuditCode auditCode, String... params) {
+        if (debug) {
+            auditLog.accept(actionDescription, auditCode.getMessageDefinition(params));
+        }
+    }
+
+    /**
+     * Write a message that may repeat every poll, such as an error. Only the first occurrence of
+     * the audit code in each suppression interval is written; the others are counted.
+     *
+     * @param actionDescription calling method
+     * @param auditCode         audit code to log
+     * @param params            parameters for the message
+     */
+    void logRateLimitedMessage(String actionDescription, FileOMRSAuditCode auditCode, String... params) {
+        long now = System.currentTimeMillis();
+        Suppression suppression = suppressions.computeIfAbsent(auditCode, code -> new Suppression(now - suppressionInterval));
+        int suppressedCount;
+        synchronized (suppression) {
+            if (now - suppression.windowStart < suppressionInterval) {
+                suppression.suppressedCount++;
+                return;
+            }
+            suppressedCount = suppression.suppressedCount;
+            suppression.suppressedCount = 0;
+            suppression.windowStart = now;
+        }
+        logSuppressed(actionDescription, auditCode, suppressedCount);
+        auditLog.accept(actionDescription, auditCode.getMessageDefinition(params));
+    }
+
+    /**
+     * Write the outstanding suppression counts, for example when the event mapper disconnects.
+     *
+     * @param actionDescription calling method
+     */
+    void flush(String actionDescription) {
+        for (Map.Entry<FileOMRSAuditCode, Suppression> entry : suppressions.entrySet()) {
+            Suppression suppression = entry.getValue();
+            int suppressedCount;
+            synchronized (suppression) {
+                suppressedCount = suppression.suppressedCount;
+                suppression.suppressedCount = 0;
+            }
+            logSuppressed(actionDescription, entry.getKey(), suppressedCount);
+        }
+    }
+
+    private void logSuppressed(String actionDescription, FileOMRSAuditCode auditCode, int suppressedCount) {
+        if (suppressedCount > 0) {
+            auditLog.accept(actionDescription,
+                                FileOMRSAuditCode.EVENT_MAPPER_AUDIT_MESSAGES_SUPPRESSED.getMessageDefinition(auditCode.getMessageDefinition().getMessageId(),
+                                                                                                             suppressedCount + "",
+                                                                                                             (suppressionInterval / 1000) + ""));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.eventmapper;
+
+import org.odpi.openmetadata.frameworks.connectors.ffdc.ConnectorCheckedException;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.EntityDetail;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.Relationship;
+import org.odpi.openmetadata.repositoryservices.ffdc.exception.*;
+
+import java.util.List;
+
+/**
+ * The calls the polling thread makes on the repository that holds the reference copies of the assets. The
+ * methods are those of the metadata collection, less the user id, and throw the same exceptions, so the polling
+ * thread reports them as it always has. The event mapper uses {@link CachingReferenceCopyStore}; the tests use
+ * an in-memory store so that the polling thread can be run without a server.
+ */
+interface ReferenceCopyStore {
+
+    /**
+     * @param entity entity to save as a reference copy
+     * @throws ConnectorCheckedException if the entity cannot be saved
+     */
+    void saveEntityReferenceCopy(EntityDetail entity) throws ConnectorCheckedException;
+
+    /**
+     * @param relationship relationship to save as a reference copy
+     * @throws ConnectorCheckedException if the relationship cannot be saved
+     */
+    void saveRelationshipReferenceCopy(Relationship relationship) throws ConnectorCheckedException;
+
+    /**
+     * @param guid guid of the entity
+     * @return the entity
+     */
+    EntityDetail getEntityDetail(String guid) throws InvalidParameterException,
+                                                     RepositoryErrorException,
+                                                     EntityNotKnownException,
+                                                     EntityProxyOnlyException,
+                                                     UserNotAuthorizedException;
+
+    /**
+     * @param entityGUID           guid of the entity
+     * @param relationshipTypeGUID guid of the type of the relationships wanted
+     * @return the entity's relationships of the type, or null if there are none
+     */
+    List<Relationship> getRelationshipsForEntity(String entityGUID, String relationshipTypeGUID) throws InvalidParameterException,
+                                                                                                        TypeErrorException,
+                                                                                                        RepositoryErrorException,
+                                                                                                        EntityNotKnownException,
+                                                                                                        PropertyErrorException,
+                                                                                                        PagingErrorException,
+                                                                                                        FunctionNotSupportedException,
+                                                                                                        UserNotAuthorizedException;
+
+    /**
+     * @param entityTypeGUID guid of the type of the entities wanted
+     * @param fromElement    index of the first entity of the page, in guid order
+     * @param pageSize       maximum number of entities in the page
+     * @return the page of entities, or null if there are none
+     */
+    List<EntityDetail> findEntities(String entityTypeGUID, int fromElement, int pageSize) throws InvalidParameterException,
+                                                                                                 TypeErrorException,
+                                                                                                 RepositoryErrorException,
+                                                                                                 PropertyErrorException,
+                                                                                                 PagingErrorException,
+                                                                                                 FunctionNotSupportedException,
+                                                                                                 UserNotAuthorizedException;
+
+    /**
+     * @param entity entity whose reference copy is purged
+     */
+    void purgeEntityReferenceCopy(EntityDetail entity) throws InvalidParameterException,
+                                                              RepositoryErrorException,
+                                                              EntityNotKnownException,
+                                                              HomeEntityException,
+                                                              FunctionNotSupportedException,
+                                                              UserNotAuthorizedException;
+
+    /**
+     * @param relationship relationship whose reference copy is purged
+     */
+    void purgeRelationshipReferenceCopy(Relationship relationship) throws InvalidParameterException,
+                                                                          RepositoryErrorException,
+                                                                          RelationshipNotKnownException,
+                                                                          HomeRelationshipException,
+                                                                          FunctionNotSupportedException,
+                                                                          UserNotAuthorizedException;
+}
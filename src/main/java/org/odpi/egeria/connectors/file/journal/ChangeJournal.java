@@ -0,0 +1,304 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.journal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of changes, held in segment files in a local folder. Each segment is named after the
+ * sequence number of its first record, and a new segment is started when the current one reaches the segment
+ * size, with the oldest segments deleted beyond the number kept. Records are buffered and written sequentially.
+ * They can become visible to {@link #replay(long, Consumer)} as soon as they are written, when the buffer fills or
+ * the segment is rotated, and are certain to be visible and on disk once {@link #flush()} has returned. Segments
+ * are read through read-only memory maps.
+ * <p>
+ * Each record is its length, the sequence number, the time, the change type, the version and the canonical
+ * name, followed by a CRC-32, so a record torn by a crash is found and dropped when the journal is opened.
+ * Appends are made by a single writer; replays can run on any thread.
+ */
+public class ChangeJournal implements Closeable {
+    private static final int MAGIC = 0x45474a31;
+    private static final int HEADER_SIZE = 4;
+    // sequence, timestamp, change type and version
+    private static final int FIXED_SIZE = 8 + 8 + 1 + 8;
+    private static final String SUFFIX = ".journal";
+
+    private final Path folder;
+    private final long segmentSize;
+    private final int maxSegments;
+    // first sequence number of each segment, oldest first
+    private final List<Long> segments = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(64 * 1024);
+    private FileChannel channel;
+    private long segmentPosition;
+    private long nextSequence = 1;
+
+    /**
+     * Open the journal in a folder, creating the folder if needed, and carry on from its last complete record.
+     *
+     * @param folderName  folder holding the segments
+     * @param segmentSize size in bytes at which a new segment is started
+     * @param maxSegments number of segments kept
+     * @throws IOException if the journal cannot be opened
+     */
+    public ChangeJournal(String folderName, long segmentSize, int maxSegments) throws IOException {
+        this.folder = new File(folderName).toPath();
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(1, maxSegments);
+        Files.createDirectories(folder);
+        File[] files = folder.toFile().listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                try {
+                    segments.add(Long.parseLong(file.getName().substring(0, file.getName().length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        segments.sort(null);
+        if (segments.isEmpty()) {
+            startSegment(1);
+        } else {
+            recoverLastSegment();
+        }
+    }
+
+    /**
+     * Record a change. The record is buffered until the buffer fills or the journal is flushed.
+     *
+     * @param changeType    kind of change
+     * @param canonicalName canonical name of the file
+     * @param version       version of the file's DataFile
+     * @return the sequence number of the change
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized long append(JournalRecord.ChangeType changeType, String canonicalName, long version) throws IOException {
+        byte[] name = canonicalName.getBytes(StandardCharsets.UTF_8);
+        int recordSize = 4 + FIXED_SIZE + name.length + 4;
+        if (segmentPosition + writeBuffer.position() + recordSize > segmentSize && segmentPosition + writeBuffer.position() > HEADER_SIZE) {
+            drain();
+            channel.force(false);
+            channel.close();
+            startSegment(nextSequence);
+            deleteOldSegments();
+        }
+        if (writeBuffer.remaining() < recordSize) {
+            drain();
+            if (writeBuffer.capacity() < recordSize) {
+                writeBuffer = ByteBuffer.allocateDirect(recordSize);
+            }
+        }
+        long sequence = nextSequence++;
+        int start = writeBuffer.position();
+        writeBuffer.putInt(FIXED_SIZE + name.length);
+        writeBuffer.putLong(sequence);
+        writeBuffer.putLong(System.currentTimeMillis());
+        writeBuffer.put((byte) changeType.ordinal());
+        writeBuffer.putLong(version);
+        writeBuffer.put(name);
+        ByteBuffer payload = writeBuffer.duplicate();
+        payload.position(start + 4);
+        payload.limit(writeBuffer.position());
+        crc.reset();
+        crc.update(payload);
+        writeBuffer.putInt((int) crc.getValue());
+        return sequence;
+    }
+
+    /**
+     * Write the buffered records and force them to disk, which makes them visible to replays.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        drain();
+        channel.force(false);
+    }
+
+    /**
+     * @return the sequence number of the oldest record kept; replays from before it start with it
+     */
+    public synchronized long getFirstSequence() {
+        return segments.get(0);
+    }
+
+    /**
+     * @return the sequence number of the last record appended, or 0 if there are none
+     */
+    public synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * Pass the flushed records from a sequence number onwards to a consumer, in sequence order. If the journal
+     * no longer holds the sequence number, the replay starts from its oldest record, which the consumer can
+     * detect by comparing it with {@link #getFirstSequence()}.
+     *
+     * @param fromSequence sequence number of the first record wanted
+     * @param consumer     receives the records
+     * @return the sequence number to replay from next time
+     * @throws IOException if a segment cannot be read
+     */
+    public long replay(long fromSequence, Consumer<JournalRecord> consumer) throws IOException {
+        List<Long> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(segments);
+        }
+        int first = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (snapshot.get(i) <= fromSequence) {
+                first = i;
+            }
+        }
+        long next = fromSequence;
+        for (int i = first; i < snapshot.size(); i++) {
+            MappedByteBuffer buffer;
+            try (FileChannel segment = FileChannel.open(getSegmentPath(snapshot.get(i)), StandardOpenOption.READ)) {
+                buffer = segment.map(FileChannel.MapMode.READ_ONLY, 0, segment.size());
+            } catch (NoSuchFileException e) {
+                // deleted as the journal moved on
+                continue;
+            }
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                continue;
+            }
+            CRC32 readCrc = new CRC32();
+            JournalRecord record;
+            while ((record = readRecord(buffer, readCrc)) != null) {
+                if (record.getSequence() >= next) {
+                    consumer.accept(record);
+                    next = record.getSequence() + 1;
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Flush and close the journal.
+     *
+     * @throws IOException if the buffered records cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            flush();
+            channel.close();
+        }
+    }
+
+    private void startSegment(long firstSequence) throws IOException {
+        channel = FileChannel.open(getSegmentPath(firstSequence), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        segmentPosition = HEADER_SIZE;
+        if (segments.isEmpty() || segments.get(segments.size() - 1) != firstSequence) {
+            segments.add(firstSequence);
+        }
+    }
+
+    /**
+     * Find the end of the last complete record in the newest segment, drop anything after it and carry on from it.
+     */
+    private void recoverLastSegment() throws IOException {
+        long firstSequence = segments.get(segments.size() - 1);
+        long validEnd = HEADER_SIZE;
+        nextSequence = firstSequence;
+        try (FileChannel segment = FileChannel.open(getSegmentPath(firstSequence), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = segment.map(FileChannel.MapMode.READ_ONLY, 0, segment.size());
+            if (buffer.remaining() >= HEADER_SIZE && buffer.getInt() == MAGIC) {
+                CRC32 readCrc = new CRC32();
+                JournalRecord record;
+                while ((record = readRecord(buffer, readCrc)) != null) {
+                    nextSequence = record.getSequence() + 1;
+                    validEnd = buffer.position();
+                }
+            } else {
+                // the header was never written
+                validEnd = 0;
+            }
+        }
+        if (validEnd == 0) {
+            startSegment(firstSequence);
+            return;
+        }
+        channel = FileChannel.open(getSegmentPath(firstSequence), StandardOpenOption.WRITE);
+        channel.truncate(validEnd);
+        channel.position(validEnd);
+        segmentPosition = validEnd;
+    }
+
+    /**
+     * @return the next record, or null at the end of the segment or at a torn record
+     */
+    private JournalRecord readRecord(ByteBuffer buffer, CRC32 readCrc) {
+        if (buffer.remaining() < 4) {
+            return null;
+        }
+        int start = buffer.position();
+        int length = buffer.getInt();
+        if (length < FIXED_SIZE || length > buffer.remaining() - 4) {
+            buffer.position(start);
+            return null;
+        }
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit(buffer.position() + length);
+        readCrc.reset();
+        readCrc.update(payload);
+        long sequence = buffer.getLong();
+        long timestamp = buffer.getLong();
+        int changeType = buffer.get();
+        long version = buffer.getLong();
+        byte[] name = new byte[length - FIXED_SIZE];
+        buffer.get(name);
+        if (buffer.getInt() != (int) readCrc.getValue() || changeType < 0 || changeType >= JournalRecord.ChangeType.values().length) {
+            buffer.position(start);
+            return null;
+        }
+        return new JournalRecord(sequence, timestamp, JournalRecord.ChangeType.values()[changeType], new String(name, StandardCharsets.UTF_8), version);
+    }
+
+    private void drain() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            segmentPosition += channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    private void deleteOldSegments() {
+        while (segments.size() > maxSegments) {
+            try {
+                Files.deleteIfExists(getSegmentPath(segments.get(0)));
+            } catch (IOException e) {
+                // a replay still has it open, it is retried at the next rotation
+                return;
+            }
+            segments.remove(0);
+        }
+    }
+
+    private Path getSegmentPath(long firstSequence) {
+        return folder.resolve(String.format("%020d", firstSequence) + SUFFIX);
+    }
+}
@@ -0,0 +1,70 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.journal;
+
+/**
+ * A change recorded in the {@link ChangeJournal}.
+ */
+public class JournalRecord {
+
+    /**
+     * The kind of change.
+     */
+    public enum ChangeType {
+        /**
+         * A file was catalogued for the first time.
+         */
+        CREATED,
+        /**
+         * A catalogued file changed.
+         */
+        UPDATED,
+        /**
+         * A catalogued file was deleted.
+         */
+        DELETED
+    }
+
+    private final long sequence;
+    private final long timestamp;
+    private final ChangeType changeType;
+    private final String canonicalName;
+    private final long version;
+
+    /**
+     * Constructor
+     *
+     * @param sequence      sequence number of the change, starting at 1
+     * @param timestamp     time the change was recorded in milliseconds since the epoch
+     * @param changeType    kind of change
+     * @param canonicalName canonical name of the file, from which its instances can be built
+     * @param version       version of the file's DataFile
+     */
+    public JournalRecord(long sequence, long timestamp, ChangeType changeType, String canonicalName, long version) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.changeType = changeType;
+        this.canonicalName = canonicalName;
+        this.version = version;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public ChangeType getChangeType() {
+        return changeType;
+    }
+
+    public String getCanonicalName() {
+        return canonicalName;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,7 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+
+/**
+ * An append-only journal of the changes the event mapper has sent, kept on local disk so they can be replayed.
+ */
+package org.odpi.egeria.connectors.file.journal;
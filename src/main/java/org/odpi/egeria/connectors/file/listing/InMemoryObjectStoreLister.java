@@ -0,0 +1,129 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.listing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A stand-in for an object store bucket, which lists its objects the way object stores do: the keys are flat,
+ * directories are only the common prefixes of the keys and have no last modified time, pages are capped at
+ * {@link #MAX_PAGE_SIZE} entries and the continuation token is the key to list after. It is used to try the
+ * event mapper against object store semantics without an object store.
+ * <p>
+ * The objects are either put into the bucket directly, or, when the location is a local directory, are the
+ * files under that directory, which are read again each time the top of the bucket is listed.
+ */
+public class InMemoryObjectStoreLister implements StorageLister {
+    /**
+     * Maximum number of entries in a page.
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private final String location;
+    private final File directory;
+    // size and last modified time by key
+    private volatile NavigableMap<String, long[]> objects = new ConcurrentSkipListMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param location name of the bucket, or the path of a local directory whose files are the objects
+     */
+    public InMemoryObjectStoreLister(String location) {
+        this.location = location;
+        File locationDirectory = new File(location);
+        this.directory = locationDirectory.isDirectory() ? locationDirectory : null;
+    }
+
+    /**
+     * Add an object to the bucket or replace it.
+     *
+     * @param key          key of the object, using / as the separator
+     * @param size         size of the object in bytes
+     * @param lastModified last modified time of the object in milliseconds since the epoch
+     */
+    public void putObject(String key, long size, long lastModified) {
+        objects.put(key, new long[]{size, lastModified});
+    }
+
+    /**
+     * @param key key of the object to remove from the bucket
+     */
+    public void removeObject(String key) {
+        objects.remove(key);
+    }
+
+    @Override
+    public String getLocation() {
+        return location;
+    }
+
+    @Override
+    public String getCanonicalName(String key) {
+        return location + "/" + key;
+    }
+
+    @Override
+    public ListingPage list(String prefix, String continuationToken, int maxEntries) throws IOException {
+        if (directory != null && prefix.isEmpty() && continuationToken == null) {
+            objects = readDirectory();
+        }
+        NavigableMap<String, long[]> current = objects;
+        String start = prefix.isEmpty() ? "" : prefix + "/";
+        int limit = Math.max(1, Math.min(maxEntries, MAX_PAGE_SIZE));
+        List<ListingEntry> entries = new ArrayList<>();
+        String lastListed = null;
+        Map.Entry<String, long[]> object = continuationToken == null ? current.ceilingEntry(start) : current.higherEntry(continuationToken);
+        while (object != null && object.getKey().startsWith(start)) {
+            if (entries.size() == limit) {
+                return new ListingPage(entries, lastListed);
+            }
+            String rest = object.getKey().substring(start.length());
+            int separator = rest.indexOf('/');
+            if (separator == -1) {
+                entries.add(new ListingEntry(object.getKey(), false, object.getValue()[0], object.getValue()[1]));
+                lastListed = object.getKey();
+            } else {
+                String commonPrefix = start + rest.substring(0, separator);
+                entries.add(new ListingEntry(commonPrefix, true, 0, -1));
+                // list after every key under the common prefix
+                lastListed = commonPrefix + "/" + Character.MAX_VALUE;
+            }
+            object = current.higherEntry(lastListed);
+        }
+        return new ListingPage(entries, null);
+    }
+
+    private NavigableMap<String, long[]> readDirectory() throws IOException {
+        NavigableMap<String, long[]> files = new ConcurrentSkipListMap<>();
+        Path root = directory.toPath();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile()) {
+                    String key = root.relativize(file).toString().replace(File.separatorChar, '/');
+                    files.put(key, new long[]{attributes.size(), attributes.lastModifiedTime().toMillis()});
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // removed while the directory was read
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+}
@@ -0,0 +1,51 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.listing;
+
+/**
+ * A file or directory returned by a {@link StorageLister}.
+ */
+public class ListingEntry {
+    private final String key;
+    private final boolean directory;
+    private final long size;
+    private final long lastModified;
+
+    /**
+     * Constructor
+     *
+     * @param key          path of the entry relative to the storage location, using / as the separator
+     * @param directory    whether the entry is a directory, or a common prefix in a store without directories
+     * @param size         size of a file in bytes, 0 for a directory
+     * @param lastModified last modified time in milliseconds since the epoch, or -1 if the store does not record one
+     */
+    public ListingEntry(String key, boolean directory, long size, long lastModified) {
+        this.key = key;
+        this.directory = directory;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the last segment of the key
+     */
+    public String getName() {
+        return key.substring(key.lastIndexOf('/') + 1);
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+}
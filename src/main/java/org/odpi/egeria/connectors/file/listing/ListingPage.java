@@ -0,0 +1,33 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.listing;
+
+import java.util.List;
+
+/**
+ * A page of the entries directly under a prefix.
+ */
+public class ListingPage {
+    private final List<ListingEntry> entries;
+    private final String continuationToken;
+
+    /**
+     * Constructor
+     *
+     * @param entries           the entries in the page
+     * @param continuationToken token to pass to {@link StorageLister#list(String, String, int)} for the next page,
+     *                          or null if this is the last page
+     */
+    public ListingPage(List<ListingEntry> entries, String continuationToken) {
+        this.entries = entries;
+        this.continuationToken = continuationToken;
+    }
+
+    public List<ListingEntry> getEntries() {
+        return entries;
+    }
+
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+}
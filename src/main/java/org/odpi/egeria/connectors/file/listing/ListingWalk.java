@@ -0,0 +1,172 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.listing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Walks the tree under a storage location, listing the prefixes of the directories it finds in parallel and
+ * following each prefix's continuation tokens, and streams the entries to a single consumer through a bounded
+ * queue. The listing threads wait while the queue is full, so the walk runs no faster than the consumer.
+ * Entries arrive in no particular order, and directory entries are returned as well as files.
+ */
+public class ListingWalk implements Closeable {
+    private static final ListingEntry END = new ListingEntry("", false, 0, 0);
+    private static final long POLL_MILLIS = 100;
+
+    private final StorageLister lister;
+    private final Executor executor;
+    private final int pageSize;
+    private final Predicate<ListingEntry> descend;
+    private final BooleanSupplier running;
+    private final BlockingQueue<ListingEntry> entries;
+    private final AtomicInteger pendingPrefixes = new AtomicInteger();
+    private volatile boolean closed = false;
+    private volatile IOException failure = null;
+    private boolean ended = false;
+
+    /**
+     * Start a walk from the top of the storage location.
+     *
+     * @param lister   the storage lister
+     * @param executor the listing threads; each prefix is listed by one task
+     * @param pageSize maximum number of entries to ask for in each page
+     * @param descend  whether to list a directory that has been found, called on the listing threads
+     * @param running  whether the consumer still wants the entries; the walk ends early when this is false
+     */
+    public ListingWalk(StorageLister lister, Executor executor, int pageSize, Predicate<ListingEntry> descend, BooleanSupplier running) {
+        this.lister = lister;
+        this.executor = executor;
+        this.pageSize = pageSize;
+        this.descend = descend;
+        this.running = running;
+        this.entries = new ArrayBlockingQueue<>(pageSize * 4);
+        listPrefix("");
+    }
+
+    /**
+     * Get the next entry, waiting for it to be listed.
+     *
+     * @return the next entry, or null at the end of the walk or if it was ended early
+     * @throws IOException if the storage location could not be listed
+     */
+    public ListingEntry next() throws IOException {
+        while (!ended) {
+            if (failure != null) {
+                close();
+                throw failure;
+            }
+            if (!running.getAsBoolean()) {
+                close();
+                return null;
+            }
+            ListingEntry entry;
+            try {
+                entry = entries.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                return null;
+            }
+            if (entry == END) {
+                ended = true;
+                if (failure != null) {
+                    throw failure;
+                }
+            } else if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * End the walk, stopping the listing threads at their next entry.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        ended = true;
+        // release any listing threads waiting for space
+        entries.clear();
+    }
+
+    private void listPrefix(String prefix) {
+        pendingPrefixes.incrementAndGet();
+        try {
+            executor.execute(() -> listPages(prefix));
+        } catch (RejectedExecutionException e) {
+            fail(new IOException(e));
+            finishPrefix();
+        }
+    }
+
+    private void listPages(String prefix) {
+        try {
+            String continuationToken = null;
+            do {
+                ListingPage page = lister.list(prefix, continuationToken, pageSize);
+                for (ListingEntry entry : page.getEntries()) {
+                    if (entry.isDirectory() && descend.test(entry)) {
+                        listPrefix(entry.getKey());
+                    }
+                    if (!put(entry)) {
+                        return;
+                    }
+                }
+                continuationToken = page.getContinuationToken();
+            } while (continuationToken != null && !isStopped());
+        } catch (IOException e) {
+            fail(e);
+        } catch (RuntimeException e) {
+            fail(new IOException(e));
+        } finally {
+            finishPrefix();
+        }
+    }
+
+    private boolean put(ListingEntry entry) {
+        try {
+            while (!isStopped()) {
+                if (entries.offer(entry, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(new IOException(e));
+        }
+        return false;
+    }
+
+    private void finishPrefix() {
+        if (pendingPrefixes.decrementAndGet() == 0) {
+            try {
+                while (!closed && !entries.offer(END, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    // the consumer is still taking entries
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void fail(IOException e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+
+    private boolean isStopped() {
+        return closed || failure != null;
+    }
+}
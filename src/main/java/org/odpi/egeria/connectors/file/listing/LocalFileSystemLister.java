@@ -0,0 +1,96 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.listing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lists a folder on the local file system. The entries of a directory are returned in name order, and the
+ * continuation token is the name of the last entry returned. The sorted names of a directory that needs more
+ * than one page are kept until its last page is listed, so the directory is only read once.
+ * Symbolic links to directories are left out, so that a walk cannot loop.
+ */
+public class LocalFileSystemLister implements StorageLister {
+    private final Path root;
+    private final String location;
+    // sorted names of the directories part way through being listed, by prefix
+    private final Map<String, String[]> openListings = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param folderLocation path of the folder
+     * @throws IOException if the canonical path of the folder cannot be found
+     */
+    public LocalFileSystemLister(String folderLocation) throws IOException {
+        this.location = new File(folderLocation).getCanonicalPath();
+        this.root = new File(location).toPath();
+    }
+
+    @Override
+    public String getLocation() {
+        return location;
+    }
+
+    @Override
+    public String getCanonicalName(String key) {
+        return location + File.separator + key.replace('/', File.separatorChar);
+    }
+
+    @Override
+    public ListingPage list(String prefix, String continuationToken, int maxEntries) throws IOException {
+        Path directory = prefix.isEmpty() ? root : root.resolve(prefix);
+        String[] names = continuationToken == null ? null : openListings.get(prefix);
+        if (names == null) {
+            names = directory.toFile().list();
+            if (names == null) {
+                // not a directory, or removed since it was found
+                openListings.remove(prefix);
+                return new ListingPage(new ArrayList<>(), null);
+            }
+            Arrays.sort(names);
+        }
+        int start = 0;
+        if (continuationToken != null) {
+            int index = Arrays.binarySearch(names, continuationToken);
+            start = index >= 0 ? index + 1 : -index - 1;
+        }
+        int end = (int) Math.min(names.length, (long) start + Math.max(1, maxEntries));
+
+        List<ListingEntry> entries = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            Path path = directory.resolve(names[i]);
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (IOException e) {
+                // removed since the directory was read, or a broken link
+                continue;
+            }
+            if (attributes.isDirectory() && Files.isSymbolicLink(path)) {
+                continue;
+            }
+            String key = prefix.isEmpty() ? names[i] : prefix + "/" + names[i];
+            if (attributes.isDirectory()) {
+                entries.add(new ListingEntry(key, true, 0, attributes.lastModifiedTime().toMillis()));
+            } else {
+                entries.add(new ListingEntry(key, false, attributes.size(), attributes.lastModifiedTime().toMillis()));
+            }
+        }
+        if (end < names.length) {
+            openListings.put(prefix, names);
+            return new ListingPage(entries, names[end - 1]);
+        }
+        openListings.remove(prefix);
+        return new ListingPage(entries, null);
+    }
+}
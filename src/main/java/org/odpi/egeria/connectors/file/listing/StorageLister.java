@@ -0,0 +1,39 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.listing;
+
+import java.io.IOException;
+
+/**
+ * Lists the files in a storage location, such as a local folder or an object store bucket. Each call lists one
+ * page of the entries directly under a prefix, as object stores do with a delimiter, so a tree is walked by
+ * listing the prefixes of the directories it finds. Different prefixes can be listed at the same time, so
+ * implementations must be thread safe.
+ * <p>
+ * An implementation is created by the event mapper from its class name, through a public constructor that
+ * takes the storage location from the connection's endpoint address.
+ */
+public interface StorageLister {
+
+    /**
+     * @return the storage location, which prefixes the canonical names of the entries
+     */
+    String getLocation();
+
+    /**
+     * @param key key of an entry
+     * @return the name that identifies the entry across scans, which is the storage location followed by the key
+     */
+    String getCanonicalName(String key);
+
+    /**
+     * List a page of the entries directly under a prefix.
+     *
+     * @param prefix            key of the directory to list, or the empty string for the top of the location
+     * @param continuationToken token returned with the previous page, or null for the first page
+     * @param maxEntries        maximum number of entries in the page; a store may return fewer
+     * @return the page of entries, which is empty if the prefix does not exist
+     * @throws IOException if the store cannot be listed
+     */
+    ListingPage list(String prefix, String continuationToken, int maxEntries) throws IOException;
+}
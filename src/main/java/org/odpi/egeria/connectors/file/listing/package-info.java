@@ -0,0 +1,7 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+
+/**
+ * Lists the files in a storage location a page at a time, so that stores other than a local folder can be scanned.
+ */
+package org.odpi.egeria.connectors.file.listing;
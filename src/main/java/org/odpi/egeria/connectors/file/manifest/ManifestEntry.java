@@ -0,0 +1,37 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.manifest;
+
+/**
+ * A file listed in a manifest.
+ */
+public class ManifestEntry {
+    private final String path;
+    private final long size;
+    private final long lastModified;
+
+    /**
+     * Constructor
+     *
+     * @param path         path of the file
+     * @param size         size of the file in bytes
+     * @param lastModified last modified time of the file in milliseconds since the epoch
+     */
+    public ManifestEntry(String path, long size, long lastModified) {
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+}
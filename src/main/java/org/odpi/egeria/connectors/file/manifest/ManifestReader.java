@@ -0,0 +1,218 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.manifest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams the entries of a file listing manifest, one line at a time, so that manifests of millions of files
+ * are never held in memory.
+ * <p>
+ * A manifest whose name ends in .jsonl or .json has a JSON object per line with path, size and mtime fields.
+ * Any other manifest is CSV with path, size and mtime columns, in that order unless there is a header line
+ * naming them. Paths containing commas must be quoted. The mtime is either epoch milliseconds, epoch seconds
+ * (with or without a fraction, as written by find -printf %T@) or an ISO-8601 instant.
+ * <p>
+ * Lines that cannot be parsed are skipped and counted.
+ */
+public class ManifestReader implements Closeable {
+    private static final String PATH = "path";
+    private static final String SIZE = "size";
+    private static final String MTIME = "mtime";
+    private static final String LAST_MODIFIED = "lastModified";
+    // earlier than this as epoch milliseconds is 1973, so smaller values are taken to be epoch seconds
+    private static final long SECONDS_THRESHOLD = 100000000000L;
+
+    private final BufferedReader reader;
+    private final boolean json;
+    private final long timestamp;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private int pathColumn = 0;
+    private int sizeColumn = 1;
+    private int mtimeColumn = 2;
+    private boolean firstLine = true;
+    private int invalidEntryCount = 0;
+
+    /**
+     * Constructor
+     *
+     * @param manifestFile path of the manifest
+     * @throws IOException if the manifest cannot be opened
+     */
+    public ManifestReader(String manifestFile) throws IOException {
+        File file = new File(manifestFile);
+        String name = file.getName().toLowerCase();
+        this.json = name.endsWith(".jsonl") || name.endsWith(".json");
+        this.timestamp = file.lastModified();
+        this.reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The manifest's last modified time is taken as the time of the listing, so a manifest that takes a long
+     * time to produce should have its last modified time set to when the listing started.
+     *
+     * @return time of the listing in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return number of lines skipped so far because they could not be parsed
+     */
+    public int getInvalidEntryCount() {
+        return invalidEntryCount;
+    }
+
+    /**
+     * Read the next entry.
+     *
+     * @return the next entry, or null at the end of the manifest
+     * @throws IOException if the manifest cannot be read
+     */
+    public ManifestEntry next() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            boolean isFirstLine = firstLine;
+            firstLine = false;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            ManifestEntry entry = json ? parseJson(line) : parseCsv(line, isFirstLine);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private ManifestEntry parseJson(String line) throws IOException {
+        String path = null;
+        long size = -1;
+        String mtime = null;
+        try (JsonParser parser = jsonFactory.createParser(line)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                invalidEntryCount++;
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (PATH.equals(field)) {
+                    path = parser.getValueAsString();
+                } else if (SIZE.equals(field)) {
+                    size = parser.getValueAsLong(-1);
+                } else if (MTIME.equals(field) || LAST_MODIFIED.equals(field)) {
+                    mtime = parser.getValueAsString();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (JsonProcessingException e) {
+            invalidEntryCount++;
+            return null;
+        }
+        return toEntry(path, size, mtime);
+    }
+
+    private ManifestEntry parseCsv(String line, boolean isFirstLine) {
+        List<String> columns = splitCsv(line);
+        if (isFirstLine && columns.contains(PATH)) {
+            pathColumn = columns.indexOf(PATH);
+            sizeColumn = columns.indexOf(SIZE);
+            mtimeColumn = columns.contains(MTIME) ? columns.indexOf(MTIME) : columns.indexOf(LAST_MODIFIED);
+            return null;
+        }
+        if (pathColumn >= columns.size() || sizeColumn < 0 || sizeColumn >= columns.size() || mtimeColumn < 0 || mtimeColumn >= columns.size()) {
+            invalidEntryCount++;
+            return null;
+        }
+        long size;
+        try {
+            size = Long.parseLong(columns.get(sizeColumn).trim());
+        } catch (NumberFormatException e) {
+            invalidEntryCount++;
+            return null;
+        }
+        return toEntry(columns.get(pathColumn), size, columns.get(mtimeColumn));
+    }
+
+    private ManifestEntry toEntry(String path, long size, String mtime) {
+        if (path == null || path.isEmpty() || size < 0 || mtime == null) {
+            invalidEntryCount++;
+            return null;
+        }
+        long lastModified = parseTime(mtime.trim());
+        if (lastModified < 0) {
+            invalidEntryCount++;
+            return null;
+        }
+        return new ManifestEntry(path, size, lastModified);
+    }
+
+    private long parseTime(String mtime) {
+        try {
+            if (mtime.indexOf('.') >= 0) {
+                return Math.round(Double.parseDouble(mtime) * 1000);
+            }
+            long time = Long.parseLong(mtime);
+            return time < SECONDS_THRESHOLD ? time * 1000 : time;
+        } catch (NumberFormatException e) {
+            // not a number, so try an ISO-8601 instant
+        }
+        try {
+            return Instant.parse(mtime).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private static List<String> splitCsv(String line) {
+        List<String> columns = new ArrayList<>();
+        StringBuilder column = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        column.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    column.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                columns.add(column.toString());
+                column.setLength(0);
+            } else {
+                column.append(c);
+            }
+        }
+        columns.add(column.toString());
+        return columns;
+    }
+}
@@ -0,0 +1,7 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+
+/**
+ * Reads the file listing manifests that the event mapper can bootstrap from instead of walking the folder.
+ */
+package org.odpi.egeria.connectors.file.manifest;
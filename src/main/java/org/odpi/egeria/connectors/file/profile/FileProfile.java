@@ -0,0 +1,46 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.profile;
+
+import java.util.List;
+
+/**
+ * The columns inferred for a tabular file.
+ */
+public class FileProfile {
+    private final String format;
+    private final boolean header;
+    private final List<String> columnNames;
+    private final List<String> columnTypes;
+
+    /**
+     * Constructor
+     *
+     * @param format      csv, tsv or jsonl
+     * @param header      whether the column names were read from a header line
+     * @param columnNames names of the columns, numbered from column1 when there is no header
+     * @param columnTypes types of the columns, one of string, integer, decimal, boolean, date, timestamp, object or array
+     */
+    public FileProfile(String format, boolean header, List<String> columnNames, List<String> columnTypes) {
+        this.format = format;
+        this.header = header;
+        this.columnNames = columnNames;
+        this.columnTypes = columnTypes;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public boolean hasHeader() {
+        return header;
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    public List<String> getColumnTypes() {
+        return columnTypes;
+    }
+}
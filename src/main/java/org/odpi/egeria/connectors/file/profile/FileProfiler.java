@@ -0,0 +1,288 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.profile;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Infers the columns of CSV, TSV and JSON lines files from at most the first few kilobytes, which are read
+ * into a buffer of that size, so the cost does not depend on the size of the file. Only the complete lines
+ * within the limit are used.
+ * <p>
+ * A CSV or TSV file's first line is taken as a header when none of its values looks like data, meaning a
+ * number, boolean or date. The type of a column is the narrowest of integer, decimal, boolean, date, timestamp
+ * and string that all of its non-empty values fit. A JSON lines file's columns are the top level fields of its
+ * objects, in the order they are first seen.
+ */
+public class FileProfiler {
+    private static final String STRING = "string";
+    private static final String INTEGER = "integer";
+    private static final String DECIMAL = "decimal";
+    private static final String BOOLEAN = "boolean";
+    private static final String DATE = "date";
+    private static final String TIMESTAMP = "timestamp";
+    private static final String OBJECT = "object";
+    private static final String ARRAY = "array";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private FileProfiler() {
+    }
+
+    /**
+     * @param fileName name of a file
+     * @return whether the file can be profiled
+     */
+    public static boolean isProfiled(String fileName) {
+        return getFormat(fileName) != null;
+    }
+
+    /**
+     * Infer the columns of a file.
+     *
+     * @param file     the file
+     * @param maxBytes maximum number of bytes to read from the start of the file
+     * @return the profile, or null if the file is not one that can be profiled or has no complete lines
+     * @throws IOException if the file cannot be read
+     */
+    public static FileProfile profile(File file, int maxBytes) throws IOException {
+        String format = getFormat(file.getName());
+        if (format == null) {
+            return null;
+        }
+        List<String> lines = readLines(file, maxBytes);
+        if (lines.isEmpty()) {
+            return null;
+        }
+        return "jsonl".equals(format) ? profileJson(lines) : profileDelimited(format, "tsv".equals(format) ? '\t' : ',', lines);
+    }
+
+    private static String getFormat(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return "csv";
+        } else if (name.endsWith(".tsv") || name.endsWith(".tab")) {
+            return "tsv";
+        } else if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+            return "jsonl";
+        }
+        return null;
+    }
+
+    private static List<String> readLines(File file, int maxBytes) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int length = (int) Math.min(size, maxBytes);
+            if (length == 0) {
+                return lines;
+            }
+            // read rather than mapped, as a mapped file truncated while it is read fails with an InternalError
+            byte[] bytes = new byte[length];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    // truncated since its size was taken, so what was read is the whole file
+                    break;
+                }
+            }
+            int end = buffer.position();
+            // drop the partial last line, unless the whole file was read
+            if (end == length && length < size) {
+                while (end > 0 && bytes[end - 1] != '\n') {
+                    end--;
+                }
+            }
+            String text = new String(bytes, 0, end, StandardCharsets.UTF_8);
+            // skip a byte order mark
+            if (text.startsWith("\uFEFF")) {
+                text = text.substring(1);
+            }
+            for (String line : text.split("\r?\n")) {
+                if (!line.trim().isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static FileProfile profileDelimited(String format, char delimiter, List<String> lines) {
+        List<String> first = split(lines.get(0), delimiter);
+        boolean header = lines.size() > 1;
+        for (String value : first) {
+            if (!STRING.equals(getValueType(value)) && !value.trim().isEmpty()) {
+                header = false;
+                break;
+            }
+        }
+        int columnCount = first.size();
+        List<String> columnNames = new ArrayList<>(columnCount);
+        List<String> columnTypes = new ArrayList<>(columnCount);
+        for (int column = 0; column < columnCount; column++) {
+            columnNames.add(header ? first.get(column).trim() : "column" + (column + 1));
+            columnTypes.add(null);
+        }
+        for (int row = header ? 1 : 0; row < lines.size(); row++) {
+            List<String> values = split(lines.get(row), delimiter);
+            for (int column = 0; column < Math.min(columnCount, values.size()); column++) {
+                String value = values.get(column).trim();
+                if (!value.isEmpty()) {
+                    columnTypes.set(column, widen(columnTypes.get(column), getValueType(value)));
+                }
+            }
+        }
+        for (int column = 0; column < columnCount; column++) {
+            if (columnTypes.get(column) == null) {
+                columnTypes.set(column, STRING);
+            }
+        }
+        return new FileProfile(format, header, columnNames, columnTypes);
+    }
+
+    private static FileProfile profileJson(List<String> lines) {
+        Map<String, String> columns = new LinkedHashMap<>();
+        for (String line : lines) {
+            try (JsonParser parser = JSON_FACTORY.createParser(line)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    String type = getJsonType(parser.nextToken(), parser);
+                    parser.skipChildren();
+                    if (type != null) {
+                        columns.put(name, widen(columns.get(name), type));
+                    } else {
+                        columns.putIfAbsent(name, null);
+                    }
+                }
+            } catch (IOException e) {
+                // a line cut short or not valid JSON, so profile the rest
+            }
+        }
+        if (columns.isEmpty()) {
+            return null;
+        }
+        List<String> columnTypes = new ArrayList<>();
+        for (String type : columns.values()) {
+            columnTypes.add(type == null ? STRING : type);
+        }
+        return new FileProfile("jsonl", true, new ArrayList<>(columns.keySet()), columnTypes);
+    }
+
+    private static String getJsonType(JsonToken token, JsonParser parser) throws IOException {
+        switch (token) {
+            case VALUE_NUMBER_INT:
+                return INTEGER;
+            case VALUE_NUMBER_FLOAT:
+                return DECIMAL;
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return BOOLEAN;
+            case VALUE_STRING:
+                return getValueType(parser.getText());
+            case START_OBJECT:
+                return OBJECT;
+            case START_ARRAY:
+                return ARRAY;
+            default:
+                // null says nothing about the type
+                return null;
+        }
+    }
+
+    private static String getValueType(String value) {
+        String trimmed = value.trim();
+        if (trimmed.matches("[-+]?\\d{1,18}")) {
+            return INTEGER;
+        } else if (trimmed.matches("[-+]?(\\d+\\.?\\d*|\\.\\d+)([eE][-+]?\\d+)?")) {
+            return DECIMAL;
+        } else if (trimmed.equalsIgnoreCase("true") || trimmed.equalsIgnoreCase("false")) {
+            return BOOLEAN;
+        }
+        try {
+            LocalDate.parse(trimmed);
+            return DATE;
+        } catch (DateTimeParseException e) {
+            // not a date
+        }
+        try {
+            OffsetDateTime.parse(trimmed);
+            return TIMESTAMP;
+        } catch (DateTimeParseException e) {
+            // not a timestamp with an offset
+        }
+        try {
+            LocalDateTime.parse(trimmed);
+            return TIMESTAMP;
+        } catch (DateTimeParseException e) {
+            // not a timestamp
+        }
+        return STRING;
+    }
+
+    /**
+     * @param current type seen so far, or null if none
+     * @param seen    type of another value
+     * @return the narrowest type both fit
+     */
+    private static String widen(String current, String seen) {
+        if (current == null || current.equals(seen)) {
+            return seen;
+        } else if ((INTEGER.equals(current) && DECIMAL.equals(seen)) || (DECIMAL.equals(current) && INTEGER.equals(seen))) {
+            return DECIMAL;
+        } else if ((DATE.equals(current) && TIMESTAMP.equals(seen)) || (TIMESTAMP.equals(current) && DATE.equals(seen))) {
+            return TIMESTAMP;
+        }
+        return STRING;
+    }
+
+    private static List<String> split(String line, char delimiter) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        value.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+}
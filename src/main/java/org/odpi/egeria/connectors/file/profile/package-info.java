@@ -0,0 +1,7 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+
+/**
+ * Infers the columns of tabular files from the start of the file.
+ */
+package org.odpi.egeria.connectors.file.profile;
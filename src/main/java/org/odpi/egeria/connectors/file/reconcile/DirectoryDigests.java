@@ -0,0 +1,111 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.reconcile;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merkle digests of a tree of files, used to find where two views of the same tree differ without comparing
+ * every file. Each file's digest is a hash of its path and version. Each directory holds the sum of the
+ * digests of the files directly in it and the sum over its whole subtree, so files can be added in any order,
+ * and two views with the same subtree digest for a directory hold the same files at the same versions under it.
+ * Only the directories are held, not the files.
+ */
+public class DirectoryDigests {
+    private static final int SUBTREE_DIGEST = 0;
+    private static final int FILES_DIGEST = 1;
+    private static final int FILE_COUNT = 2;
+    private static final long[] EMPTY = new long[3];
+
+    private final char separator;
+    private final Map<String, long[]> directories = new HashMap<>();
+    private final Map<String, Set<String>> childDirectories = new HashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param separator the path separator
+     */
+    public DirectoryDigests(char separator) {
+        this.separator = separator;
+    }
+
+    /**
+     * Add a file to the digests of its directory and of every directory above it.
+     *
+     * @param path    path of the file
+     * @param version version of the file
+     */
+    public void add(String path, long version) {
+        long digest = digest(path, version);
+        String directory = getDirectory(path);
+        long[] digests = directories.computeIfAbsent(directory, key -> new long[3]);
+        digests[FILES_DIGEST] += digest;
+        digests[FILE_COUNT]++;
+        digests[SUBTREE_DIGEST] += digest;
+        while (!directory.isEmpty()) {
+            String parent = getDirectory(directory);
+            childDirectories.computeIfAbsent(parent, key -> new HashSet<>()).add(directory);
+            directories.computeIfAbsent(parent, key -> new long[3])[SUBTREE_DIGEST] += digest;
+            directory = parent;
+        }
+    }
+
+    /**
+     * Find the directories whose own files differ between this view and another, only descending into the
+     * subtrees whose digests differ.
+     *
+     * @param other the other view
+     * @return the directories whose files differ
+     */
+    public Set<String> getDifferingDirectories(DirectoryDigests other) {
+        Set<String> differing = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push("");
+        while (!pending.isEmpty()) {
+            String directory = pending.pop();
+            long[] mine = directories.getOrDefault(directory, EMPTY);
+            long[] theirs = other.directories.getOrDefault(directory, EMPTY);
+            if (mine[SUBTREE_DIGEST] == theirs[SUBTREE_DIGEST] && mine[FILE_COUNT] == theirs[FILE_COUNT]) {
+                continue;
+            }
+            if (mine[FILES_DIGEST] != theirs[FILES_DIGEST] || mine[FILE_COUNT] != theirs[FILE_COUNT]) {
+                differing.add(directory);
+            }
+            Set<String> children = new HashSet<>(childDirectories.getOrDefault(directory, new HashSet<>()));
+            children.addAll(other.childDirectories.getOrDefault(directory, new HashSet<>()));
+            children.forEach(pending::push);
+        }
+        return differing;
+    }
+
+    /**
+     * @param path path of a file or directory
+     * @return the path of the directory holding it, or the empty string at the top of the tree
+     */
+    public String getDirectory(String path) {
+        int end = path.lastIndexOf(separator);
+        return end <= 0 ? "" : path.substring(0, end);
+    }
+
+    private static long digest(String path, long version) {
+        // FNV-1a over the path, then mixed with the version so that the sums do not cancel out
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < path.length(); i++) {
+            hash ^= path.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= version * 0x9e3779b97f4a7c15L;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
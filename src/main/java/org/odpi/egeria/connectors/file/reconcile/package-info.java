@@ -0,0 +1,7 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+
+/**
+ * Finds where the files the event mapper has published and the DataFiles in the repository differ.
+ */
+package org.odpi.egeria.connectors.file.reconcile;
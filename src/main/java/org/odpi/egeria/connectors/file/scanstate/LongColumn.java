@@ -0,0 +1,103 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.scanstate;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A growable column of primitive longs, held either in a heap array or in a direct (off-heap) buffer.
+ */
+abstract class LongColumn {
+
+    /**
+     * Create a column.
+     *
+     * @param offHeap  whether to hold the values in a direct buffer
+     * @param capacity initial number of values
+     * @return the column
+     */
+    static LongColumn create(boolean offHeap, int capacity) {
+        if (offHeap) {
+            return new OffHeapLongColumn(capacity);
+        }
+        return new HeapLongColumn(capacity);
+    }
+
+    /**
+     * @param index index of the value
+     * @return the value
+     */
+    abstract long get(int index);
+
+    /**
+     * @param index index of the value
+     * @param value the value
+     */
+    abstract void set(int index, long value);
+
+    /**
+     * Grow the column, keeping its values.
+     *
+     * @param capacity new number of values
+     */
+    abstract void grow(int capacity);
+
+    /**
+     * Column held in a heap array.
+     */
+    private static class HeapLongColumn extends LongColumn {
+        private long[] values;
+
+        HeapLongColumn(int capacity) {
+            values = new long[capacity];
+        }
+
+        @Override
+        long get(int index) {
+            return values[index];
+        }
+
+        @Override
+        void set(int index, long value) {
+            values[index] = value;
+        }
+
+        @Override
+        void grow(int capacity) {
+            long[] grown = new long[capacity];
+            System.arraycopy(values, 0, grown, 0, values.length);
+            values = grown;
+        }
+    }
+
+    /**
+     * Column held in a direct buffer, outside the Java heap.
+     */
+    private static class OffHeapLongColumn extends LongColumn {
+        private ByteBuffer values;
+
+        OffHeapLongColumn(int capacity) {
+            values = ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder());
+        }
+
+        @Override
+        long get(int index) {
+            return values.getLong(index * Long.BYTES);
+        }
+
+        @Override
+        void set(int index, long value) {
+            values.putLong(index * Long.BYTES, value);
+        }
+
+        @Override
+        void grow(int capacity) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder());
+            values.clear();
+            grown.put(values);
+            grown.clear();
+            values = grown;
+        }
+    }
+}
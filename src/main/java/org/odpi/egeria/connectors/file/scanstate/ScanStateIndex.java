@@ -0,0 +1,524 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.scanstate;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index of the files seen by the event mapper's scans, used to diff each scan against the previous one.
+ *
+ * Paths are held as a trie of interned path segments, so a parent directory is stored once however many
+ * files it holds, and the size, last modified time, version and hash of each file are held in primitive
+ * columns, optionally off-heap. This costs tens of bytes per file rather than the hundreds of bytes of a
+ * map keyed by full path strings.
+ *
+ * A scan is diffed by calling {@link #beginScan()}, then {@link #record(String, long, long, long)} for each
+ * file listed, then {@link #endScan()}, which removes and returns the files that were not listed.
+ * Directories can be recorded too, so that a scan can skip listing a directory that has not changed and
+ * retain the files already recorded under it instead.
+ * The index is not thread safe; it is owned by the polling thread.
+ */
+public class ScanStateIndex {
+
+    /**
+     * How a file recorded in a scan differs from the previous scan.
+     */
+    public enum Change {
+        /**
+         * The file was not in the index.
+         */
+        NEW,
+        /**
+         * The file's size, last modified time or hash has changed.
+         */
+        CHANGED,
+        /**
+         * The file is the same as in the previous scan.
+         */
+        UNCHANGED
+    }
+
+    private static final int NO_NODE = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final byte ENTRY = 1;
+    private static final byte DIRECTORY = 2;
+
+    private final boolean offHeap;
+    private final char separator;
+
+    private SegmentTable segments;
+    private int[] parents;
+    private int[] segmentIds;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int[] seenEpochs;
+    private byte[] flags;
+    private LongColumn sizes;
+    private LongColumn lastModifiedTimes;
+    private LongColumn versions;
+    private LongColumn hashes;
+    // open addressing hash table of node + 1 keyed on (parent, segment), 0 is empty
+    private int[] nodeTable;
+    private int nodeCount;
+    private int entryCount;
+    private int epoch = 0;
+
+    /**
+     * Constructor for an index of local file system paths.
+     *
+     * @param offHeap whether to hold the per-file numbers in direct buffers outside the Java heap
+     */
+    public ScanStateIndex(boolean offHeap) {
+        this(offHeap, File.separatorChar);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param offHeap   whether to hold the per-file numbers in direct buffers outside the Java heap
+     * @param separator the path separator
+     */
+    public ScanStateIndex(boolean offHeap, char separator) {
+        this.offHeap = offHeap;
+        this.separator = separator;
+        clear();
+    }
+
+    /**
+     * @return the number of files and directories in the index
+     */
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * Start a scan. Files not recorded between this call and {@link #endScan()} are treated as deleted.
+     */
+    public void beginScan() {
+        epoch++;
+    }
+
+    /**
+     * Record a file listed by the current scan.
+     *
+     * @param path         path of the file
+     * @param size         size of the file in bytes
+     * @param lastModified last modified time of the file
+     * @param hash         hash of the file, or 0 if the caller does not hash files
+     * @return how the file differs from the previous scan
+     */
+    public Change record(String path, long size, long lastModified, long hash) {
+        int node = getOrAddNode(path);
+        seenEpochs[node] = epoch;
+        if ((flags[node] & ENTRY) == 0 || (flags[node] & DIRECTORY) != 0) {
+            if ((flags[node] & ENTRY) == 0) {
+                entryCount++;
+            }
+            flags[node] = ENTRY;
+            setEntry(node, size, lastModified, 1, hash);
+            return Change.NEW;
+        }
+        if (sizes.get(node) == size && lastModifiedTimes.get(node) == lastModified && hashes.get(node) == hash) {
+            return Change.UNCHANGED;
+        }
+        setEntry(node, size, lastModified, versions.get(node) + 1, hash);
+        return Change.CHANGED;
+    }
+
+    /**
+     * Record a directory that the current scan has finished with, either by listing it or by retaining
+     * what was recorded under it.
+     *
+     * @param path         path of the directory
+     * @param lastModified last modified time of the directory
+     */
+    public void recordDirectory(String path, long lastModified) {
+        int node = getOrAddNode(path);
+        seenEpochs[node] = epoch;
+        if ((flags[node] & ENTRY) == 0) {
+            entryCount++;
+        }
+        flags[node] = ENTRY | DIRECTORY;
+        setEntry(node, 0, lastModified, 1, 0);
+    }
+
+    /**
+     * @param path path of a directory
+     * @return whether the directory was recorded by a previous scan
+     */
+    public boolean isDirectoryKnown(String path) {
+        int node = findNode(path);
+        return node != NO_NODE && flags[node] == (ENTRY | DIRECTORY);
+    }
+
+    /**
+     * A directory's last modified time changes when entries are added to, removed from or renamed in
+     * it, but not when the files in it are modified or when its subdirectories change.
+     *
+     * @param path         path of a directory
+     * @param lastModified current last modified time of the directory
+     * @return whether the directory was recorded by a previous scan with the same last modified time
+     */
+    public boolean isDirectoryUnchanged(String path, long lastModified) {
+        int node = findNode(path);
+        return node != NO_NODE && flags[node] == (ENTRY | DIRECTORY) && lastModifiedTimes.get(node) == lastModified;
+    }
+
+    /**
+     * Mark the files directly in a directory as seen by the current scan, without listing them.
+     *
+     * @param path path of the directory
+     * @return the number of files retained
+     */
+    public int retainChildren(String path) {
+        int node = findNode(path);
+        int retained = 0;
+        if (node != NO_NODE) {
+            for (int child = firstChildren[node]; child != NO_NODE; child = nextSiblings[child]) {
+                if (flags[child] == ENTRY) {
+                    seenEpochs[child] = epoch;
+                    retained++;
+                }
+            }
+        }
+        return retained;
+    }
+
+    /**
+     * Mark a directory and everything recorded under it as seen by the current scan, without listing them.
+     *
+     * @param path path of the directory
+     * @return the number of files retained
+     */
+    public int retainSubtree(String path) {
+        int node = findNode(path);
+        if (node == NO_NODE) {
+            return 0;
+        }
+        int retained = 0;
+        int[] stack = new int[16];
+        int depth = 0;
+        stack[depth++] = node;
+        while (depth > 0) {
+            int current = stack[--depth];
+            if ((flags[current] & ENTRY) != 0) {
+                seenEpochs[current] = epoch;
+                if ((flags[current] & DIRECTORY) == 0) {
+                    retained++;
+                }
+            }
+            for (int child = firstChildren[current]; child != NO_NODE; child = nextSiblings[child]) {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = child;
+            }
+        }
+        return retained;
+    }
+
+    /**
+     * @param path path of a directory
+     * @return paths of the subdirectories recorded under the directory
+     */
+    public List<String> getChildDirectories(String path) {
+        List<String> childDirectories = new ArrayList<>();
+        int node = findNode(path);
+        if (node != NO_NODE) {
+            for (int child = firstChildren[node]; child != NO_NODE; child = nextSiblings[child]) {
+                if (flags[child] == (ENTRY | DIRECTORY)) {
+                    childDirectories.add(getPath(child));
+                }
+            }
+        }
+        return childDirectories;
+    }
+
+    /**
+     * Get the version of a file, which starts at 1 and is incremented each time the file changes.
+     *
+     * @param path path of the file
+     * @return the version or 0 if the file is not in the index
+     */
+    public long getVersion(String path) {
+        int node = findNode(path);
+        if (node == NO_NODE || flags[node] != ENTRY) {
+            return 0;
+        }
+        return versions.get(node);
+    }
+
+    /**
+     * List the files in the index a page at a time, without copying the whole index. The cursor is only valid
+     * until the next {@link #endScan()}, which may compact the index.
+     *
+     * @param cursor   0 for the first page, then the cursor returned for the previous page
+     * @param maxFiles maximum number of files in the page
+     * @param paths    list the paths of the files are added to
+     * @return the cursor for the next page, or -1 if there are no more files
+     */
+    public int getFiles(int cursor, int maxFiles, List<String> paths) {
+        int added = 0;
+        for (int node = cursor; node < nodeCount; node++) {
+            if (flags[node] == ENTRY) {
+                if (added == maxFiles) {
+                    return node;
+                }
+                paths.add(getPath(node));
+                added++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Remove a file, so that it is treated as new when it is next recorded. This is used when a new file
+     * that was recorded could not be processed. The directories above it are invalidated so that the
+     * next scan lists them.
+     *
+     * @param path path of the file
+     */
+    public void remove(String path) {
+        int node = findNode(path);
+        if (node != NO_NODE && (flags[node] & ENTRY) != 0) {
+            flags[node] = 0;
+            entryCount--;
+            invalidateDirectories(parents[node]);
+        }
+    }
+
+    /**
+     * Forget what was recorded about a file, while keeping its version, so that it is found changed when it is
+     * next recorded and its version is incremented rather than restarted. This is used when a changed file
+     * that was recorded could not be processed. The directories above it are invalidated so that the next scan
+     * lists them.
+     *
+     * @param path path of the file
+     */
+    public void invalidate(String path) {
+        int node = findNode(path);
+        if (node != NO_NODE && flags[node] == ENTRY) {
+            sizes.set(node, -1);
+            invalidateDirectories(parents[node]);
+        }
+    }
+
+    /**
+     * Forget what was recorded about every file and directory, while keeping their versions, so that the next scan
+     * lists every directory and finds every file changed.
+     */
+    public void invalidate() {
+        for (int node = 0; node < nodeCount; node++) {
+            // no file has a negative size and no directory a negative last modified time
+            if ((flags[node] & DIRECTORY) != 0) {
+                lastModifiedTimes.set(node, -1);
+            } else if ((flags[node] & ENTRY) != 0) {
+                sizes.set(node, -1);
+            }
+        }
+    }
+
+    /**
+     * End the scan, removing the files and directories that were not recorded or retained since {@link #beginScan()}.
+     *
+     * @return paths of the removed files
+     */
+    public List<String> endScan() {
+        List<String> removedPaths = new ArrayList<>();
+        for (int node = 0; node < nodeCount; node++) {
+            if ((flags[node] & ENTRY) != 0 && seenEpochs[node] != epoch) {
+                if ((flags[node] & DIRECTORY) == 0) {
+                    removedPaths.add(getPath(node));
+                }
+                flags[node] = 0;
+                entryCount--;
+            }
+        }
+        // removed files leave their nodes behind, so rebuild once they are the majority
+        if (nodeCount > INITIAL_CAPACITY && entryCount < nodeCount / 4) {
+            compact();
+        }
+        return removedPaths;
+    }
+
+    private void invalidateDirectories(int node) {
+        for (; node != NO_NODE; node = parents[node]) {
+            if ((flags[node] & DIRECTORY) != 0) {
+                lastModifiedTimes.set(node, -1);
+            }
+        }
+    }
+
+    private void setEntry(int node, long size, long lastModified, long version, long hash) {
+        sizes.set(node, size);
+        lastModifiedTimes.set(node, lastModified);
+        versions.set(node, version);
+        hashes.set(node, hash);
+    }
+
+    private int getOrAddNode(String path) {
+        int node = NO_NODE;
+        int start = 0;
+        int length = path.length();
+        while (start <= length) {
+            int end = path.indexOf(separator, start);
+            if (end == -1) {
+                end = length;
+            }
+            int segmentId = segments.intern(path.substring(start, end));
+            int child = findChild(node, segmentId);
+            node = (child == NO_NODE) ? addNode(node, segmentId) : child;
+            start = end + 1;
+        }
+        return node;
+    }
+
+    private int findNode(String path) {
+        int node = NO_NODE;
+        int start = 0;
+        int length = path.length();
+        while (start <= length) {
+            int end = path.indexOf(separator, start);
+            if (end == -1) {
+                end = length;
+            }
+            int segmentId = segments.find(path.substring(start, end));
+            node = (segmentId == -1) ? NO_NODE : findChild(node, segmentId);
+            if (node == NO_NODE) {
+                return NO_NODE;
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+
+    private String getPath(int node) {
+        List<String> pathSegments = new ArrayList<>();
+        for (int current = node; current != NO_NODE; current = parents[current]) {
+            pathSegments.add(segments.get(segmentIds[current]));
+        }
+        StringBuilder path = new StringBuilder();
+        for (int i = pathSegments.size() - 1; i >= 0; i--) {
+            path.append(pathSegments.get(i));
+            if (i > 0) {
+                path.append(separator);
+            }
+        }
+        return path.toString();
+    }
+
+    private int findChild(int parent, int segmentId) {
+        int mask = nodeTable.length - 1;
+        int slot = hash(parent, segmentId) & mask;
+        while (nodeTable[slot] != 0) {
+            int node = nodeTable[slot] - 1;
+            if (parents[node] == parent && segmentIds[node] == segmentId) {
+                return node;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NO_NODE;
+    }
+
+    private int addNode(int parent, int segmentId) {
+        if (nodeCount == parents.length) {
+            int capacity = nodeCount * 2;
+            parents = Arrays.copyOf(parents, capacity);
+            segmentIds = Arrays.copyOf(segmentIds, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            seenEpochs = Arrays.copyOf(seenEpochs, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            sizes.grow(capacity);
+            lastModifiedTimes.grow(capacity);
+            versions.grow(capacity);
+            hashes.grow(capacity);
+        }
+        int node = nodeCount++;
+        parents[node] = parent;
+        segmentIds[node] = segmentId;
+        flags[node] = 0;
+        firstChildren[node] = NO_NODE;
+        nextSiblings[node] = NO_NODE;
+        if (parent != NO_NODE) {
+            nextSiblings[node] = firstChildren[parent];
+            firstChildren[parent] = node;
+        }
+        insertIntoTable(node);
+        if (nodeCount * 2 > nodeTable.length) {
+            nodeTable = new int[nodeTable.length * 2];
+            for (int existing = 0; existing < nodeCount; existing++) {
+                insertIntoTable(existing);
+            }
+        }
+        return node;
+    }
+
+    private void insertIntoTable(int node) {
+        int mask = nodeTable.length - 1;
+        int slot = hash(parents[node], segmentIds[node]) & mask;
+        while (nodeTable[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        nodeTable[slot] = node + 1;
+    }
+
+    private static int hash(int parent, int segmentId) {
+        int hash = parent * 0x9E3779B1 + segmentId;
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+
+    private void clear() {
+        segments = new SegmentTable();
+        parents = new int[INITIAL_CAPACITY];
+        segmentIds = new int[INITIAL_CAPACITY];
+        firstChildren = new int[INITIAL_CAPACITY];
+        nextSiblings = new int[INITIAL_CAPACITY];
+        seenEpochs = new int[INITIAL_CAPACITY];
+        flags = new byte[INITIAL_CAPACITY];
+        sizes = LongColumn.create(offHeap, INITIAL_CAPACITY);
+        lastModifiedTimes = LongColumn.create(offHeap, INITIAL_CAPACITY);
+        versions = LongColumn.create(offHeap, INITIAL_CAPACITY);
+        hashes = LongColumn.create(offHeap, INITIAL_CAPACITY);
+        nodeTable = new int[INITIAL_CAPACITY * 2];
+        nodeCount = 0;
+        entryCount = 0;
+    }
+
+    /**
+     * Rebuild the index with only the current files, dropping the nodes and segments of removed files.
+     */
+    private void compact() {
+        ScanStateIndex compacted = new ScanStateIndex(offHeap, separator);
+        compacted.epoch = epoch;
+        for (int node = 0; node < nodeCount; node++) {
+            if ((flags[node] & ENTRY) != 0) {
+                int compactedNode = compacted.getOrAddNode(getPath(node));
+                compacted.flags[compactedNode] = flags[node];
+                compacted.seenEpochs[compactedNode] = seenEpochs[node];
+                compacted.setEntry(compactedNode, sizes.get(node), lastModifiedTimes.get(node), versions.get(node), hashes.get(node));
+                compacted.entryCount++;
+            }
+        }
+        segments = compacted.segments;
+        parents = compacted.parents;
+        segmentIds = compacted.segmentIds;
+        firstChildren = compacted.firstChildren;
+        nextSiblings = compacted.nextSiblings;
+        seenEpochs = compacted.seenEpochs;
+        flags = compacted.flags;
+        sizes = compacted.sizes;
+        lastModifiedTimes = compacted.lastModifiedTimes;
+        versions = compacted.versions;
+        hashes = compacted.hashes;
+        nodeTable = compacted.nodeTable;
+        nodeCount = compacted.nodeCount;
+        entryCount = compacted.entryCount;
+    }
+}
@@ -0,0 +1,134 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.scanstate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns path segments. Each distinct segment is held once, as UTF-8 bytes in a shared arena,
+ * and is identified by an int, so repeated directory and partition names cost 4 bytes per use.
+ */
+class SegmentTable {
+    private byte[] arena = new byte[64 * 1024];
+    private int arenaSize = 0;
+    private int[] offsets = new int[1024];
+    private int[] lengths = new int[1024];
+    private int count = 0;
+    // open addressing hash table of segment id + 1, 0 is empty
+    private int[] table = new int[2048];
+
+    /**
+     * Get the id of a segment, adding it if it is not already known.
+     *
+     * @param segment the segment
+     * @return id of the segment
+     */
+    int intern(String segment) {
+        byte[] bytes = segment.getBytes(StandardCharsets.UTF_8);
+        int mask = table.length - 1;
+        int slot = hash(bytes) & mask;
+        while (table[slot] != 0) {
+            int id = table[slot] - 1;
+            if (matches(id, bytes)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int id = add(bytes);
+        table[slot] = id + 1;
+        if (count * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return id;
+    }
+
+    /**
+     * Get the id of a segment without adding it.
+     *
+     * @param segment the segment
+     * @return id of the segment or -1 if it is not known
+     */
+    int find(String segment) {
+        byte[] bytes = segment.getBytes(StandardCharsets.UTF_8);
+        int mask = table.length - 1;
+        int slot = hash(bytes) & mask;
+        while (table[slot] != 0) {
+            int id = table[slot] - 1;
+            if (matches(id, bytes)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @param id id of a segment
+     * @return the segment
+     */
+    String get(int id) {
+        return new String(arena, offsets[id], lengths[id], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return number of distinct segments
+     */
+    int size() {
+        return count;
+    }
+
+    private int add(byte[] bytes) {
+        if (arenaSize + bytes.length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + bytes.length));
+        }
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+            lengths = Arrays.copyOf(lengths, count * 2);
+        }
+        System.arraycopy(bytes, 0, arena, arenaSize, bytes.length);
+        offsets[count] = arenaSize;
+        lengths[count] = bytes.length;
+        arenaSize += bytes.length;
+        return count++;
+    }
+
+    private boolean matches(int id, byte[] bytes) {
+        if (lengths[id] != bytes.length) {
+            return false;
+        }
+        int offset = offsets[id];
+        for (int i = 0; i < bytes.length; i++) {
+            if (arena[offset + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < count; id++) {
+            int slot = hash(arena, offsets[id], lengths[id]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+
+    private static int hash(byte[] bytes) {
+        return hash(bytes, 0, bytes.length);
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        // FNV-1a
+        int hash = 0x811c9dc5;
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= bytes[i];
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+}
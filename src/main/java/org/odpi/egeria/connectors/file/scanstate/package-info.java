@@ -0,0 +1,7 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+
+/**
+ * Memory-compact index of the files seen by the event mapper's scans, used to find what has changed.
+ */
+package org.odpi.egeria.connectors.file.scanstate;
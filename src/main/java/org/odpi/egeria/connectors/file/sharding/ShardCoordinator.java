@@ -0,0 +1,200 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.sharding;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+
+/**
+ * Coordinates the event mapper instances that share a folder tree, so each file is owned by exactly one of them.
+ *
+ * Each instance keeps a lease file in a shared lease folder up to date by calling {@link #heartbeat()}. The
+ * instances with a lease file that has been updated within the lease timeout are the current members, and the
+ * keys (relative paths or top level folder names) are split between them by consistent hashing. When an
+ * instance joins or leaves, only the keys that hash next to it move.
+ *
+ * Lease ages are measured against this instance's own lease file, so the members' clocks do not need to agree,
+ * only the clock of the shared folder's file system.
+ *
+ * Each instance refreshes its view of the membership on its own heartbeat, so for a while after a change the
+ * instances can disagree about who owns a key. Until the membership has been stable for a lease timeout, by
+ * which time every live instance has seen the change, an instance should keep what it published for the keys it
+ * no longer owns rather than purging it, and only then hand them over by dropping its own copies without telling
+ * the cohort. Handing over this way cannot undo the new owner's events, but it narrows rather than removes the
+ * window: an instance whose heartbeats stall for longer than the lease timeout, or a membership that keeps
+ * changing, can still leave a key with two owners or none for a time, and until the new owner has scanned a key
+ * the cohort keeps whatever version the old owner last sent.
+ */
+public class ShardCoordinator {
+    private static final String LEASE_SUFFIX = ".lease";
+    private static final int VIRTUAL_NODES_PER_MEMBER = 64;
+
+    private final Path leaseFolder;
+    private final String memberName;
+    private final long leaseTimeout;
+
+    private volatile Ring ring;
+    private volatile long lastHeartbeat = 0;
+    private long membershipVersion = 0;
+    private long membershipChangeTime = 0;
+
+    /**
+     * The members and their positions on the hash ring, replaced as a whole when the membership changes.
+     */
+    private static class Ring {
+        final List<String> members;
+        final long[] positions;
+        final String[] owners;
+
+        Ring(List<String> members) {
+            this.members = Collections.unmodifiableList(new ArrayList<>(members));
+            TreeMap<Long, String> sorted = new TreeMap<>();
+            for (String member : members) {
+                for (int i = 0; i < VIRTUAL_NODES_PER_MEMBER; i++) {
+                    sorted.put(hash(member + "#" + i), member);
+                }
+            }
+            positions = new long[sorted.size()];
+            owners = new String[sorted.size()];
+            int index = 0;
+            for (Map.Entry<Long, String> entry : sorted.entrySet()) {
+                positions[index] = entry.getKey();
+                owners[index] = entry.getValue();
+                index++;
+            }
+        }
+
+        String getOwner(String key) {
+            if (positions.length == 0) {
+                return null;
+            }
+            int index = Arrays.binarySearch(positions, hash(key));
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return owners[index == positions.length ? 0 : index];
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param leaseFolder  folder shared by all the instances
+     * @param instanceId   id of this instance, unique among the instances sharing the lease folder
+     * @param leaseTimeout time in milliseconds after which an instance that has not updated its lease is no longer a member
+     * @throws IOException if the lease folder cannot be created
+     */
+    public ShardCoordinator(String leaseFolder, String instanceId, long leaseTimeout) throws IOException {
+        this.leaseFolder = Paths.get(leaseFolder);
+        this.memberName = instanceId.replaceAll("[^A-Za-z0-9._-]", "_");
+        this.leaseTimeout = leaseTimeout;
+        this.ring = new Ring(Collections.singletonList(memberName));
+        Files.createDirectories(this.leaseFolder);
+    }
+
+    /**
+     * Update this instance's lease and refresh the membership from the other leases.
+     *
+     * @return true if the membership has changed
+     * @throws IOException if the lease folder cannot be written or read
+     */
+    public synchronized boolean heartbeat() throws IOException {
+        Path lease = leaseFolder.resolve(memberName + LEASE_SUFFIX);
+        Path temporaryLease = leaseFolder.resolve(memberName + LEASE_SUFFIX + ".tmp");
+        Files.write(temporaryLease, (memberName + " " + System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8));
+        Files.move(temporaryLease, lease, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        long now = Files.getLastModifiedTime(lease).toMillis();
+
+        List<String> members = new ArrayList<>();
+        try (DirectoryStream<Path> leases = Files.newDirectoryStream(leaseFolder, "*" + LEASE_SUFFIX)) {
+            for (Path otherLease : leases) {
+                FileTime lastModified = Files.getLastModifiedTime(otherLease);
+                if (now - lastModified.toMillis() < leaseTimeout) {
+                    String fileName = otherLease.getFileName().toString();
+                    members.add(fileName.substring(0, fileName.length() - LEASE_SUFFIX.length()));
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // a lease was released while listing, it is picked up on the next heartbeat
+        }
+        Collections.sort(members);
+        lastHeartbeat = System.currentTimeMillis();
+
+        if (!members.equals(ring.members)) {
+            ring = new Ring(members);
+            membershipVersion++;
+            membershipChangeTime = lastHeartbeat;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remove this instance's lease, so the other instances take over its keys without waiting for the lease timeout.
+     *
+     * @throws IOException if the lease cannot be removed
+     */
+    public synchronized void release() throws IOException {
+        Files.deleteIfExists(leaseFolder.resolve(memberName + LEASE_SUFFIX));
+    }
+
+    /**
+     * @param key relative path or top level folder name
+     * @return whether this instance owns the key
+     */
+    public boolean owns(String key) {
+        return memberName.equals(ring.getOwner(key));
+    }
+
+    /**
+     * If this instance has not managed to update its lease within the lease timeout, the other instances will
+     * have taken over its keys, so it should not publish anything until it has.
+     *
+     * @return whether this instance's lease is current
+     */
+    public boolean isLeaseCurrent() {
+        return System.currentTimeMillis() - lastHeartbeat < leaseTimeout;
+    }
+
+    /**
+     * @return the current members, including this instance
+     */
+    public List<String> getMembers() {
+        return ring.members;
+    }
+
+    /**
+     * @return a number that changes each time the membership changes
+     */
+    public synchronized long getMembershipVersion() {
+        return membershipVersion;
+    }
+
+    /**
+     * The other instances see a membership change on their own heartbeats, so until the membership has been
+     * stable for a lease timeout they may not yet agree about who owns a key.
+     *
+     * @return whether the membership has not changed within the lease timeout
+     */
+    public synchronized boolean isMembershipStable() {
+        return System.currentTimeMillis() - membershipChangeTime >= leaseTimeout;
+    }
+
+    private static long hash(String key) {
+        // FNV-1a followed by a 64 bit finaliser to spread similar keys around the ring
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb3fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
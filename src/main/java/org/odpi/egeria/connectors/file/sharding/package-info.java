@@ -0,0 +1,7 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+
+/**
+ * Splits a folder tree between several event mapper instances, coordinated through lease files in a shared folder.
+ */
+package org.odpi.egeria.connectors.file.sharding;
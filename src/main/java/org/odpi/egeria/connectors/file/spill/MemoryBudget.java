@@ -0,0 +1,48 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.spill;
+
+/**
+ * The heap that one or more pending change queues may use between them before they spill to disk.
+ * <p>
+ * The budget is used by one thread at a time, as are its queues.
+ */
+public class MemoryBudget {
+    private final long limit;
+    private long used = 0;
+
+    /**
+     * Constructor
+     *
+     * @param limit estimated bytes of changes held on the heap, 0 for no limit
+     */
+    public MemoryBudget(long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * @return estimated bytes of changes held on the heap by the queues sharing the budget
+     */
+    public long getUsed() {
+        return used;
+    }
+
+    /**
+     * @param size estimated bytes of a change
+     * @return whether the change fits in the budget, in which case it is counted against it
+     */
+    boolean reserve(long size) {
+        if (limit > 0 && used + size > limit) {
+            return false;
+        }
+        used += size;
+        return true;
+    }
+
+    /**
+     * @param size estimated bytes of changes no longer held on the heap
+     */
+    void release(long size) {
+        used -= size;
+    }
+}
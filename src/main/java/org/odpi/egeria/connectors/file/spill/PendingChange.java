@@ -0,0 +1,74 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.spill;
+
+/**
+ * A change found by a scan whose event has not been sent yet. New and changed files are held by their DataFile
+ * guid, as the instances are read back when the event is sent; purged instances are held by their guid and type,
+ * as that is all their purge events carry.
+ */
+public class PendingChange {
+    /**
+     * The kinds of change.
+     */
+    public enum ChangeType {
+        NEW,
+        CHANGED,
+        PURGED_ENTITY,
+        PURGED_RELATIONSHIP
+    }
+
+    private final ChangeType changeType;
+    private final String guid;
+    private final String typeDefGUID;
+    private final String typeDefName;
+    private final long value;
+
+    /**
+     * Constructor
+     *
+     * @param changeType  kind of change
+     * @param guid        guid of the DataFile or purged instance
+     * @param typeDefGUID guid of the purged instance's type, or null for a new or changed file
+     * @param typeDefName name of the purged instance's type, or null for a new or changed file
+     * @param value       last modified time of a new or changed file, 0 if not known, or the version of a purged instance
+     */
+    public PendingChange(ChangeType changeType, String guid, String typeDefGUID, String typeDefName, long value) {
+        this.changeType = changeType;
+        this.guid = guid;
+        this.typeDefGUID = typeDefGUID;
+        this.typeDefName = typeDefName;
+        this.value = value;
+    }
+
+    public ChangeType getChangeType() {
+        return changeType;
+    }
+
+    public String getGUID() {
+        return guid;
+    }
+
+    public String getTypeDefGUID() {
+        return typeDefGUID;
+    }
+
+    public String getTypeDefName() {
+        return typeDefName;
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+    /**
+     * @return a rough estimate of the heap the change takes, in bytes
+     */
+    long getEstimatedSize() {
+        return 48 + getEstimatedSize(guid) + getEstimatedSize(typeDefGUID) + getEstimatedSize(typeDefName);
+    }
+
+    private static long getEstimatedSize(String value) {
+        return value == null ? 0 : 40 + value.length();
+    }
+}
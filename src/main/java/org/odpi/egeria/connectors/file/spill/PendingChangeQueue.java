@@ -0,0 +1,188 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.spill;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A first in, first out queue of pending changes that holds changes on the heap up to a memory budget and
+ * appends the rest to a spill file in a local folder. Once a change has been spilled, the changes after it are
+ * spilled too until the spill file has been drained, so the changes always come out in the order they were
+ * added. The spill file is deleted once it has been drained or the queue is cleared. Several queues can share a
+ * {@link MemoryBudget}, so changes can be kept in separate queues within one budget.
+ * <p>
+ * The queue is used by one thread at a time.
+ */
+public class PendingChangeQueue implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File spillFolder;
+    private final MemoryBudget memoryBudget;
+    private final Deque<PendingChange> changes = new ArrayDeque<>();
+    private long memoryUsed = 0;
+    private Path spillFile = null;
+    private DataOutputStream spillOutput = null;
+    private DataInputStream spillInput = null;
+    // changes written to the spill file and not read back yet
+    private long spilled = 0;
+    private long spilledSinceClear = 0;
+
+    /**
+     * Constructor
+     *
+     * @param spillFolderName folder for the spill file, created when the first change is spilled
+     * @param memoryBudget    estimated bytes of changes held on the heap before spilling, 0 for no limit
+     */
+    public PendingChangeQueue(String spillFolderName, long memoryBudget) {
+        this(spillFolderName, new MemoryBudget(memoryBudget));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param spillFolderName folder for the spill file, created when the first change is spilled
+     * @param memoryBudget    budget for the changes held on the heap, which may be shared with other queues
+     */
+    public PendingChangeQueue(String spillFolderName, MemoryBudget memoryBudget) {
+        this.spillFolder = new File(spillFolderName);
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Add a change to the end of the queue.
+     *
+     * @param change the change
+     * @throws IOException if the change cannot be spilled
+     */
+    public void add(PendingChange change) throws IOException {
+        long size = change.getEstimatedSize();
+        if (spilled == 0 && memoryBudget.reserve(size)) {
+            changes.add(change);
+            memoryUsed += size;
+            return;
+        }
+        if (spillOutput == null) {
+            Files.createDirectories(spillFolder.toPath());
+            spillFile = Files.createTempFile(spillFolder.toPath(), "pending-changes-", ".spill");
+            spillFile.toFile().deleteOnExit();
+            spillOutput = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile), BUFFER_SIZE));
+        }
+        spillOutput.writeByte(change.getChangeType().ordinal());
+        spillOutput.writeUTF(change.getGUID());
+        spillOutput.writeUTF(change.getTypeDefGUID() == null ? "" : change.getTypeDefGUID());
+        spillOutput.writeUTF(change.getTypeDefName() == null ? "" : change.getTypeDefName());
+        spillOutput.writeLong(change.getValue());
+        spilled++;
+        spilledSinceClear++;
+    }
+
+    /**
+     * Remove the change at the front of the queue.
+     *
+     * @return the change, or null if the queue is empty
+     * @throws IOException if a spilled change cannot be read
+     */
+    public PendingChange poll() throws IOException {
+        PendingChange change = changes.poll();
+        if (change != null) {
+            memoryUsed -= change.getEstimatedSize();
+            memoryBudget.release(change.getEstimatedSize());
+            return change;
+        }
+        if (spilled == 0) {
+            return null;
+        }
+        if (spillInput == null) {
+            spillInput = new DataInputStream(new BufferedInputStream(Files.newInputStream(spillFile), BUFFER_SIZE));
+        }
+        // make the changes added while draining readable
+        spillOutput.flush();
+        PendingChange.ChangeType changeType = PendingChange.ChangeType.values()[spillInput.readByte()];
+        String guid = spillInput.readUTF();
+        String typeDefGUID = spillInput.readUTF();
+        String typeDefName = spillInput.readUTF();
+        long value = spillInput.readLong();
+        spilled--;
+        if (spilled == 0) {
+            deleteSpillFile();
+        }
+        return new PendingChange(changeType,
+                                 guid,
+                                 typeDefGUID.isEmpty() ? null : typeDefGUID,
+                                 typeDefName.isEmpty() ? null : typeDefName,
+                                 value);
+    }
+
+    /**
+     * @return whether the queue is empty
+     */
+    public boolean isEmpty() {
+        return changes.isEmpty() && spilled == 0;
+    }
+
+    /**
+     * @return number of changes spilled to disk since the queue was last cleared
+     */
+    public long getSpilledCount() {
+        return spilledSinceClear;
+    }
+
+    /**
+     * @return the spill folder
+     */
+    public String getSpillFolder() {
+        return spillFolder.getPath();
+    }
+
+    /**
+     * Remove all the changes, deleting the spill file.
+     */
+    public void clear() {
+        changes.clear();
+        memoryBudget.release(memoryUsed);
+        memoryUsed = 0;
+        spilled = 0;
+        spilledSinceClear = 0;
+        deleteSpillFile();
+    }
+
+    /**
+     * Remove all the changes, deleting the spill file.
+     */
+    @Override
+    public void close() {
+        clear();
+    }
+
+    private void deleteSpillFile() {
+        if (spillFile == null) {
+            return;
+        }
+        try {
+            if (spillInput != null) {
+                spillInput.close();
+            }
+            spillOutput.close();
+        } catch (IOException e) {
+            // only being deleted
+        }
+        try {
+            Files.deleteIfExists(spillFile);
+        } catch (IOException e) {
+            // left for deleteOnExit
+        }
+        spillFile = null;
+        spillOutput = null;
+        spillInput = null;
+    }
+}
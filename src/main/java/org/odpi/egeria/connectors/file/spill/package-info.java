@@ -0,0 +1,7 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+
+/**
+ * A queue of the changes waiting for their events, kept within a memory budget by spilling the rest to local disk.
+ */
+package org.odpi.egeria.connectors.file.spill;
@@ -0,0 +1,226 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.trace;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Records sampled spans for the stages of the event mapper's pipeline and writes them to rolling files in the
+ * Trace Event Format, as complete ("X") events that can be opened in Perfetto or chrome://tracing. Files are
+ * sampled by a hash of their DataFile guid, so every stage of a sampled file is traced and the others cost a
+ * hash. The spans are buffered in memory and written when {@link #flush()} is called, so the stages never wait
+ * for the disk; spans beyond the buffer limit are dropped and counted.
+ * <p>
+ * A new file is started when the current one reaches the file size, and only the newest files are kept. Each
+ * file is a JSON array, closed when the file is rolled or the tracer is closed.
+ */
+public class PipelineTracer implements Closeable {
+    private static final String PREFIX = "pipeline-trace-";
+    private static final String SUFFIX = ".json";
+    private static final int MAX_BUFFERED_SPANS = 100000;
+
+    private final Path folder;
+    private final int sampleInterval;
+    private final long fileSize;
+    private final int maxFiles;
+    private final long pid = ProcessHandle.current().pid();
+    // converts the span times from System.nanoTime() to microseconds since the epoch
+    private final long baseMicros = System.currentTimeMillis() * 1000;
+    private final long baseNanos = System.nanoTime();
+    private final List<Long> files = new ArrayList<>();
+    private final Set<Long> namedThreads = new HashSet<>();
+    private StringBuilder buffer = new StringBuilder();
+    private int bufferedSpans = 0;
+    private long droppedSpans = 0;
+    private Writer writer;
+    private long written;
+
+    /**
+     * Constructor
+     *
+     * @param folderName     folder holding the trace files, created if needed
+     * @param sampleInterval one in this many files is traced
+     * @param fileSize       size in bytes at which a new trace file is started
+     * @param maxFiles       number of trace files kept
+     * @throws IOException if the folder cannot be created or a trace file cannot be started
+     */
+    public PipelineTracer(String folderName, int sampleInterval, long fileSize, int maxFiles) throws IOException {
+        this.folder = new File(folderName).toPath();
+        this.sampleInterval = Math.max(1, sampleInterval);
+        this.fileSize = fileSize;
+        this.maxFiles = Math.max(1, maxFiles);
+        Files.createDirectories(folder);
+        File[] existing = folder.toFile().listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (existing != null) {
+            for (File file : existing) {
+                try {
+                    files.add(Long.parseLong(file.getName().substring(PREFIX.length(), file.getName().length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        files.sort(null);
+        startFile(files.isEmpty() ? 1 : files.get(files.size() - 1) + 1);
+    }
+
+    /**
+     * @param guid guid of the DataFile
+     * @return whether the file's stages are traced
+     */
+    public boolean isSampled(String guid) {
+        return guid != null && (guid.hashCode() & 0x7fffffff) % sampleInterval == 0;
+    }
+
+    /**
+     * Record a span that started at a time from {@link System#nanoTime()} and ends now, on the current thread.
+     *
+     * @param stage      name of the stage
+     * @param startNanos start of the span from {@link System#nanoTime()}
+     * @param guid       guid of the DataFile, or null
+     * @param path       canonical path of the file or folder, or null
+     */
+    public void record(String stage, long startNanos, String guid, String path) {
+        long endNanos = System.nanoTime();
+        Thread thread = Thread.currentThread();
+        synchronized (this) {
+            if (bufferedSpans >= MAX_BUFFERED_SPANS) {
+                droppedSpans++;
+                return;
+            }
+            if (namedThreads.add(thread.getId())) {
+                appendSeparator();
+                buffer.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":").append(pid)
+                      .append(",\"tid\":").append(thread.getId())
+                      .append(",\"args\":{\"name\":");
+                appendString(thread.getName());
+                buffer.append("}}");
+            }
+            appendSeparator();
+            buffer.append("{\"name\":");
+            appendString(stage);
+            buffer.append(",\"cat\":\"pipeline\",\"ph\":\"X\",\"ts\":").append(baseMicros + (startNanos - baseNanos) / 1000)
+                  .append(",\"dur\":").append((endNanos - startNanos) / 1000)
+                  .append(",\"pid\":").append(pid)
+                  .append(",\"tid\":").append(thread.getId())
+                  .append(",\"args\":{");
+            if (guid != null) {
+                buffer.append("\"guid\":");
+                appendString(guid);
+            }
+            if (path != null) {
+                buffer.append(guid == null ? "\"path\":" : ",\"path\":");
+                appendString(path);
+            }
+            buffer.append("}}");
+            bufferedSpans++;
+        }
+    }
+
+    /**
+     * @return number of spans dropped because the buffer was full, since the tracer was created
+     */
+    public synchronized long getDroppedSpans() {
+        return droppedSpans;
+    }
+
+    /**
+     * Write the buffered spans, rolling to a new file if the current one has reached the file size.
+     *
+     * @throws IOException if the spans cannot be written; they are discarded
+     */
+    public void flush() throws IOException {
+        StringBuilder spans;
+        synchronized (this) {
+            if (bufferedSpans == 0 && buffer.length() == 0) {
+                return;
+            }
+            spans = buffer;
+            buffer = new StringBuilder(spans.capacity());
+            bufferedSpans = 0;
+        }
+        synchronized (files) {
+            if (written > fileSize) {
+                writer.write("\n]\n");
+                writer.close();
+                startFile(files.get(files.size() - 1) + 1);
+                deleteOldFiles();
+                synchronized (this) {
+                    // so that the threads are named again in the new file
+                    namedThreads.clear();
+                }
+            }
+            // every span starts with a separator, the first in a file follows the opening bracket instead
+            writer.append(spans, written == 0 ? 1 : 0, spans.length());
+            writer.flush();
+            written += spans.length();
+        }
+    }
+
+    /**
+     * Write the buffered spans and close the current trace file.
+     *
+     * @throws IOException if the spans cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            synchronized (files) {
+                writer.write("\n]\n");
+                writer.close();
+            }
+        }
+    }
+
+    private void startFile(long number) throws IOException {
+        writer = Files.newBufferedWriter(folder.resolve(String.format("%s%020d%s", PREFIX, number, SUFFIX)), StandardCharsets.UTF_8,
+                                         StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        writer.write("[\n");
+        written = 0;
+        files.add(number);
+    }
+
+    private void deleteOldFiles() {
+        while (files.size() > maxFiles) {
+            try {
+                Files.deleteIfExists(folder.resolve(String.format("%s%020d%s", PREFIX, files.get(0), SUFFIX)));
+            } catch (IOException e) {
+                // retried at the next roll
+                return;
+            }
+            files.remove(0);
+        }
+    }
+
+    private void appendSeparator() {
+        buffer.append(",\n");
+    }
+
+    private void appendString(String value) {
+        buffer.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer.append('\\').append(c);
+            } else if (c < 0x20) {
+                buffer.append(String.format("\\u%04x", (int) c));
+            } else {
+                buffer.append(c);
+            }
+        }
+        buffer.append('"');
+    }
+}
@@ -0,0 +1,7 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+
+/**
+ * Sampled tracing of the stages each file goes through in the event mapper, written to rolling local files.
+ */
+package org.odpi.egeria.connectors.file.trace;
@@ -0,0 +1,189 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the listing of zip and tar archives from their indexes.
+ */
+public class ArchiveIndexReaderTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void archivesAreRecognisedByTheirNames() {
+        assertTrue(ArchiveIndexReader.isArchive("data.zip"));
+        assertTrue(ArchiveIndexReader.isArchive("lib.JAR"));
+        assertTrue(ArchiveIndexReader.isArchive("data.tar"));
+        assertTrue(ArchiveIndexReader.isArchive("data.tar.gz"));
+        assertTrue(ArchiveIndexReader.isArchive("data.tgz"));
+        assertFalse(ArchiveIndexReader.isArchive("data.gz"));
+        assertFalse(ArchiveIndexReader.isArchive("data.csv"));
+    }
+
+    @Test
+    void zipMembersAreListedFromTheCentralDirectory() throws IOException {
+        File zip = folder.resolve("data.zip").toFile();
+        byte[] content = "a,b\n1,2\n".getBytes(StandardCharsets.UTF_8);
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip.toPath()))) {
+            out.putNextEntry(new ZipEntry("dir/"));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("dir/one.csv"));
+            out.write(content);
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("two.txt"));
+            out.closeEntry();
+            out.setComment("a comment after the central directory");
+        }
+
+        List<ArchiveMember> members = ArchiveIndexReader.readIndex(zip);
+        assertEquals(2, members.size());
+        assertEquals("dir/one.csv", members.get(0).getName());
+        assertEquals(content.length, members.get(0).getSize());
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        assertEquals(crc.getValue(), members.get(0).getCrc());
+        assertEquals("two.txt", members.get(1).getName());
+        assertEquals(0, members.get(1).getSize());
+    }
+
+    @Test
+    void tarMembersAreListedFromTheirHeaders() throws IOException {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeTarEntry(tar, "dir/", '5', new byte[0]);
+        writeTarEntry(tar, "dir/one.csv", '0', new byte[700]);
+        writeTarEntry(tar, "two.txt", '0', new byte[3]);
+        tar.write(new byte[1024]);
+
+        File plain = folder.resolve("data.tar").toFile();
+        Files.write(plain.toPath(), tar.toByteArray());
+        File compressed = folder.resolve("data.tgz").toFile();
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressed.toPath()))) {
+            out.write(tar.toByteArray());
+        }
+
+        for (File archive : new File[]{plain, compressed}) {
+            List<ArchiveMember> members = ArchiveIndexReader.readIndex(archive);
+            assertEquals(2, members.size());
+            assertEquals("dir/one.csv", members.get(0).getName());
+            assertEquals(700, members.get(0).getSize());
+            assertEquals(1600000000000L, members.get(0).getLastModified());
+            assertEquals("two.txt", members.get(1).getName());
+            assertEquals(3, members.get(1).getSize());
+        }
+    }
+
+    @Test
+    void paxHeadersOverrideTheNameAndSize() throws IOException {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        String longName = "a/very/long/path/" + "x".repeat(120) + ".csv";
+        writeTarEntry(tar, "PaxHeader", 'x', (paxRecord("path", longName) + paxRecord("size", "5")).getBytes(StandardCharsets.UTF_8));
+        writeTarEntry(tar, "short", '0', new byte[5]);
+        tar.write(new byte[1024]);
+        File archive = folder.resolve("pax.tar").toFile();
+        Files.write(archive.toPath(), tar.toByteArray());
+
+        List<ArchiveMember> members = ArchiveIndexReader.readIndex(archive);
+        assertEquals(1, members.size());
+        assertEquals(longName, members.get(0).getName());
+        assertEquals(5, members.get(0).getSize());
+    }
+
+    @Test
+    void aBadPaxSizeIsReportedAsAnIOException() throws IOException {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeTarEntry(tar, "PaxHeader", 'x', paxRecord("size", "12abc").getBytes(StandardCharsets.UTF_8));
+        writeTarEntry(tar, "file", '0', new byte[0]);
+        tar.write(new byte[1024]);
+        File archive = folder.resolve("bad.tar").toFile();
+        Files.write(archive.toPath(), tar.toByteArray());
+
+        assertThrows(IOException.class, () -> ArchiveIndexReader.readIndex(archive));
+    }
+
+    @Test
+    void aFileThatIsNotAnArchiveIsReportedAsAnIOException() throws IOException {
+        File notZip = folder.resolve("not.zip").toFile();
+        Files.write(notZip.toPath(), "just some text".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> ArchiveIndexReader.readIndex(notZip));
+
+        File notTar = folder.resolve("not.tar").toFile();
+        byte[] header = new byte[512];
+        header[0] = 'f';
+        header[124] = 'z';
+        Files.write(notTar.toPath(), header);
+        assertThrows(IOException.class, () -> ArchiveIndexReader.readIndex(notTar));
+    }
+
+    @Test
+    void aZipCutShortIsReportedAsAnIOException() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            out.putNextEntry(new ZipEntry("one.csv"));
+            out.write("a,b\n".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        byte[] zip = bytes.toByteArray();
+        // drop the end of the central directory but keep the end of central directory record that locates it
+        byte[] cut = new byte[zip.length - 40];
+        int eocd = zip.length - 22;
+        System.arraycopy(zip, 0, cut, 0, eocd - 40);
+        System.arraycopy(zip, eocd, cut, eocd - 40, 22);
+        File cutZip = folder.resolve("cut.zip").toFile();
+        Files.write(cutZip.toPath(), cut);
+
+        assertThrows(IOException.class, () -> ArchiveIndexReader.readIndex(cutZip));
+    }
+
+    private static String paxRecord(String key, String value) {
+        // the length includes itself, so find the length that does
+        String record = " " + key + "=" + value + "\n";
+        int length = record.length() + 1;
+        while ((length + record).length() != length) {
+            length++;
+        }
+        return length + record;
+    }
+
+    private static void writeTarEntry(ByteArrayOutputStream tar, String name, char type, byte[] data) {
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(100, nameBytes.length));
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 124, 12, data.length);
+        putOctal(header, 136, 12, 1600000000L);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+        header[263] = '0';
+        header[264] = '0';
+        tar.write(header, 0, header.length);
+        tar.write(data, 0, data.length);
+        tar.write(new byte[(512 - data.length % 512) % 512], 0, (512 - data.length % 512) % 512);
+    }
+
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        byte[] digits = String.format("%0" + (length - 1) + "o", value).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(digits, 0, header, offset, digits.length);
+    }
+}
@@ -0,0 +1,111 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.eventmapper;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.Test;
+import org.odpi.openmetadata.frameworks.connectors.ffdc.ConnectorCheckedException;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.EntityDetail;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.InstanceType;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.Relationship;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.typedefs.EntityDef;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.typedefs.TypeDef;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.typedefs.TypeDefSummary;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.repositoryconnector.OMRSRepositoryHelper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test that the instances of a file are copied from their type's template, without looking the types up again
+ * or allocating much beyond the instances themselves.
+ */
+public class DataFileInstanceBuilderTest {
+    private static final int FILES = 20000;
+    // the 4 entities, 3 relationships and 6 proxies of a file with their guids and properties take a few KB
+    private static final long MAX_BYTES_PER_FILE = 32 * 1024;
+
+    private final Map<String, Integer> repositoryHelperCalls = new ConcurrentHashMap<>();
+
+    @Test
+    void typesAreOnlyLookedUpToBuildTheTemplates() throws ConnectorCheckedException {
+        DataFileInstanceBuilder builder = newBuilder();
+        for (int file = 0; file < 100; file++) {
+            buildFile(builder, file);
+        }
+        // an entity template and a proxy template for each of the 4 entity types
+        assertEquals(8, (int) repositoryHelperCalls.get("getTypeDefByName"));
+        assertEquals(8, (int) repositoryHelperCalls.get("getNewInstanceType"));
+        assertEquals(3, (int) repositoryHelperCalls.get("getSkeletonRelationship"));
+    }
+
+    @Test
+    void theTemplatePathAllocatesLittlePerFile() throws ConnectorCheckedException {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+        DataFileInstanceBuilder builder = newBuilder();
+        // builds the templates and lets the compiler optimise the path
+        for (int file = 0; file < FILES; file++) {
+            buildFile(builder, file);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int file = 0; file < FILES; file++) {
+            buildFile(builder, file);
+        }
+        long bytesPerFile = (threads.getThreadAllocatedBytes(threadId) - before) / FILES;
+        assertTrue(bytesPerFile < MAX_BYTES_PER_FILE, bytesPerFile + " bytes allocated per file");
+    }
+
+    private static void buildFile(DataFileInstanceBuilder builder, int file) throws ConnectorCheckedException {
+        String baseName = "file" + file + ".csv";
+        String canonicalName = "/data/folder" + (file % 100) + "/" + baseName;
+        List<EntityDetail> entities = new ArrayList<>(4);
+        List<Relationship> relationships = new ArrayList<>(3);
+        entities.add(builder.getDataFileEntity(baseName, canonicalName, 1));
+        builder.addDerivedInstances(baseName, canonicalName, entities, relationships);
+        assertEquals(4, entities.size());
+        assertEquals(3, relationships.size());
+    }
+
+    private DataFileInstanceBuilder newBuilder() {
+        OMRSRepositoryHelper repositoryHelper = (OMRSRepositoryHelper) Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                                                             new Class<?>[]{OMRSRepositoryHelper.class},
+                                                                                             (proxy, method, args) -> invokeRepositoryHelper(method, args));
+        return new DataFileInstanceBuilder(repositoryHelper, "test", "test-collection-id", "test-collection", "test-user", "file://", 1);
+    }
+
+    /**
+     * Stands in for the repository helper methods the builder uses to build its templates.
+     */
+    private Object invokeRepositoryHelper(Method method, Object[] args) {
+        repositoryHelperCalls.merge(method.getName(), 1, Integer::sum);
+        switch (method.getName()) {
+            case "getTypeDefByName":
+                TypeDef typeDef = new EntityDef();
+                typeDef.setName((String) args[1]);
+                return typeDef;
+            case "getNewInstanceType":
+                InstanceType instanceType = new InstanceType();
+                instanceType.setTypeDefName(((TypeDefSummary) args[1]).getName());
+                return instanceType;
+            case "getSkeletonRelationship":
+                Relationship relationship = new Relationship();
+                relationship.setVersion(1);
+                return relationship;
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.eventmapper;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the token buckets limiting the events sent to the cohort.
+ */
+public class EventRateLimiterTest {
+
+    @Test
+    void noLimitNeverWaits() {
+        EventRateLimiter limiter = new EventRateLimiter(0, 0);
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(0, limiter.reserve(100));
+        }
+        assertEquals(0, limiter.getWaitTime());
+    }
+
+    @Test
+    void aBurstUpToOneSecondIsSentStraightAway() {
+        EventRateLimiter limiter = new EventRateLimiter(10, 0);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, limiter.reserve(1));
+        }
+        long wait = limiter.reserve(1);
+        assertTrue(wait > 0 && wait <= 100, "waited " + wait);
+        // the wait is rounded up to the millisecond
+        assertTrue(limiter.getWaitTime() >= wait - 1 && limiter.getWaitTime() <= wait);
+    }
+
+    @Test
+    void anEventLargerThanTheBucketIsSentOnceItsDebtIsWaitedOut() {
+        EventRateLimiter limiter = new EventRateLimiter(0, 100);
+        long wait = limiter.reserve(300);
+        assertTrue(wait > 1900 && wait <= 2000, "waited " + wait);
+        long nextWait = limiter.reserve(1);
+        assertTrue(nextWait > wait && nextWait <= 2010, "waited " + nextWait);
+    }
+
+    @Test
+    void eventsAreOnlyCountedOnceSent() {
+        EventRateLimiter limiter = new EventRateLimiter(1, 0);
+        limiter.reserve(5);
+        limiter.recordSent(5);
+        // reserved, but abandoned while waiting
+        assertTrue(limiter.reserve(3) > 0);
+        assertEquals(1, limiter.getEventCount());
+        assertEquals(5, limiter.getInstanceCount());
+    }
+
+    @Test
+    void changingTheRatesKeepsTheMetrics() {
+        EventRateLimiter limiter = new EventRateLimiter(1, 0);
+        limiter.reserve(1);
+        limiter.recordSent(1);
+        long wait = limiter.reserve(1);
+        limiter.setRates(0, 0);
+        assertEquals(0, limiter.reserve(1));
+        limiter.recordSent(1);
+        assertEquals(2, limiter.getEventCount());
+        assertTrue(limiter.getWaitTime() >= wait - 1 && limiter.getWaitTime() <= wait);
+    }
+}
@@ -0,0 +1,125 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.eventmapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Creates, changes and deletes files in a folder, chosen from a seeded random sequence so that a run can be
+ * repeated, for the polling thread to find.
+ */
+class FolderChurn {
+    private final Path folder;
+    private final Random random;
+    private final List<Path> files = new ArrayList<>();
+    private int nextFile = 0;
+    private int created = 0;
+    private int changed = 0;
+    private int deleted = 0;
+
+    /**
+     * Constructor
+     *
+     * @param folder folder the files are churned in
+     * @param seed   seed of the random choice of files to change and delete
+     */
+    FolderChurn(Path folder, long seed) {
+        this.folder = folder;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Create a number of files at once.
+     *
+     * @param count number of files to create
+     * @throws IOException if a file cannot be written
+     */
+    void burst(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            Path file = folder.resolve("churn" + nextFile++ + ".csv");
+            Files.write(file, "a,b\n1,2\n".getBytes(StandardCharsets.UTF_8));
+            files.add(file);
+            created++;
+        }
+    }
+
+    /**
+     * Create, change and delete files. A file is changed by appending a row, so its size changes even if its
+     * last modified time does not. The files changed and deleted are chosen from those that already existed.
+     *
+     * @param creates number of files to create
+     * @param changes number of files to change
+     * @param deletes number of files to delete
+     * @throws IOException if a file cannot be written or deleted
+     */
+    void step(int creates, int changes, int deletes) throws IOException {
+        int existing = files.size();
+        Set<Integer> chosen = new HashSet<>();
+        for (int i = 0; i < changes && chosen.size() < existing; i++) {
+            int index = chooseUnchosen(existing, chosen);
+            Files.write(files.get(index), (i + "," + nextFile + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            changed++;
+        }
+        List<Path> toDelete = new ArrayList<>();
+        for (int i = 0; i < deletes && chosen.size() < existing; i++) {
+            toDelete.add(files.get(chooseUnchosen(existing, chosen)));
+        }
+        for (Path file : toDelete) {
+            Files.delete(file);
+            files.remove(file);
+            deleted++;
+        }
+        burst(creates);
+    }
+
+    /**
+     * @return canonical names of the files in the folder
+     * @throws IOException if a canonical name cannot be found
+     */
+    Set<String> getCanonicalNames() throws IOException {
+        Set<String> canonicalNames = new HashSet<>();
+        for (Path file : files) {
+            canonicalNames.add(new File(file.toString()).getCanonicalPath());
+        }
+        return canonicalNames;
+    }
+
+    /**
+     * @return number of files created
+     */
+    int getCreated() {
+        return created;
+    }
+
+    /**
+     * @return number of changes made to files
+     */
+    int getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return number of files deleted
+     */
+    int getDeleted() {
+        return deleted;
+    }
+
+    private int chooseUnchosen(int existing, Set<Integer> chosen) {
+        int index = random.nextInt(existing);
+        while (!chosen.add(index)) {
+            index = random.nextInt(existing);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,101 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.eventmapper;
+
+import org.odpi.egeria.connectors.file.auditlog.FileOMRSErrorCode;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.EntityDetail;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.EntityProxy;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.Relationship;
+import org.odpi.openmetadata.repositoryservices.ffdc.exception.EntityNotKnownException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Holds the reference copies in maps, standing in for the caching repository connector's store and metadata collection.
+ */
+class InMemoryReferenceCopyStore implements ReferenceCopyStore {
+    private final Map<String, EntityDetail> entities = new ConcurrentHashMap<>();
+    private final Map<String, Relationship> relationships = new ConcurrentHashMap<>();
+
+    @Override
+    public void saveEntityReferenceCopy(EntityDetail entity) {
+        entities.put(entity.getGUID(), entity);
+    }
+
+    @Override
+    public void saveRelationshipReferenceCopy(Relationship relationship) {
+        relationships.put(relationship.getGUID(), relationship);
+    }
+
+    @Override
+    public EntityDetail getEntityDetail(String guid) throws EntityNotKnownException {
+        EntityDetail entity = entities.get(guid);
+        if (entity == null) {
+            throw new EntityNotKnownException(FileOMRSErrorCode.ENTITY_NOT_KNOWN.getMessageDefinition("test", "getEntityDetail", guid),
+                                              InMemoryReferenceCopyStore.class.getName(),
+                                              "getEntityDetail");
+        }
+        return entity;
+    }
+
+    @Override
+    public List<Relationship> getRelationshipsForEntity(String entityGUID, String relationshipTypeGUID) {
+        List<Relationship> found = new ArrayList<>();
+        for (Relationship relationship : relationships.values()) {
+            if (relationshipTypeGUID.equals(relationship.getType().getTypeDefGUID())
+                    && (isEnd(relationship.getEntityOneProxy(), entityGUID) || isEnd(relationship.getEntityTwoProxy(), entityGUID))) {
+                found.add(relationship);
+            }
+        }
+        return found.isEmpty() ? null : found;
+    }
+
+    @Override
+    public List<EntityDetail> findEntities(String entityTypeGUID, int fromElement, int pageSize) {
+        List<EntityDetail> page = entities.values()
+                                          .stream()
+                                          .filter(entity -> entityTypeGUID.equals(entity.getType().getTypeDefGUID()))
+                                          .sorted(Comparator.comparing(EntityDetail::getGUID))
+                                          .skip(fromElement)
+                                          .limit(pageSize)
+                                          .collect(Collectors.toList());
+        return page.isEmpty() ? null : page;
+    }
+
+    @Override
+    public void purgeEntityReferenceCopy(EntityDetail entity) {
+        entities.remove(entity.getGUID());
+    }
+
+    @Override
+    public void purgeRelationshipReferenceCopy(Relationship relationship) {
+        relationships.remove(relationship.getGUID());
+    }
+
+    /**
+     * @param typeDefName name of a type
+     * @return the stored entities of the type
+     */
+    List<EntityDetail> getEntities(String typeDefName) {
+        return entities.values()
+                       .stream()
+                       .filter(entity -> typeDefName.equals(entity.getType().getTypeDefName()))
+                       .collect(Collectors.toList());
+    }
+
+    /**
+     * @return number of stored relationships
+     */
+    int getRelationshipCount() {
+        return relationships.size();
+    }
+
+    private static boolean isEnd(EntityProxy proxy, String entityGUID) {
+        return proxy != null && entityGUID.equals(proxy.getGUID());
+    }
+}
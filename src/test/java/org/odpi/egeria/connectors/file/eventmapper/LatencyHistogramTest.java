@@ -0,0 +1,63 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.eventmapper;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the percentiles reported by the latency histogram.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    void anEmptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    @Test
+    void smallLatenciesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int latency = 1; latency <= 10; latency++) {
+            histogram.record(latency);
+        }
+        histogram.record(-5);
+        assertEquals(11, histogram.getCount());
+        assertEquals(10, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(0));
+        assertEquals(5, histogram.getPercentile(50));
+        assertEquals(10, histogram.getPercentile(100));
+    }
+
+    @Test
+    void largeLatenciesAreWithinTheBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long latency = 1; latency <= 100000; latency++) {
+            histogram.record(latency);
+        }
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            long expected = (long) Math.ceil(100000 * percentile / 100);
+            long reported = histogram.getPercentile(percentile);
+            assertTrue(reported >= expected && reported <= expected * 1.07, "p" + percentile + " reported as " + reported);
+        }
+        assertEquals(100000, histogram.getPercentile(100));
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+    }
+
+    @Test
+    void resetForgetsTheLatencies() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        histogram.record(3);
+        assertEquals(3, histogram.getPercentile(50));
+    }
+}
@@ -0,0 +1,65 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.eventmapper;
+
+/**
+ * The event latency percentiles an event mapper reports, taken at one moment so that they are consistent with
+ * each other, and written out with the assertions that check them.
+ */
+class LatencyReport {
+    private final long p50;
+    private final long p99;
+    private final long max;
+    private final long eventsSent;
+
+    private LatencyReport(long p50, long p99, long max, long eventsSent) {
+        this.p50 = p50;
+        this.p99 = p99;
+        this.max = max;
+        this.eventsSent = eventsSent;
+    }
+
+    /**
+     * @param eventMapper event mapper whose latencies are reported
+     * @return the report of the latencies since the event mapper started
+     */
+    static LatencyReport of(FileOMRSRepositoryEventMapper eventMapper) {
+        return new LatencyReport(eventMapper.getEventLatencyPercentile(50),
+                                 eventMapper.getEventLatencyPercentile(99),
+                                 eventMapper.getEventLatencyPercentile(100),
+                                 eventMapper.getEventsSent());
+    }
+
+    /**
+     * @return median latency in milliseconds
+     */
+    long getP50() {
+        return p50;
+    }
+
+    /**
+     * @return 99th percentile latency in milliseconds
+     */
+    long getP99() {
+        return p99;
+    }
+
+    /**
+     * @return longest latency in milliseconds
+     */
+    long getMax() {
+        return max;
+    }
+
+    /**
+     * @return number of events sent
+     */
+    long getEventsSent() {
+        return eventsSent;
+    }
+
+    @Override
+    public String toString() {
+        return "event latency p50 " + p50 + "ms, p99 " + p99 + "ms, max " + max + "ms over " + eventsSent + " events";
+    }
+}
@@ -0,0 +1,168 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.eventmapper;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.odpi.egeria.connectors.file.auditlog.FileOMRSAuditCode;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.EntityDetail;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.EntityProxy;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.InstanceType;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.Relationship;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.typedefs.EntityDef;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.typedefs.TypeDef;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.typedefs.TypeDefSummary;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.repositoryconnector.OMRSRepositoryHelper;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drive the polling thread against a folder whose files are being created, changed and deleted, and check the
+ * event latency it reports and the events it sends.
+ */
+public class PollingThreadLatencyTest {
+    private static final int REFRESH_INTERVAL_SECONDS = 1;
+    private static final long REFRESH_INTERVAL = REFRESH_INTERVAL_SECONDS * 1000L;
+    private static final int ROUNDS = 6;
+    // a change waits at most a refresh interval for the next scan, then for the scan and the sends before it
+    private static final long MAX_P99_LATENCY = 3 * REFRESH_INTERVAL;
+    private static final long QUIET_TIMEOUT = 30 * REFRESH_INTERVAL;
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void theReportedLatencyIsWithinTheRefreshIntervalUnderChurn() throws Exception {
+        InMemoryReferenceCopyStore referenceCopyStore = new InMemoryReferenceCopyStore();
+        RecordingEventSender eventSender = new RecordingEventSender();
+        List<String> auditMessageIds = new CopyOnWriteArrayList<>();
+        Map<String, Object> configurationProperties = new HashMap<>();
+        configurationProperties.put(FileOMRSRepositoryEventMapperProvider.REFRESH_TIME_INTERVAL, REFRESH_INTERVAL_SECONDS);
+
+        FolderChurn churn = new FolderChurn(folder, 42);
+        churn.burst(20);
+        FileOMRSRepositoryEventMapper eventMapper = new FileOMRSRepositoryEventMapper();
+        eventMapper.startPolling(folder.toString(),
+                                 configurationProperties,
+                                 newRepositoryHelper(),
+                                 "test-server",
+                                 "test-collection-id",
+                                 referenceCopyStore,
+                                 eventSender,
+                                 (actionDescription, message) -> auditMessageIds.add(message.getMessageId()));
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                Thread.sleep(REFRESH_INTERVAL / 2 + round * REFRESH_INTERVAL / ROUNDS);
+                if (round == ROUNDS / 2) {
+                    churn.burst(30);
+                } else {
+                    churn.step(3, 4, 2);
+                }
+            }
+            awaitQuiet(eventMapper, referenceCopyStore, churn);
+        } finally {
+            eventMapper.stopPolling("test");
+        }
+
+        LatencyReport report = LatencyReport.of(eventMapper);
+        assertTrue(report.getP50() > 0, report.toString());
+        assertTrue(report.getP50() <= report.getP99(), report.toString());
+        assertTrue(report.getP99() <= report.getMax(), report.toString());
+        assertTrue(report.getP99() <= MAX_P99_LATENCY, report.toString());
+
+        // every file's DataFile is stored, along with its connection, connector type and endpoint
+        DataFileInstanceBuilder dataFileInstanceBuilder = newDataFileInstanceBuilder();
+        Set<String> storedCanonicalNames = new HashSet<>();
+        List<EntityDetail> dataFiles = referenceCopyStore.getEntities(DataFileInstanceBuilder.DATA_FILE);
+        for (EntityDetail dataFile : dataFiles) {
+            storedCanonicalNames.add(dataFileInstanceBuilder.decodeGUID(dataFile.getGUID()));
+        }
+        assertEquals(churn.getCanonicalNames(), storedCanonicalNames);
+        assertEquals(dataFiles.size(), referenceCopyStore.getEntities(DataFileInstanceBuilder.CONNECTION).size());
+        assertEquals(3 * dataFiles.size(), referenceCopyStore.getRelationshipCount());
+
+        // each file was sent when it was created and each time it was seen to change, and purged if it was seen before it was deleted
+        int sentDataFiles = eventSender.getSentEntityCount(DataFileInstanceBuilder.DATA_FILE);
+        assertTrue(sentDataFiles >= churn.getCreated() - churn.getDeleted(), report.toString());
+        assertTrue(sentDataFiles <= churn.getCreated() + churn.getChanged(), report.toString());
+        assertTrue(eventSender.getPurgedEntityGUIDs().size() <= 4 * churn.getDeleted());
+        assertEquals(eventSender.getBatchEventCount(), report.getEventsSent() - eventSender.getPurgedEntityGUIDs().size()
+                - eventSender.getPurgedRelationshipGUIDs().size());
+        assertFalse(auditMessageIds.contains(FileOMRSAuditCode.EVENT_MAPPER_POLL_LOOP_GOT_AN_EXCEPTION.getMessageDefinition().getMessageId()));
+    }
+
+    /**
+     * Wait until the stored DataFiles match the files in the folder and no event has been sent for a refresh interval.
+     */
+    private static void awaitQuiet(FileOMRSRepositoryEventMapper eventMapper,
+                                   InMemoryReferenceCopyStore referenceCopyStore,
+                                   FolderChurn churn) throws InterruptedException, IOException {
+        long deadline = System.currentTimeMillis() + QUIET_TIMEOUT;
+        long eventsSent = -1;
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(REFRESH_INTERVAL * 3 / 2);
+            long sent = eventMapper.getEventsSent();
+            if (sent == eventsSent && referenceCopyStore.getEntities(DataFileInstanceBuilder.DATA_FILE).size() == churn.getCanonicalNames().size()) {
+                return;
+            }
+            eventsSent = sent;
+        }
+    }
+
+    private DataFileInstanceBuilder newDataFileInstanceBuilder() {
+        return new DataFileInstanceBuilder(newRepositoryHelper(), "test", "test-collection-id", "test-collection", "test-user", "", 1);
+    }
+
+    private OMRSRepositoryHelper newRepositoryHelper() {
+        return (OMRSRepositoryHelper) Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                             new Class<?>[]{OMRSRepositoryHelper.class},
+                                                             (proxy, method, args) -> invokeRepositoryHelper(method, args));
+    }
+
+    /**
+     * Stands in for the repository helper methods the polling thread and the instance builder use, with a type's
+     * guid derived from its name.
+     */
+    private static Object invokeRepositoryHelper(Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getTypeDefByName":
+                TypeDef typeDef = new EntityDef();
+                typeDef.setName((String) args[1]);
+                typeDef.setGUID("type-" + args[1]);
+                return typeDef;
+            case "getNewInstanceType":
+                return newInstanceType(((TypeDefSummary) args[1]).getName());
+            case "getSkeletonRelationship":
+                Relationship relationship = new Relationship();
+                relationship.setType(newInstanceType((String) args[4]));
+                relationship.setVersion(1);
+                return relationship;
+            case "getOtherEnd":
+                Relationship ends = (Relationship) args[2];
+                EntityProxy entityOne = ends.getEntityOneProxy();
+                return args[1].equals(entityOne.getGUID()) ? ends.getEntityTwoProxy() : entityOne;
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    private static InstanceType newInstanceType(String typeName) {
+        InstanceType instanceType = new InstanceType();
+        instanceType.setTypeDefName(typeName);
+        instanceType.setTypeDefGUID("type-" + typeName);
+        return instanceType;
+    }
+}
@@ -0,0 +1,70 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.eventmapper;
+
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.EntityDetail;
+import org.odpi.openmetadata.repositoryservices.connectors.stores.metadatacollectionstore.properties.instances.InstanceGraph;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Records the events the polling thread sends, standing in for the repository event processor.
+ */
+class RecordingEventSender implements InstanceEventSender {
+    private final List<InstanceGraph> batchEvents = new CopyOnWriteArrayList<>();
+    private final List<String> purgedEntityGUIDs = new CopyOnWriteArrayList<>();
+    private final List<String> purgedRelationshipGUIDs = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void sendInstanceBatchEvent(InstanceGraph instances) {
+        batchEvents.add(instances);
+    }
+
+    @Override
+    public void sendPurgedEntityEvent(String typeDefGUID, String typeDefName, String guid) {
+        purgedEntityGUIDs.add(guid);
+    }
+
+    @Override
+    public void sendPurgedRelationshipEvent(String typeDefGUID, String typeDefName, String guid) {
+        purgedRelationshipGUIDs.add(guid);
+    }
+
+    /**
+     * @return number of batch events sent
+     */
+    int getBatchEventCount() {
+        return batchEvents.size();
+    }
+
+    /**
+     * @param typeDefName name of a type
+     * @return number of entities of the type sent in batch events
+     */
+    int getSentEntityCount(String typeDefName) {
+        int count = 0;
+        for (InstanceGraph instances : batchEvents) {
+            for (EntityDetail entity : instances.getEntities()) {
+                if (typeDefName.equals(entity.getType().getTypeDefName())) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return guids of the purged entities, in the order they were sent
+     */
+    List<String> getPurgedEntityGUIDs() {
+        return purgedEntityGUIDs;
+    }
+
+    /**
+     * @return guids of the purged relationships, in the order they were sent
+     */
+    List<String> getPurgedRelationshipGUIDs() {
+        return purgedRelationshipGUIDs;
+    }
+}
@@ -0,0 +1,115 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test appending to, replaying and recovering the change journal.
+ */
+public class ChangeJournalTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void flushedRecordsAreReplayedInOrder() throws IOException {
+        try (ChangeJournal journal = new ChangeJournal(folder.toString(), 1024 * 1024, 4)) {
+            assertEquals(0, journal.getLastSequence());
+            assertEquals(1, journal.append(JournalRecord.ChangeType.CREATED, "/data/a.csv", 1));
+            assertEquals(2, journal.append(JournalRecord.ChangeType.UPDATED, "/data/a.csv", 2));
+            assertEquals(3, journal.append(JournalRecord.ChangeType.DELETED, "/data/\u00e9t\u00e9.csv", 1));
+            journal.flush();
+
+            List<JournalRecord> records = new ArrayList<>();
+            assertEquals(4, journal.replay(1, records::add));
+            assertEquals(3, records.size());
+            assertEquals(JournalRecord.ChangeType.CREATED, records.get(0).getChangeType());
+            assertEquals("/data/a.csv", records.get(0).getCanonicalName());
+            assertEquals(2, records.get(1).getVersion());
+            assertEquals("/data/\u00e9t\u00e9.csv", records.get(2).getCanonicalName());
+
+            records.clear();
+            assertEquals(4, journal.replay(3, records::add));
+            assertEquals(1, records.size());
+            assertEquals(3, records.get(0).getSequence());
+        }
+    }
+
+    @Test
+    void aReopenedJournalCarriesOnFromItsLastRecord() throws IOException {
+        try (ChangeJournal journal = new ChangeJournal(folder.toString(), 1024 * 1024, 4)) {
+            journal.append(JournalRecord.ChangeType.CREATED, "/data/a.csv", 1);
+            journal.append(JournalRecord.ChangeType.CREATED, "/data/b.csv", 1);
+        }
+        try (ChangeJournal journal = new ChangeJournal(folder.toString(), 1024 * 1024, 4)) {
+            assertEquals(2, journal.getLastSequence());
+            assertEquals(3, journal.append(JournalRecord.ChangeType.DELETED, "/data/a.csv", 1));
+            journal.flush();
+            assertEquals(Arrays.asList(1L, 2L, 3L), replaySequences(journal, 0));
+        }
+    }
+
+    @Test
+    void onlyTheNewestSegmentsAreKept() throws IOException {
+        try (ChangeJournal journal = new ChangeJournal(folder.toString(), 256, 3)) {
+            for (int i = 0; i < 100; i++) {
+                journal.append(JournalRecord.ChangeType.UPDATED, "/data/file" + i + ".csv", i);
+            }
+            journal.flush();
+            assertEquals(3, segmentFiles().length);
+            assertTrue(journal.getFirstSequence() > 1);
+
+            // a replay from before the oldest record starts with it
+            List<Long> sequences = replaySequences(journal, 1);
+            assertEquals(journal.getFirstSequence(), (long) sequences.get(0));
+            assertEquals(100L, (long) sequences.get(sequences.size() - 1));
+            assertEquals(100 - journal.getFirstSequence() + 1, sequences.size());
+        }
+    }
+
+    @Test
+    void aTornRecordIsDroppedWhenTheJournalIsOpened() throws IOException {
+        try (ChangeJournal journal = new ChangeJournal(folder.toString(), 1024 * 1024, 4)) {
+            journal.append(JournalRecord.ChangeType.CREATED, "/data/a.csv", 1);
+            journal.append(JournalRecord.ChangeType.CREATED, "/data/b.csv", 1);
+        }
+        File segment = segmentFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        try (ChangeJournal journal = new ChangeJournal(folder.toString(), 1024 * 1024, 4)) {
+            assertEquals(1, journal.getLastSequence());
+            assertEquals(2, journal.append(JournalRecord.ChangeType.CREATED, "/data/c.csv", 1));
+            journal.flush();
+            List<JournalRecord> records = new ArrayList<>();
+            journal.replay(1, records::add);
+            assertEquals(2, records.size());
+            assertEquals("/data/c.csv", records.get(1).getCanonicalName());
+        }
+    }
+
+    private List<Long> replaySequences(ChangeJournal journal, long fromSequence) throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        journal.replay(fromSequence, record -> sequences.add(record.getSequence()));
+        return sequences;
+    }
+
+    private File[] segmentFiles() {
+        File[] segments = folder.toFile().listFiles((dir, name) -> name.endsWith(".journal"));
+        Arrays.sort(segments);
+        return segments;
+    }
+}
@@ -0,0 +1,212 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.scanstate;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the diffing of scans by the scan state index, on and off the heap.
+ */
+public class ScanStateIndexTest {
+
+    @Test
+    void recordFindsNewChangedAndUnchangedFiles() {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            ScanStateIndex index = new ScanStateIndex(offHeap, '/');
+            index.beginScan();
+            assertEquals(ScanStateIndex.Change.NEW, index.record("/data/a.csv", 10, 1000, 0));
+            assertEquals(1, index.getVersion("/data/a.csv"));
+            index.endScan();
+
+            index.beginScan();
+            assertEquals(ScanStateIndex.Change.UNCHANGED, index.record("/data/a.csv", 10, 1000, 0));
+            index.endScan();
+
+            index.beginScan();
+            assertEquals(ScanStateIndex.Change.CHANGED, index.record("/data/a.csv", 12, 1000, 0));
+            assertEquals(2, index.getVersion("/data/a.csv"));
+            assertEquals(ScanStateIndex.Change.CHANGED, index.record("/data/a.csv", 12, 1000, 7));
+            assertEquals(3, index.getVersion("/data/a.csv"));
+            index.endScan();
+        }
+    }
+
+    @Test
+    void endScanRemovesTheFilesNotRecorded() {
+        ScanStateIndex index = new ScanStateIndex(false, '/');
+        index.beginScan();
+        index.record("/data/a.csv", 1, 1, 0);
+        index.record("/data/b.csv", 1, 1, 0);
+        index.record("/data/sub/c.csv", 1, 1, 0);
+        assertEquals(Collections.emptyList(), index.endScan());
+
+        index.beginScan();
+        index.record("/data/a.csv", 1, 1, 0);
+        List<String> removed = index.endScan();
+        Collections.sort(removed);
+        assertEquals(Arrays.asList("/data/b.csv", "/data/sub/c.csv"), removed);
+        assertEquals(0, index.getVersion("/data/b.csv"));
+
+        index.beginScan();
+        assertEquals(ScanStateIndex.Change.NEW, index.record("/data/b.csv", 1, 1, 0));
+        index.endScan();
+    }
+
+    @Test
+    void unchangedDirectoriesAreRetainedWithoutListing() {
+        ScanStateIndex index = new ScanStateIndex(false, '/');
+        index.beginScan();
+        index.record("/data/sub/a.csv", 1, 1, 0);
+        index.record("/data/sub/deeper/b.csv", 1, 1, 0);
+        index.recordDirectory("/data/sub/deeper", 50);
+        index.recordDirectory("/data/sub", 100);
+        index.endScan();
+
+        assertTrue(index.isDirectoryKnown("/data/sub"));
+        assertTrue(index.isDirectoryUnchanged("/data/sub", 100));
+        assertFalse(index.isDirectoryUnchanged("/data/sub", 101));
+        assertFalse(index.isDirectoryKnown("/data/other"));
+        assertEquals(Collections.singletonList("/data/sub/deeper"), index.getChildDirectories("/data/sub"));
+
+        index.beginScan();
+        assertEquals(1, index.retainChildren("/data/sub"));
+        assertEquals(Collections.singletonList("/data/sub/deeper/b.csv"), index.endScan());
+
+        index.beginScan();
+        index.record("/data/sub/a.csv", 1, 1, 0);
+        index.record("/data/sub/deeper/b.csv", 1, 1, 0);
+        index.endScan();
+        index.beginScan();
+        assertEquals(2, index.retainSubtree("/data/sub"));
+        assertEquals(Collections.emptyList(), index.endScan());
+    }
+
+    @Test
+    void invalidateFindsEveryFileChangedAndKeepsTheVersions() {
+        ScanStateIndex index = new ScanStateIndex(true, '/');
+        index.beginScan();
+        index.record("/data/a.csv", 1, 1, 0);
+        index.recordDirectory("/data", 5);
+        index.endScan();
+
+        index.invalidate();
+        assertFalse(index.isDirectoryUnchanged("/data", 5));
+        index.beginScan();
+        assertEquals(ScanStateIndex.Change.CHANGED, index.record("/data/a.csv", 1, 1, 0));
+        assertEquals(2, index.getVersion("/data/a.csv"));
+        index.endScan();
+    }
+
+    @Test
+    void removedFilesAreFoundAgain() {
+        ScanStateIndex index = new ScanStateIndex(false, '/');
+        index.beginScan();
+        index.record("/data/a.csv", 1, 1, 0);
+        index.endScan();
+        index.remove("/data/a.csv");
+        assertEquals(0, index.getVersion("/data/a.csv"));
+
+        index.beginScan();
+        assertEquals(ScanStateIndex.Change.NEW, index.record("/data/a.csv", 1, 1, 0));
+        assertEquals(Collections.emptyList(), index.endScan());
+    }
+
+    @Test
+    void invalidatedFilesAreFoundChangedWithTheirVersionsKept() {
+        ScanStateIndex index = new ScanStateIndex(false, '/');
+        index.beginScan();
+        index.record("/data/sub/a.csv", 1, 1, 0);
+        index.record("/data/sub/b.csv", 1, 1, 0);
+        index.recordDirectory("/data/sub", 5);
+        index.recordDirectory("/data", 5);
+        index.endScan();
+        index.beginScan();
+        index.record("/data/sub/a.csv", 2, 2, 0);
+        index.record("/data/sub/b.csv", 1, 1, 0);
+        index.recordDirectory("/data/sub", 5);
+        index.recordDirectory("/data", 5);
+        index.endScan();
+        assertEquals(2, index.getVersion("/data/sub/a.csv"));
+
+        index.invalidate("/data/sub/a.csv");
+        assertEquals(2, index.getVersion("/data/sub/a.csv"));
+        assertFalse(index.isDirectoryUnchanged("/data/sub", 5));
+        assertFalse(index.isDirectoryUnchanged("/data", 5));
+
+        index.beginScan();
+        assertEquals(ScanStateIndex.Change.CHANGED, index.record("/data/sub/a.csv", 2, 2, 0));
+        assertEquals(3, index.getVersion("/data/sub/a.csv"));
+        assertEquals(ScanStateIndex.Change.UNCHANGED, index.record("/data/sub/b.csv", 1, 1, 0));
+        assertEquals(Collections.emptyList(), index.endScan());
+    }
+
+    @Test
+    void removedFilesHaveTheirDirectoriesListedAgain() {
+        ScanStateIndex index = new ScanStateIndex(true, '/');
+        index.beginScan();
+        index.record("/data/a.csv", 1, 1, 0);
+        index.recordDirectory("/data", 5);
+        index.endScan();
+        assertTrue(index.isDirectoryUnchanged("/data", 5));
+
+        index.remove("/data/a.csv");
+        assertFalse(index.isDirectoryUnchanged("/data", 5));
+    }
+
+    @Test
+    void filesAreListedAPageAtATime() {
+        ScanStateIndex index = new ScanStateIndex(false, '/');
+        index.beginScan();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            String path = "/data/folder" + (i % 3) + "/file" + i;
+            index.record(path, i, i, 0);
+            expected.add(path);
+        }
+        index.recordDirectory("/data/folder0", 1);
+        index.endScan();
+
+        List<String> paths = new ArrayList<>();
+        int cursor = 0;
+        int pages = 0;
+        while (cursor != -1) {
+            int before = paths.size();
+            cursor = index.getFiles(cursor, 10, paths);
+            assertTrue(paths.size() - before <= 10);
+            pages++;
+        }
+        assertEquals(3, pages);
+        Collections.sort(paths);
+        Collections.sort(expected);
+        assertEquals(expected, paths);
+    }
+
+    @Test
+    void compactionKeepsTheFilesThatRemain() {
+        ScanStateIndex index = new ScanStateIndex(false, '/');
+        index.beginScan();
+        for (int i = 0; i < 5000; i++) {
+            index.record("/data/file" + i, i, i, 0);
+        }
+        index.endScan();
+
+        index.beginScan();
+        for (int i = 0; i < 5000; i += 10) {
+            assertEquals(ScanStateIndex.Change.UNCHANGED, index.record("/data/file" + i, i, i, 0));
+        }
+        assertEquals(4500, index.endScan().size());
+
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i % 10 == 0 ? 1 : 0, index.getVersion("/data/file" + i));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.sharding;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the split of keys between instances sharing a lease folder.
+ */
+public class ShardCoordinatorTest {
+
+    @TempDir
+    Path leaseFolder;
+
+    @Test
+    void aSingleInstanceOwnsEveryKey() throws IOException {
+        ShardCoordinator coordinator = new ShardCoordinator(leaseFolder.toString(), "only", 60000);
+        assertFalse(coordinator.heartbeat());
+        assertEquals(Collections.singletonList("only"), coordinator.getMembers());
+        assertTrue(coordinator.isLeaseCurrent());
+        assertTrue(coordinator.isMembershipStable());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(coordinator.owns("folder" + i));
+        }
+    }
+
+    @Test
+    void eachKeyIsOwnedByExactlyOneMember() throws IOException {
+        ShardCoordinator first = new ShardCoordinator(leaseFolder.toString(), "first", 60000);
+        ShardCoordinator second = new ShardCoordinator(leaseFolder.toString(), "second/instance", 60000);
+        first.heartbeat();
+        second.heartbeat();
+        assertTrue(first.heartbeat());
+        assertEquals(Arrays.asList("first", "second_instance"), first.getMembers());
+        assertEquals(first.getMembers(), second.getMembers());
+
+        int ownedByFirst = 0;
+        for (int i = 0; i < 1000; i++) {
+            String key = "folder/" + i;
+            assertNotEquals(first.owns(key), second.owns(key));
+            if (first.owns(key)) {
+                ownedByFirst++;
+            }
+        }
+        // consistent hashing with virtual nodes splits the keys roughly evenly
+        assertTrue(ownedByFirst > 250 && ownedByFirst < 750, ownedByFirst + " keys owned by one of two members");
+
+        // once released, the other instance takes over every key
+        second.release();
+        long version = first.getMembershipVersion();
+        assertTrue(first.heartbeat());
+        assertNotEquals(version, first.getMembershipVersion());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(first.owns("folder/" + i));
+        }
+    }
+
+    @Test
+    void theMembershipSettlesAfterALeaseTimeout() throws IOException, InterruptedException {
+        ShardCoordinator first = new ShardCoordinator(leaseFolder.toString(), "first", 200);
+        ShardCoordinator second = new ShardCoordinator(leaseFolder.toString(), "second", 200);
+        first.heartbeat();
+        assertTrue(first.isMembershipStable());
+        second.heartbeat();
+        assertTrue(first.heartbeat());
+        assertFalse(first.isMembershipStable());
+        Thread.sleep(300);
+        assertTrue(first.isMembershipStable());
+        assertFalse(first.isLeaseCurrent());
+    }
+}
@@ -0,0 +1,127 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+/* Copyright Contributors to the ODPi Egeria project. */
+package org.odpi.egeria.connectors.file.spill;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test that the pending change queue keeps its order when it spills to disk.
+ */
+public class PendingChangeQueueTest {
+
+    @TempDir
+    Path spillFolder;
+
+    @Test
+    void changesWithinTheBudgetAreNotSpilled() throws IOException {
+        try (PendingChangeQueue queue = new PendingChangeQueue(spillFolder.toString(), 0)) {
+            for (int i = 0; i < 1000; i++) {
+                queue.add(newFile(i));
+            }
+            assertEquals(0, queue.getSpilledCount());
+            assertSpillFiles(0);
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("guid" + i, queue.poll().getGUID());
+            }
+            assertNull(queue.poll());
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    void spilledChangesComeOutInTheOrderTheyWereAdded() throws IOException {
+        try (PendingChangeQueue queue = new PendingChangeQueue(spillFolder.toString(), 1000)) {
+            int added = 0;
+            int polled = 0;
+            for (; added < 50; added++) {
+                queue.add(added % 3 == 0 ? newPurge(added) : newFile(added));
+            }
+            assertTrue(queue.getSpilledCount() > 0);
+            assertSpillFiles(1);
+            // changes added while the spill file drains go after it
+            for (; polled < 25; polled++) {
+                assertChange(polled, queue.poll());
+            }
+            for (; added < 60; added++) {
+                queue.add(newFile(added));
+            }
+            for (; polled < 60; polled++) {
+                assertChange(polled, queue.poll());
+            }
+            assertNull(queue.poll());
+            assertSpillFiles(0);
+        }
+    }
+
+    @Test
+    void clearDeletesTheSpillFile() throws IOException {
+        PendingChangeQueue queue = new PendingChangeQueue(spillFolder.toString(), 200);
+        for (int i = 0; i < 20; i++) {
+            queue.add(newFile(i));
+        }
+        assertSpillFiles(1);
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.getSpilledCount());
+        assertSpillFiles(0);
+        queue.add(newFile(0));
+        assertEquals("guid0", queue.poll().getGUID());
+        queue.close();
+    }
+
+    @Test
+    void queuesSharingABudgetSpillOnceItIsUsed() throws IOException {
+        MemoryBudget budget = new MemoryBudget(1000);
+        try (PendingChangeQueue purges = new PendingChangeQueue(spillFolder.toString(), budget);
+             PendingChangeQueue files = new PendingChangeQueue(spillFolder.toString(), budget)) {
+            for (int i = 0; i < 20; i++) {
+                files.add(newFile(i));
+            }
+            assertTrue(budget.getUsed() > 0 && budget.getUsed() <= 1000);
+            purges.add(newPurge(100));
+            assertEquals(1, purges.getSpilledCount());
+
+            assertChange(100, purges.poll());
+            for (int i = 0; i < 20; i++) {
+                assertChange(i, files.poll());
+            }
+            assertEquals(0, budget.getUsed());
+            files.add(newFile(0));
+            files.clear();
+            assertEquals(0, budget.getUsed());
+        }
+    }
+
+    private static PendingChange newFile(int i) {
+        return new PendingChange(PendingChange.ChangeType.NEW, "guid" + i, null, null, i);
+    }
+
+    private static PendingChange newPurge(int i) {
+        return new PendingChange(PendingChange.ChangeType.PURGED_ENTITY, "guid" + i, "type-guid", "DataFile", i);
+    }
+
+    private static void assertChange(int i, PendingChange change) {
+        assertEquals("guid" + i, change.getGUID());
+        assertEquals(i, change.getValue());
+        if (change.getChangeType() == PendingChange.ChangeType.NEW) {
+            assertNull(change.getTypeDefGUID());
+            assertNull(change.getTypeDefName());
+        } else {
+            assertEquals("type-guid", change.getTypeDefGUID());
+            assertEquals("DataFile", change.getTypeDefName());
+        }
+    }
+
+    private void assertSpillFiles(int expected) {
+        String[] spillFiles = spillFolder.toFile().list((dir, name) -> name.endsWith(".spill"));
+        assertEquals(expected, spillFiles == null ? 0 : spillFiles.length);
+    }
+}